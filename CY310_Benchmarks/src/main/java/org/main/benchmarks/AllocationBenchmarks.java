@@ -0,0 +1,78 @@
+package org.main.benchmarks;
+
+import org.main.Budget;
+import org.main.MoneyAllocator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+//The allocation arithmetic on its own: the old double-and-HashMap path against the cents engine
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AllocationBenchmarks {
+
+    private static final int AMOUNTS = 4096;
+
+    @Param({"3", "10", "30"})
+    public int categories;
+
+    private Map<String, Double> percentages;
+    private Budget budget;
+    private long[] amounts;
+    private long[] out;
+    private long[] scratch;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        percentages = new HashMap<>();
+        int remaining = MoneyAllocator.FULL_BASIS_POINTS;
+        for (int i = 0; i < categories; i++) {
+            int basisPoints = i == categories - 1 ? remaining : MoneyAllocator.FULL_BASIS_POINTS / categories;
+            percentages.put("category-" + i, MoneyAllocator.toPercentage(basisPoints));
+            remaining -= basisPoints;
+        }
+        budget = Budget.of(1, 5000, 2, percentages);
+
+        Random random = new Random(310);
+        amounts = new long[AMOUNTS];
+        for (int i = 0; i < AMOUNTS; i++) {
+            amounts[i] = 1 + random.nextInt(500_000);
+        }
+        out = new long[categories];
+        scratch = new long[categories];
+    }
+
+    @Benchmark
+    public double allocateDouble() {
+        double amount = amounts[next++ & (AMOUNTS - 1)] / 100.0;
+        double sum = 0;
+        for (Map.Entry<String, Double> entry : percentages.entrySet()) {
+            sum += (amount * entry.getValue()) / 100;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long[] allocateCents() {
+        budget.allocate(amounts[next++ & (AMOUNTS - 1)], out, scratch);
+        return out;
+    }
+}
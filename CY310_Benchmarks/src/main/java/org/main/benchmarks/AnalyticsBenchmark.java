@@ -0,0 +1,40 @@
+package org.main.benchmarks;
+
+import org.main.BudgetAnalytics;
+import org.main.BudgetDataSource;
+import org.main.BulkLoader;
+import org.main.Pbkdf2PasswordHasher;
+import org.main.SchemaMigrations;
+import org.main.ShardRouter;
+import org.main.StorageProfile;
+
+import java.nio.file.Path;
+import java.util.Random;
+
+//Scaling of the analytics scan from one worker thread up to every core, plus the full report once
+public class AnalyticsBenchmark {
+
+    //Usage: AnalyticsBenchmark [users] [max threads]
+    public static void main(String[] args) throws Exception {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        Path dbFile = BenchmarkFiles.createTempDatabase("analytics.db");
+        BudgetDataSource dataSource = new BudgetDataSource(dbFile.toString(), StorageProfile.THROUGHPUT, threads + 1,
+                BudgetDataSource.DEFAULT_STATEMENT_CACHE_SIZE);
+        try {
+            SchemaMigrations.migrate(dataSource);
+            new BulkLoader(dataSource, new Pbkdf2PasswordHasher(1), Runtime.getRuntime().availableProcessors(),
+                    BulkLoader.DEFAULT_CHUNK_SIZE).generate(users, new BulkLoader.Generator(new Random(310), 3, 12, "password"));
+            ShardRouter router = ShardRouter.single(dataSource);
+
+            System.out.print(BudgetAnalytics.scaling(router, threads, BudgetAnalytics.DEFAULT_FETCH_SIZE,
+                    BudgetAnalytics.DEFAULT_CHUNK_ROWS));
+            System.out.print(new BudgetAnalytics(threads, BudgetAnalytics.DEFAULT_FETCH_SIZE,
+                    BudgetAnalytics.DEFAULT_CHUNK_ROWS).run(router).describe(BudgetAnalytics.DEFAULT_TOP));
+        } finally {
+            dataSource.close();
+            BenchmarkFiles.deleteTempDatabase(dbFile);
+        }
+    }
+}
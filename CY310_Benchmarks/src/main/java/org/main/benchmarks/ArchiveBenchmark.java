@@ -0,0 +1,189 @@
+package org.main.benchmarks;
+
+import org.main.BudgetArchive;
+import org.main.BudgetDataSource;
+import org.main.BulkLoader;
+import org.main.MoneyAllocator;
+import org.main.Pbkdf2PasswordHasher;
+import org.main.PooledConnection;
+import org.main.SchemaMigrations;
+import org.main.ShardRouter;
+import org.main.StorageProfile;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+//Budget archive against CSV for the same data: export from SQLite, a full scan of the file aggregating category
+//shares, and the file size. Also times the archive's streaming import into an empty database.
+public class ArchiveBenchmark {
+
+    private static final String EXPORT_SQL = "SELECT u.id, u.username, u.password, u.salt, h.income, h.paychecks, "
+            + "b.category, b.percentage FROM users u LEFT JOIN budget_header h ON h.user_id = u.id "
+            + "LEFT JOIN budgets b ON b.user_id = h.user_id ORDER BY u.id, b.category";
+
+    //Usage: ArchiveBenchmark [users] [runs]
+    public static void main(String[] args) throws Exception {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        Path dbFile = BenchmarkFiles.createTempDatabase("archive.db");
+        Path copyFile = BenchmarkFiles.createTempDatabase("import.db");
+        Path archive = dbFile.resolveSibling("budgets.cy310");
+        Path csv = dbFile.resolveSibling("budgets.csv");
+        BudgetDataSource dataSource = new BudgetDataSource(dbFile.toString(), StorageProfile.THROUGHPUT, 1,
+                BudgetDataSource.DEFAULT_STATEMENT_CACHE_SIZE);
+        try {
+            SchemaMigrations.migrate(dataSource);
+            new BulkLoader(dataSource, new Pbkdf2PasswordHasher(1), Runtime.getRuntime().availableProcessors(),
+                    BulkLoader.DEFAULT_CHUNK_SIZE).generate(users, new BulkLoader.Generator(new Random(310), 3, 12, "password"));
+            ShardRouter router = ShardRouter.single(dataSource);
+
+            long[] exportArchive = new long[runs];
+            long[] exportCsv = new long[runs];
+            long[] scanArchive = new long[runs];
+            long[] scanCsv = new long[runs];
+            long checksum = 0;
+            for (int run = 0; run < runs; run++) {
+                long start = System.nanoTime();
+                BudgetArchive.export(router, archive, BudgetArchive.DEFAULT_BLOCK_SIZE);
+                exportArchive[run] = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                exportCsv(dataSource, csv);
+                exportCsv[run] = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                checksum += scanArchive(archive);
+                scanArchive[run] = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                checksum -= scanCsv(csv);
+                scanCsv[run] = System.nanoTime() - start;
+            }
+            if (checksum != 0) {
+                throw new IllegalStateException("Archive and CSV scans disagree");
+            }
+
+            BudgetDataSource copy = new BudgetDataSource(copyFile.toString(), StorageProfile.THROUGHPUT, 1,
+                    BudgetDataSource.DEFAULT_STATEMENT_CACHE_SIZE);
+            SchemaMigrations.migrate(copy);
+            long start = System.nanoTime();
+            BudgetArchive.Report imported = BudgetArchive.importArchive(copy, archive);
+            long importNanos = System.nanoTime() - start;
+            copy.close();
+
+            System.out.printf("%d users, %d category rows; best of %d runs%n", imported.users(), imported.rows(), runs);
+            System.out.printf("%-8s %12s %16s %16s %16s%n", "Format", "size (MB)", "export (ms)", "scan (ms)", "scan (MB/s)");
+            print("archive", Files.size(archive), exportArchive, scanArchive);
+            print("csv", Files.size(csv), exportCsv, scanCsv);
+            System.out.printf("Archive import: %.0f ms, %.0f users/sec%n", importNanos / 1e6, imported.users() / (importNanos / 1e9));
+        } finally {
+            dataSource.close();
+            Files.deleteIfExists(archive);
+            Files.deleteIfExists(csv);
+            BenchmarkFiles.deleteTempDatabase(copyFile);
+            BenchmarkFiles.deleteTempDatabase(dbFile);
+        }
+    }
+
+    private static void print(String format, long bytes, long[] export, long[] scan) {
+        long bestExport = min(export);
+        long bestScan = min(scan);
+        System.out.printf("%-8s %12.1f %16.0f %16.0f %16.0f%n", format, bytes / 1e6, bestExport / 1e6, bestScan / 1e6,
+                bytes / 1e6 / (bestScan / 1e9));
+    }
+
+    private static long min(long[] values) {
+        long min = Long.MAX_VALUE;
+        for (long value : values) {
+            min = Math.min(min, value);
+        }
+        return min;
+    }
+
+    //Same rows as the archive, one user per line: id,username,password,salt,income,paychecks,Category:percent|...
+    private static void exportCsv(BudgetDataSource dataSource, Path file) throws Exception {
+        try (PooledConnection conn = dataSource.borrow();
+             PreparedStatement stmt = conn.connection().prepareStatement(EXPORT_SQL);
+             BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            stmt.setFetchSize(BudgetArchive.DEFAULT_BLOCK_SIZE);
+            try (ResultSet rs = stmt.executeQuery()) {
+                StringBuilder line = new StringBuilder();
+                int lastUser = 0;
+                while (rs.next()) {
+                    int userId = rs.getInt(1);
+                    if (userId != lastUser) {
+                        if (lastUser != 0) {
+                            writer.write(line.append('\n').toString());
+                        }
+                        line.setLength(0);
+                        double income = rs.getDouble(5);
+                        int paychecks = rs.wasNull() ? 0 : rs.getInt(6);
+                        line.append(userId).append(',').append(rs.getString(2)).append(',').append(rs.getString(3))
+                                .append(',').append(rs.getString(4)).append(',')
+                                .append(MoneyAllocator.format(MoneyAllocator.toCents(income))).append(',').append(paychecks).append(',');
+                        lastUser = userId;
+                    } else {
+                        line.append('|');
+                    }
+                    String category = rs.getString(7);
+                    if (category != null) {
+                        line.append(category).append(':').append(rs.getDouble(8));
+                    }
+                }
+                if (lastUser != 0) {
+                    writer.write(line.append('\n').toString());
+                }
+            }
+        }
+    }
+
+    //Sum of basis points over every category row, plus the number of distinct categories
+    private static long scanArchive(Path file) throws Exception {
+        try (BudgetArchive.Reader reader = BudgetArchive.Reader.open(file)) {
+            long[] totals = new long[reader.dictionarySize()];
+            for (int b = 0; b < reader.blockCount(); b++) {
+                BudgetArchive.Block block = reader.block(b);
+                for (int r = 0; r < block.rows(); r++) {
+                    totals[block.categoryCode(r)] += block.basisPoints(r);
+                }
+            }
+            long sum = totals.length;
+            for (long total : totals) {
+                sum += total;
+            }
+            return sum;
+        }
+    }
+
+    private static long scanCsv(Path file) throws Exception {
+        Map<String, long[]> totals = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(",", 7);
+                if (fields[6].isEmpty()) {
+                    continue;
+                }
+                for (String entry : fields[6].split("\\|")) {
+                    int colon = entry.lastIndexOf(':');
+                    totals.computeIfAbsent(entry.substring(0, colon), k -> new long[1])[0] +=
+                            MoneyAllocator.toBasisPoints(Double.parseDouble(entry.substring(colon + 1)));
+                }
+            }
+        }
+        long sum = totals.size();
+        for (long[] total : totals.values()) {
+            sum += total[0];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,73 @@
+package org.main.benchmarks;
+
+import org.main.Json;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+//Compare two JMH JSON result files. Exits with status 1 when any benchmark got slower than the threshold.
+public class BenchmarkCompare {
+
+    //Usage: BenchmarkCompare <baseline.json> <current.json> [thresholdPercent]
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: BenchmarkCompare <baseline.json> <current.json> [thresholdPercent]");
+            return;
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10.0;
+        Map<String, double[]> baseline = read(args[0]);
+        Map<String, double[]> current = read(args[1]);
+
+        System.out.printf("%-70s %14s %14s %10s%n", "Benchmark", "Baseline", "Current", "Change");
+        int regressions = 0;
+        for (Map.Entry<String, double[]> entry : current.entrySet()) {
+            double[] before = baseline.get(entry.getKey());
+            double[] after = entry.getValue();
+            if (before == null) {
+                System.out.printf("%-70s %14s %14.3f %10s%n", entry.getKey(), "-", after[0], "new");
+                continue;
+            }
+            //Every benchmark here reports time per operation, so higher is worse
+            double change = (after[0] - before[0]) / before[0] * 100;
+            boolean regression = change > threshold && after[0] - after[1] > before[0] + before[1];
+            if (regression) {
+                regressions++;
+            }
+            System.out.printf("%-70s %14.3f %14.3f %+9.1f%%%s%n", entry.getKey(), before[0], after[0], change,
+                    regression ? "  REGRESSION" : "");
+        }
+
+        if (regressions > 0) {
+            System.out.printf("%d benchmark(s) slower by more than %.1f%%.%n", regressions, threshold);
+            System.exit(1);
+        }
+    }
+
+    //Benchmark name with its parameters -> {score, scoreError}
+    @SuppressWarnings("unchecked")
+    private static Map<String, double[]> read(String file) throws IOException {
+        Map<String, double[]> results = new TreeMap<>();
+        for (Object item : (List<Object>) Json.parse(Files.readString(Paths.get(file)))) {
+            Map<String, Object> result = (Map<String, Object>) item;
+            String name = (String) result.get("benchmark");
+            name = name.substring(name.lastIndexOf('.', name.lastIndexOf('.') - 1) + 1);
+
+            Map<String, Object> params = (Map<String, Object>) result.getOrDefault("params", new LinkedHashMap<>());
+            if (!params.isEmpty()) {
+                name += params.toString().replace(" ", "");
+            }
+
+            Map<String, Object> metric = (Map<String, Object>) result.get("primaryMetric");
+            Object error = metric.get("scoreError");
+            results.put(name, new double[]{((BigDecimal) metric.get("score")).doubleValue(),
+                    error instanceof BigDecimal ? ((BigDecimal) error).doubleValue() : 0});
+        }
+        return results;
+    }
+}
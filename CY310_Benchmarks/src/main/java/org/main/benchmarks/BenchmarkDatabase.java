@@ -0,0 +1,94 @@
+package org.main.benchmarks;
+
+import org.main.AppConfig;
+import org.main.BudgetDataSource;
+import org.main.BudgetRepository;
+import org.main.BudgetService;
+import org.main.Passwords;
+import org.main.SchemaMigrations;
+import org.main.StorageProfile;
+import org.main.UserRepository;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+//A generated temp database shared by every thread of a trial. The dataset parameter is "<users>x<categories>".
+@State(Scope.Benchmark)
+public class BenchmarkDatabase {
+
+    public static final String PASSWORD = "benchmark-password";
+
+    @Param({"1000x5", "1000x25", "10000x10"})
+    public String dataset;
+
+    public int users;
+    public int categories;
+    public BudgetDataSource dataSource;
+    public BudgetService service;
+    //Two budgets that differ in one category, so alternating saves always write something
+    public Map<String, Double> budgetA;
+    public Map<String, Double> budgetB;
+
+    private Path dbFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        String[] parts = dataset.split("x");
+        users = Integer.parseInt(parts[0]);
+        categories = Integer.parseInt(parts[1]);
+
+        dbFile = BenchmarkFiles.createTempDatabase("jmh.db");
+        dataSource = new BudgetDataSource(dbFile.toString(), StorageProfile.BALANCED, BudgetDataSource.DEFAULT_POOL_SIZE,
+                BudgetDataSource.DEFAULT_STATEMENT_CACHE_SIZE);
+        SchemaMigrations.migrate(dataSource);
+        service = new BudgetService(dataSource, Passwords.fromConfig(AppConfig.current()));
+
+        budgetA = categories(categories, 0);
+        budgetB = categories(categories, 1);
+
+        //Every user shares one hash so setup time does not scale with the PBKDF2 cost
+        String passwordHash = service.passwords().hash(PASSWORD);
+        for (int i = 1; i <= users; i++) {
+            int userId = UserRepository.createUser(dataSource, username(i), passwordHash);
+            BudgetRepository.save(dataSource, userId, 4000, 2, budgetA, BudgetRepository.SaveMode.REPLACE);
+        }
+        dataSource.budgetCache().clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        service.passwords().close();
+        dataSource.close();
+        BenchmarkFiles.deleteTempDatabase(dbFile);
+    }
+
+    public static String username(int userId) {
+        return "user-" + userId;
+    }
+
+    //Equal shares in basis points; variant 1 moves 0.01% from the first category to the last
+    private static Map<String, Double> categories(int count, int variant) {
+        int[] basisPoints = new int[count];
+        int remaining = 10_000;
+        for (int i = 0; i < count; i++) {
+            basisPoints[i] = i == count - 1 ? remaining : 10_000 / count;
+            remaining -= basisPoints[i];
+        }
+        if (variant == 1 && count > 1) {
+            basisPoints[0]--;
+            basisPoints[count - 1]++;
+        }
+        Map<String, Double> percentages = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            percentages.put("category-" + i, basisPoints[i] / 100.0);
+        }
+        return percentages;
+    }
+}
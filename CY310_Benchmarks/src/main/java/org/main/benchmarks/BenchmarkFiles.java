@@ -0,0 +1,22 @@
+package org.main.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+//Temp database handling shared by the benchmarks
+public class BenchmarkFiles {
+
+    public static Path createTempDatabase(String name) throws IOException {
+        return Files.createTempDirectory("cy310-bench").resolve(name);
+    }
+
+    //Remove the database, its WAL and shared-memory files, and the temp directory holding them
+    public static void deleteTempDatabase(Path dbFile) throws IOException {
+        Files.deleteIfExists(dbFile);
+        Files.deleteIfExists(dbFile.resolveSibling(dbFile.getFileName() + "-wal"));
+        Files.deleteIfExists(dbFile.resolveSibling(dbFile.getFileName() + "-shm"));
+        Files.deleteIfExists(dbFile.resolveSibling(dbFile.getFileName() + "-journal"));
+        Files.deleteIfExists(dbFile.getParent());
+    }
+}
@@ -0,0 +1,68 @@
+package org.main.benchmarks;
+
+import org.main.Allocation;
+import org.main.Budget;
+import org.main.BudgetException;
+import org.main.BudgetRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+//The console and HTTP operations against a generated database, one random user per call
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BudgetBenchmarks {
+
+    @State(Scope.Thread)
+    public static class Saves {
+        boolean flip;
+    }
+
+    private static int randomUser(BenchmarkDatabase db) {
+        return ThreadLocalRandom.current().nextInt(1, db.users + 1);
+    }
+
+    //Login.verifyUser: username lookup plus a PBKDF2 check at the configured cost
+    @Benchmark
+    public Integer verifyUser(BenchmarkDatabase db) throws BudgetException {
+        return db.service.authenticate(BenchmarkDatabase.username(randomUser(db)), BenchmarkDatabase.PASSWORD);
+    }
+
+    //EnterBudget: validate and save, alternating between two budgets so every save changes a row
+    @Benchmark
+    public Budget saveBudget(BenchmarkDatabase db, Saves saves) throws BudgetException {
+        saves.flip = !saves.flip;
+        return db.service.saveBudget(randomUser(db), 4000, 2, saves.flip ? db.budgetB : db.budgetA);
+    }
+
+    //ViewBudget on a cold cache: always goes to SQLite
+    @Benchmark
+    public Budget viewBudgetUncached(BenchmarkDatabase db) throws SQLException {
+        return BudgetRepository.load(db.dataSource, randomUser(db));
+    }
+
+    //UtilizeBudget's budget lookup through the read-through cache
+    @Benchmark
+    public Budget getBudgetForUser(BenchmarkDatabase db) throws BudgetException {
+        return db.service.getBudget(randomUser(db));
+    }
+
+    //UtilizeBudget end to end: lookup, allocation and the ledger write
+    @Benchmark
+    public Allocation budgetPaycheck(BenchmarkDatabase db) throws BudgetException {
+        return db.service.allocate(randomUser(db), 123_456);
+    }
+}
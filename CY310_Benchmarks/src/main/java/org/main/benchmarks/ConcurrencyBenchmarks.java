@@ -0,0 +1,106 @@
+package org.main.benchmarks;
+
+import org.main.BudgetDataSource;
+import org.main.BudgetRepository;
+import org.main.PooledConnection;
+import org.main.SchemaMigrations;
+import org.main.StorageProfile;
+import org.main.UserRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+//Uncached budget reads from four threads while one thread keeps saving, per storage profile. WAL profiles should
+//keep reads flowing during writes; the rollback journal makes readers wait for each commit.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Group)
+public class ConcurrencyBenchmarks {
+
+    private static final int USERS = 500;
+    private static final int CATEGORIES = 10;
+    private static final int READERS = 4;
+    private static final String VIEW_SQL = "SELECT h.income, h.paychecks, b.category, b.percentage FROM budget_header h "
+            + "JOIN budgets b ON b.user_id = h.user_id WHERE h.user_id = ?";
+
+    @Param({"DURABLE", "BALANCED", "THROUGHPUT"})
+    public StorageProfile profile;
+
+    private Path dbFile;
+    private BudgetDataSource dataSource;
+    private Map<String, Double> categories;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dbFile = BenchmarkFiles.createTempDatabase("concurrency.db");
+        dataSource = new BudgetDataSource(dbFile.toString(), profile, READERS + 1,
+                BudgetDataSource.DEFAULT_STATEMENT_CACHE_SIZE);
+        SchemaMigrations.migrate(dataSource);
+        categories = new LinkedHashMap<>();
+        for (int i = 0; i < CATEGORIES; i++) {
+            categories.put("category-" + i, 100.0 / CATEGORIES);
+        }
+        for (int i = 1; i <= USERS; i++) {
+            int userId = UserRepository.createUser(dataSource, "user-" + i, "hash");
+            BudgetRepository.save(dataSource, userId, 4000, 2, categories, BudgetRepository.SaveMode.REPLACE);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        dataSource.close();
+        BenchmarkFiles.deleteTempDatabase(dbFile);
+    }
+
+    private static int randomUser() {
+        return ThreadLocalRandom.current().nextInt(1, USERS + 1);
+    }
+
+    @Benchmark
+    @Group("readWhileWriting")
+    @GroupThreads(READERS)
+    public double read() throws SQLException {
+        double sum = 0;
+        try (PooledConnection conn = dataSource.borrow()) {
+            PreparedStatement stmt = conn.prepare(VIEW_SQL);
+            stmt.setInt(1, randomUser());
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    sum += rs.getDouble("percentage");
+                }
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @Group("readWhileWriting")
+    @GroupThreads(1)
+    public void write() throws SQLException {
+        BudgetRepository.save(dataSource, randomUser(), 4000, 2, categories, BudgetRepository.SaveMode.REPLACE);
+    }
+}
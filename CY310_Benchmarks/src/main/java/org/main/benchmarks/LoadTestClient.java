@@ -0,0 +1,146 @@
+package org.main.benchmarks;
+
+import org.main.BudgetHttpServer;
+import org.main.Json;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+//Drives a running BudgetHttpServer with concurrent users and reports latency and throughput. A plain main rather
+//than a JMH benchmark because it measures a server in another process over HTTP.
+public class LoadTestClient {
+
+    private static final int CATEGORIES = 10;
+
+    //Per-worker results; latencies are kept in a growable primitive array
+    private static final class WorkerStats {
+        long[] latencies = new long[1 << 14];
+        int count;
+        int errors;
+
+        void record(long nanos) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+        }
+    }
+
+    //Usage: LoadTestClient [baseUrl] [users] [seconds]
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:" + BudgetHttpServer.DEFAULT_PORT;
+        int users = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).executor(Executors.newVirtualThreadPerTaskExecutor()).build();
+        String runId = Long.toString(System.currentTimeMillis(), 36);
+
+        //Register, log in and save a budget for every simulated user
+        String[] tokens = new String[users];
+        StringBuilder categories = new StringBuilder("{");
+        for (int i = 0; i < CATEGORIES; i++) {
+            categories.append(i > 0 ? "," : "").append("\"category-").append(i).append("\":").append(100.0 / CATEGORIES);
+        }
+        String budgetBody = "{\"income\":4000,\"paychecks\":2,\"categories\":" + categories.append('}') + "}";
+        for (int i = 0; i < users; i++) {
+            String credentials = "{\"username\":\"load-" + runId + "-" + i + "\",\"password\":\"secret\"}";
+            send(client, baseUrl, "POST", "/api/users", null, credentials, 201);
+            Map<String, Object> login = Json.parseObject(send(client, baseUrl, "POST", "/api/login", null, credentials, 200));
+            tokens[i] = (String) login.get("token");
+            send(client, baseUrl, "PUT", "/api/budget", tokens[i], budgetBody, 200);
+        }
+        System.out.printf("Prepared %d users against %s%n", users, baseUrl);
+
+        //Each user alternates between viewing its budget and budgeting a paycheck
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Future<WorkerStats>> futures = new ArrayList<>();
+        long start;
+        try (ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor()) {
+            start = System.nanoTime();
+            for (String token : tokens) {
+                futures.add(workers.submit(() -> {
+                    WorkerStats stats = new WorkerStats();
+                    while (running.get()) {
+                        boolean view = ThreadLocalRandom.current().nextBoolean();
+                        long begin = System.nanoTime();
+                        try {
+                            if (view) {
+                                send(client, baseUrl, "GET", "/api/budget", token, null, 200);
+                            } else {
+                                send(client, baseUrl, "POST", "/api/allocate", token, "{\"amount\":1234.56}", 200);
+                            }
+                            stats.record(System.nanoTime() - begin);
+                        } catch (IOException e) {
+                            stats.errors++;
+                        }
+                    }
+                    return stats;
+                }));
+            }
+            Thread.sleep(seconds * 1000L);
+            running.set(false);
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        int total = 0;
+        int errors = 0;
+        for (Future<WorkerStats> future : futures) {
+            total += future.get().count;
+            errors += future.get().errors;
+        }
+        long[] latencies = new long[total];
+        int offset = 0;
+        for (Future<WorkerStats> future : futures) {
+            WorkerStats stats = future.get();
+            System.arraycopy(stats.latencies, 0, latencies, offset, stats.count);
+            offset += stats.count;
+        }
+        Arrays.sort(latencies);
+
+        System.out.println("---- Budget API Load Test ----");
+        System.out.printf("Users:          %d%n", users);
+        System.out.printf("Requests:       %d (%d errors)%n", total, errors);
+        System.out.printf("Requests/sec:   %.0f%n", total / elapsedSeconds);
+        System.out.printf("p50 latency:    %.2f ms%n", percentile(latencies, 0.50) / 1e6);
+        System.out.printf("p99 latency:    %.2f ms%n", percentile(latencies, 0.99) / 1e6);
+        System.out.printf("max latency:    %.2f ms%n", total == 0 ? 0 : latencies[total - 1] / 1e6);
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)];
+    }
+
+    private static String send(HttpClient client, String baseUrl, String method, String path, String token,
+                               String body, int expectedStatus) throws IOException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body));
+        if (token != null) {
+            request.header("Authorization", "Bearer " + token);
+        }
+        try {
+            HttpResponse<String> response = client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != expectedStatus) {
+                throw new IOException(method + " " + path + " returned " + response.statusCode() + ": " + response.body());
+            }
+            return response.body();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package org.main.benchmarks;
+
+import org.main.Passwords;
+import org.main.Pbkdf2PasswordHasher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+//PBKDF2-SHA256 cost against login latency. verifyBurst runs 32 callers against one pool of a worker per core, as a
+//burst of HTTP logins would; pick the highest cy310.password.iterations whose burst p99 meets the login SLO.
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PasswordBenchmarks {
+
+    private static final String PASSWORD = "correct horse battery staple";
+    private static final int BURST = 32;
+
+    @Param({"50000", "100000", "210000", "310000", "600000"})
+    public int iterations;
+
+    private Passwords passwords;
+    private String stored;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        passwords = new Passwords(new Pbkdf2PasswordHasher(iterations), Runtime.getRuntime().availableProcessors(), BURST);
+        stored = passwords.hash(PASSWORD);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        passwords.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean verifySingle() {
+        return passwords.verify(PASSWORD, stored);
+    }
+
+    @Benchmark
+    @Threads(BURST)
+    public boolean verifyBurst() {
+        return passwords.verify(PASSWORD, stored);
+    }
+}
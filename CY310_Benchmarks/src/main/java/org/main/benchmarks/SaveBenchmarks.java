@@ -0,0 +1,109 @@
+package org.main.benchmarks;
+
+import org.main.BudgetDataSource;
+import org.main.BudgetRepository;
+import org.main.PooledConnection;
+import org.main.SchemaMigrations;
+import org.main.StorageProfile;
+import org.main.UserRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+//One budget save by budget size: the old autocommitted statement per category against the REPLACE and
+//INCREMENTAL transactions. Incremental saves change one category per save, which is the common edit.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SaveBenchmarks {
+
+    @Param({"1", "5", "10", "30", "100"})
+    public int categories;
+
+    @Param({"BALANCED"})
+    public StorageProfile profile;
+
+    private Path dbFile;
+    private BudgetDataSource dataSource;
+    private int userId;
+    private Map<String, Double> working;
+    private String edited;
+    private double original;
+    private boolean flip;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dbFile = BenchmarkFiles.createTempDatabase("save.db");
+        dataSource = new BudgetDataSource(dbFile.toString(), profile, 1, BudgetDataSource.DEFAULT_STATEMENT_CACHE_SIZE);
+        SchemaMigrations.migrate(dataSource);
+        userId = UserRepository.createUser(dataSource, "save-user", "hash");
+
+        working = new LinkedHashMap<>();
+        for (int i = 0; i < categories; i++) {
+            working.put("category-" + i, 100.0 / categories);
+        }
+        edited = working.keySet().iterator().next();
+        original = working.get(edited);
+        BudgetRepository.save(dataSource, userId, 5000, 2, working, BudgetRepository.SaveMode.REPLACE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        dataSource.close();
+        BenchmarkFiles.deleteTempDatabase(dbFile);
+    }
+
+    //The previous save path: one autocommitted statement per category
+    @Benchmark
+    public void saveAutocommit() throws SQLException {
+        try (PooledConnection conn = dataSource.borrow()) {
+            PreparedStatement deleteStmt = conn.prepare("DELETE FROM budgets WHERE user_id = ?");
+            deleteStmt.setInt(1, userId);
+            deleteStmt.executeUpdate();
+
+            PreparedStatement insertStmt = conn.prepare("INSERT INTO budgets (user_id, category, percentage) VALUES (?, ?, ?)");
+            for (Map.Entry<String, Double> entry : working.entrySet()) {
+                insertStmt.setInt(1, userId);
+                insertStmt.setString(2, entry.getKey());
+                insertStmt.setDouble(3, entry.getValue());
+                insertStmt.executeUpdate();
+            }
+        }
+    }
+
+    @Benchmark
+    public void saveReplace() throws SQLException {
+        save(BudgetRepository.SaveMode.REPLACE);
+    }
+
+    @Benchmark
+    public void saveIncremental() throws SQLException {
+        save(BudgetRepository.SaveMode.INCREMENTAL);
+    }
+
+    private void save(BudgetRepository.SaveMode mode) throws SQLException {
+        flip = !flip;
+        working.put(edited, flip ? original - 1 : original);
+        BudgetRepository.save(dataSource, userId, 5000, 2, working, mode);
+    }
+}
@@ -0,0 +1,66 @@
+package org.main.benchmarks;
+
+import org.main.Budget;
+import org.main.MoneyAllocator;
+import org.main.ScenarioSimulator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+//A what-if sweep of about 10,000 variants over a year, on 1 to N fork-join workers
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScenarioBenchmarks {
+
+    private static final int CATEGORIES = 10;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private Budget budget;
+    private ScenarioSimulator.Sweep sweep;
+    private ScenarioSimulator simulator;
+
+    @Setup
+    public void setUp() {
+        Map<String, Double> percentages = new HashMap<>();
+        for (int i = 0; i < CATEGORIES; i++) {
+            percentages.put("category-" + i, MoneyAllocator.toPercentage(MoneyAllocator.FULL_BASIS_POINTS / CATEGORIES));
+        }
+        budget = Budget.of(1, 5000, 2, percentages);
+
+        int[] incomeChanges = new int[41];
+        for (int i = 0; i < incomeChanges.length; i++) {
+            incomeChanges[i] = (i - 20) * 100;
+        }
+        int[] shift = new int[61];
+        for (int i = 0; i < shift.length; i++) {
+            shift[i] = i * 10;
+        }
+        sweep = new ScenarioSimulator.Sweep(incomeChanges, new int[]{1, 2, 4, 5},
+                List.of(new ScenarioSimulator.Shift(0, 1, shift)), 12, 25);
+        simulator = new ScenarioSimulator(threads);
+    }
+
+    @Benchmark
+    public ScenarioSimulator.Projection simulate() {
+        return simulator.simulate(budget, sweep);
+    }
+}
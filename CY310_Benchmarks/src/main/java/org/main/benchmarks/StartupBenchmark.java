@@ -0,0 +1,106 @@
+package org.main.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+//Cold-start cost of the console, measured in fresh JVMs because JMH cannot see class loading or driver start-up.
+//Each run launches org.main.Main, times the first login menu, then sends a failed login and times its answer
+//(the first database query). Compares eager and fast start-up, each with and without an AppCDS archive.
+public class StartupBenchmark {
+
+    private static final String MENU = "Please select an option:";
+    private static final String QUERY_DONE = "Login failed";
+
+    private record Config(String name, List<String> jvmArgs) {
+    }
+
+    //Usage: StartupBenchmark [runs] [classpath]
+    public static void main(String[] args) throws Exception {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        String classpath = args.length > 1 ? args[1] : System.getProperty("java.class.path");
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+
+        Path dir = Files.createTempDirectory("cy310-startup");
+        Path archive = dir.resolve("cy310.jsa");
+        List<String> common = List.of("-cp", classpath, "-Dcy310.db.path=" + dir.resolve("cy310.db"),
+                "-Dcy310.password.iterations=1");
+
+        //Creates the database, so every measured run opens an existing file, and records the classes for AppCDS
+        List<String> training = new ArrayList<>(List.of(java, "-XX:ArchiveClassesAtExit=" + archive));
+        training.addAll(common);
+        training.addAll(List.of("org.main.Main", "check"));
+        Process process = new ProcessBuilder(training).redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+        if (process.waitFor() != 0 || !Files.exists(archive)) {
+            System.out.println("Training run failed; is " + classpath + " a jar classpath?");
+            return;
+        }
+
+        String cds = "-XX:SharedArchiveFile=" + archive;
+        Config[] configs = {
+                new Config("eager", List.of("-Dcy310.startup.fast=false")),
+                new Config("eager+appcds", List.of("-Dcy310.startup.fast=false", cds)),
+                new Config("fast", List.of("-Dcy310.startup.fast=true")),
+                new Config("fast+appcds", List.of("-Dcy310.startup.fast=true", cds))
+        };
+
+        System.out.printf("%-14s %16s %16s %16s %16s%n", "Mode", "menu p50 (ms)", "menu min (ms)",
+                "query p50 (ms)", "query min (ms)");
+        for (Config config : configs) {
+            List<String> command = new ArrayList<>();
+            command.add(java);
+            command.addAll(config.jvmArgs());
+            command.addAll(common);
+            command.add("org.main.Main");
+
+            long[] menu = new long[runs];
+            long[] query = new long[runs];
+            run(command);
+            for (int i = 0; i < runs; i++) {
+                long[] times = run(command);
+                menu[i] = times[0];
+                query[i] = times[1];
+            }
+            Arrays.sort(menu);
+            Arrays.sort(query);
+            System.out.printf("%-14s %16.1f %16.1f %16.1f %16.1f%n", config.name(),
+                    menu[runs / 2] / 1e6, menu[0] / 1e6, query[runs / 2] / 1e6, query[0] / 1e6);
+        }
+    }
+
+    //Nanoseconds from launch to the first menu and to the answer of the first login
+    private static long[] run(List<String> command) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.DISCARD).start();
+        long[] times = new long[2];
+        try (BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+             Writer in = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = out.readLine()) != null) {
+                if (times[0] == 0 && line.startsWith(MENU)) {
+                    times[0] = System.nanoTime() - start;
+                    in.write("1\nstartup-benchmark\nnot-a-password\n");
+                    in.flush();
+                } else if (times[0] != 0 && line.startsWith(QUERY_DONE)) {
+                    times[1] = System.nanoTime() - start;
+                    in.write("0\n");
+                    in.flush();
+                }
+            }
+        }
+        if (process.waitFor() != 0 || times[1] == 0) {
+            throw new IOException("Start-up run did not reach the first query: " + command);
+        }
+        return times;
+    }
+}
@@ -0,0 +1,39 @@
+package org.main;
+
+//Result of splitting an amount across a budget; parts always sum to the amount
+public final class Allocation {
+
+    private final Budget budget;
+    private final long amountCents;
+    private final long[] parts;
+
+    public Allocation(Budget budget, long amountCents) {
+        this.budget = budget;
+        this.amountCents = amountCents;
+        this.parts = budget.allocate(amountCents);
+    }
+
+    public Budget budget() {
+        return budget;
+    }
+
+    public long amountCents() {
+        return amountCents;
+    }
+
+    public int categoryCount() {
+        return parts.length;
+    }
+
+    public String category(int index) {
+        return budget.category(index);
+    }
+
+    public double percentage(int index) {
+        return budget.percentage(index);
+    }
+
+    public long cents(int index) {
+        return parts[index];
+    }
+}
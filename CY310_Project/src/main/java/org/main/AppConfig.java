@@ -0,0 +1,105 @@
+package org.main;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+//Settings read from cy310.properties, overridden by -D system properties
+public class AppConfig {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AppConfig.class);
+
+    public static final String CONFIG_FILE_KEY = "cy310.config";
+    public static final String DB_PATH_KEY = "cy310.db.path";
+    public static final String STORAGE_PROFILE_KEY = "cy310.storage.profile";
+    public static final String POOL_SIZE_KEY = "cy310.pool.size";
+    public static final String STATEMENT_CACHE_KEY = "cy310.pool.statementCache";
+    public static final String BUDGET_CACHE_SIZE_KEY = "cy310.cache.size";
+    public static final String BUDGET_CACHE_TTL_KEY = "cy310.cache.ttlSeconds";
+    public static final String FAST_STARTUP_KEY = "cy310.startup.fast";
+
+    private static AppConfig current;
+
+    private final Properties properties;
+
+    public AppConfig(Properties properties) {
+        this.properties = properties;
+    }
+
+    public static synchronized AppConfig current() {
+        if (current == null) {
+            current = load();
+        }
+        return current;
+    }
+
+    //Properties file first (cy310.config or ./cy310.properties), then system properties on top
+    private static AppConfig load() {
+        Properties properties = new Properties();
+        Path file = Paths.get(System.getProperty(CONFIG_FILE_KEY, "cy310.properties"));
+        if (Files.isRegularFile(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                properties.load(in);
+            } catch (IOException e) {
+                LOG.atWarn().setCause(e).addKeyValue("file", file).log("Error reading settings file");
+            }
+        }
+        for (String key : System.getProperties().stringPropertyNames()) {
+            if (key.startsWith("cy310.")) {
+                properties.setProperty(key, System.getProperty(key));
+            }
+        }
+        return new AppConfig(properties);
+    }
+
+    public String get(String key, String defaultValue) {
+        return properties.getProperty(key, defaultValue);
+    }
+
+    public int getInt(String key, int defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Setting " + key + " must be an integer, got '" + value + "'");
+        }
+    }
+
+    public String dbPath() {
+        return get(DB_PATH_KEY, BudgetDataSource.DEFAULT_DB_PATH);
+    }
+
+    public StorageProfile storageProfile() {
+        return StorageProfile.fromName(get(STORAGE_PROFILE_KEY, StorageProfile.BALANCED.name()));
+    }
+
+    public int poolSize() {
+        return getInt(POOL_SIZE_KEY, BudgetDataSource.DEFAULT_POOL_SIZE);
+    }
+
+    public int statementCacheSize() {
+        return getInt(STATEMENT_CACHE_KEY, BudgetDataSource.DEFAULT_STATEMENT_CACHE_SIZE);
+    }
+
+    public int budgetCacheSize() {
+        return getInt(BUDGET_CACHE_SIZE_KEY, 1024);
+    }
+
+    public long budgetCacheTtlMillis() {
+        return getInt(BUDGET_CACHE_TTL_KEY, 300) * 1000L;
+    }
+
+    //Console opens the database in the background while the first menu is shown
+    public boolean fastStartup() {
+        return Boolean.parseBoolean(get(FAST_STARTUP_KEY, "true"));
+    }
+}
@@ -0,0 +1,324 @@
+package org.main;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+//Non-interactive paycheck allocation: streams (user_id, amount) records from CSV or JSONL in fixed-size chunks.
+//Every allocation is also appended to the allocation ledger, so batch runs show up in spending history.
+public class BatchAllocator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BatchAllocator.class);
+
+    public static final int DEFAULT_CHUNK_SIZE = 50_000;
+
+    private final ShardRouter shards;
+    private final int threads;
+    private final int chunkSize;
+
+    private final LongAdder allocated = new LongAdder();
+    private final LongAdder noBudget = new LongAdder();
+    private long malformed;
+
+    public BatchAllocator(ShardRouter shards, int threads, int chunkSize) {
+        this.shards = shards;
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+    }
+
+    //Usage: allocate <input.csv|input.jsonl> <output.csv|output.jsonl> [--threads N] [--chunk N]
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: allocate <input.csv|input.jsonl> <output.csv|output.jsonl> [--threads N] [--chunk N]");
+            return;
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        int chunkSize = DEFAULT_CHUNK_SIZE;
+        for (int i = 2; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--threads":
+                    threads = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--chunk":
+                    chunkSize = Integer.parseInt(args[i + 1]);
+                    break;
+                default:
+                    System.out.println("Ignoring unknown option " + args[i]);
+            }
+        }
+
+        try {
+            SchemaMigrations.migrate(BudgetDataSource.shared());
+            Report report = new BatchAllocator(ShardRouter.fromConfig(AppConfig.current()), threads, chunkSize).run(Paths.get(args[0]), Paths.get(args[1]));
+            System.out.println(report);
+        } catch (IOException | SQLException e) {
+            LOG.atError().setCause(e).log("Error running batch allocation");
+        }
+    }
+
+    public Report run(Path input, Path output) throws IOException, SQLException {
+        boolean jsonIn = isJsonLines(input);
+        boolean jsonOut = isJsonLines(output);
+        long start = System.nanoTime();
+        long records = 0;
+
+        //The chunk buffers are reused, so memory stays flat however large the input is
+        Chunk chunk = new Chunk(chunkSize);
+
+        ForkJoinPool workers = new ForkJoinPool(threads);
+        try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+             BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+
+            if (!jsonOut) {
+                writer.write("user_id,amount,category,allocation");
+                writer.newLine();
+            }
+
+            String line;
+            long lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || (!jsonIn && lineNumber == 1 && line.startsWith("user_id"))) {
+                    continue;
+                }
+                int userId;
+                long amount;
+                try {
+                    if (jsonIn) {
+                        userId = Integer.parseInt(jsonField(line, "user_id"));
+                        amount = MoneyAllocator.parseCents(jsonField(line, "amount"));
+                    } else {
+                        int comma = line.indexOf(',');
+                        userId = Integer.parseInt(line.substring(0, comma).trim());
+                        amount = MoneyAllocator.parseCents(line.substring(comma + 1).trim());
+                    }
+                    if (userId <= 0 || amount <= 0) {
+                        throw new IllegalArgumentException("user_id and amount must be positive");
+                    }
+                    if (amount > MoneyAllocator.MAX_AMOUNT_CENTS) {
+                        throw new IllegalArgumentException("amount is too large");
+                    }
+                } catch (RuntimeException e) {
+                    malformed++;
+                    LOG.atWarn().addKeyValue("line", lineNumber).addKeyValue("reason", e.getMessage()).log("Skipping malformed record");
+                    continue;
+                }
+
+                chunk.userIds[chunk.size] = userId;
+                chunk.amounts[chunk.size] = amount;
+                chunk.size++;
+                records++;
+                if (chunk.size == chunkSize) {
+                    processChunk(workers, chunk, jsonOut, writer);
+                }
+            }
+            if (chunk.size > 0) {
+                processChunk(workers, chunk, jsonOut, writer);
+            }
+        } finally {
+            workers.shutdown();
+        }
+
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        return new Report(records, allocated.sum(), noBudget.sum(), malformed, seconds);
+    }
+
+    //Group the chunk by user, allocate each user's records in parallel, then write them back in input order
+    private void processChunk(ForkJoinPool workers, Chunk chunk, boolean jsonOut, Writer writer)
+            throws IOException, SQLException {
+        int size = chunk.size;
+        long[] order = chunk.order;
+        for (int i = 0; i < size; i++) {
+            order[i] = ((long) chunk.userIds[i] << 32) | i;
+        }
+        Arrays.sort(order, 0, size);
+
+        int[] runStarts = chunk.runStarts;
+        int runs = 0;
+        for (int i = 0; i < size; i++) {
+            if (i == 0 || (int) (order[i] >>> 32) != (int) (order[i - 1] >>> 32)) {
+                runStarts[runs++] = i;
+            }
+        }
+        runStarts[runs] = size;
+        int runCount = runs;
+
+        try {
+            workers.submit(() -> IntStream.range(0, runCount).parallel().forEach(run ->
+                    allocateRun(chunk, runStarts[run], runStarts[run + 1], jsonOut))).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while allocating", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof BatchFailure failure) {
+                throw failure.getCause();
+            }
+            throw new IOException("Allocation failed: " + e.getCause().getMessage(), e.getCause());
+        }
+
+        String[] results = chunk.results;
+        for (int i = 0; i < size; i++) {
+            if (results[i] != null) {
+                writer.write(results[i]);
+            }
+            results[i] = null;
+        }
+        chunk.size = 0;
+    }
+
+    private void allocateRun(Chunk chunk, int from, int to, boolean jsonOut) {
+        long[] order = chunk.order;
+        long[] amounts = chunk.amounts;
+        int userId = (int) (order[from] >>> 32);
+        Budget budget;
+        try {
+            budget = shards.read(userId, shard -> BudgetRepository.find(shard, userId));
+        } catch (SQLException e) {
+            throw new BatchFailure(e);
+        }
+
+        if (budget == null || budget.categoryCount() == 0) {
+            noBudget.add(to - from);
+            return;
+        }
+
+        //Each run goes into the allocation ledger like an interactive allocation, one transaction per user
+        List<Allocation> allocations = new ArrayList<>(to - from);
+        for (int k = from; k < to; k++) {
+            allocations.add(new Allocation(budget, amounts[(int) order[k]]));
+        }
+        try {
+            long now = System.currentTimeMillis();
+            shards.write(userId, shard -> {
+                LedgerRepository.recordAll(shard, allocations, now);
+                return null;
+            });
+        } catch (SQLException e) {
+            throw new BatchFailure(e);
+        }
+
+        StringBuilder out = new StringBuilder();
+        for (int k = from; k < to; k++) {
+            out.setLength(0);
+            if (jsonOut) {
+                appendJson(out, userId, allocations.get(k - from));
+            } else {
+                appendCsv(out, userId, allocations.get(k - from));
+            }
+            chunk.results[(int) order[k]] = out.toString();
+        }
+        allocated.add(to - from);
+    }
+
+    private static void appendCsv(StringBuilder out, int userId, Allocation allocation) {
+        for (int i = 0; i < allocation.categoryCount(); i++) {
+            out.append(userId).append(',').append(MoneyAllocator.format(allocation.amountCents())).append(',');
+            String category = allocation.category(i);
+            if (category.indexOf(',') >= 0 || category.indexOf('"') >= 0) {
+                out.append('"').append(category.replace("\"", "\"\"")).append('"');
+            } else {
+                out.append(category);
+            }
+            out.append(',').append(MoneyAllocator.format(allocation.cents(i))).append('\n');
+        }
+    }
+
+    private static void appendJson(StringBuilder out, int userId, Allocation allocation) {
+        out.append("{\"user_id\":").append(userId).append(",\"amount\":").append(MoneyAllocator.format(allocation.amountCents()))
+                .append(",\"allocations\":{");
+        for (int i = 0; i < allocation.categoryCount(); i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            out.append('"').append(allocation.category(i).replace("\\", "\\\\").replace("\"", "\\\"")).append("\":")
+                    .append(MoneyAllocator.format(allocation.cents(i)));
+        }
+        out.append("}}\n");
+    }
+
+    //Value of a top-level string or number field in a flat JSON object
+    static String jsonField(String line, String field) {
+        String key = "\"" + field + "\"";
+        int at = line.indexOf(key);
+        if (at < 0) {
+            throw new IllegalArgumentException("missing " + field);
+        }
+        int i = line.indexOf(':', at + key.length()) + 1;
+        while (i < line.length() && Character.isWhitespace(line.charAt(i))) {
+            i++;
+        }
+        if (i < line.length() && line.charAt(i) == '"') {
+            int end = line.indexOf('"', i + 1);
+            return line.substring(i + 1, end);
+        }
+        int end = i;
+        while (end < line.length() && ",} \t".indexOf(line.charAt(end)) < 0) {
+            end++;
+        }
+        return line.substring(i, end);
+    }
+
+    private static boolean isJsonLines(Path path) {
+        String name = path.getFileName().toString().toLowerCase();
+        return name.endsWith(".jsonl") || name.endsWith(".json");
+    }
+
+    //Buffers for one chunk of input records; order packs (user_id, position) so a primitive sort groups by user
+    private static class Chunk {
+        final int[] userIds;
+        final long[] amounts;
+        final long[] order;
+        final int[] runStarts;
+        final String[] results;
+        int size;
+
+        Chunk(int capacity) {
+            userIds = new int[capacity];
+            amounts = new long[capacity];
+            order = new long[capacity];
+            runStarts = new int[capacity + 1];
+            results = new String[capacity];
+        }
+    }
+
+    //Carries a SQLException out of the parallel stream
+    private static class BatchFailure extends RuntimeException {
+        BatchFailure(SQLException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized SQLException getCause() {
+            return (SQLException) super.getCause();
+        }
+    }
+
+    public record Report(long records, long allocated, long noBudget, long malformed, double seconds) {
+
+        public double recordsPerSecond() {
+            return seconds == 0 ? 0 : records / seconds;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Processed %d records in %.2fs (%.0f records/sec): %d allocated, %d without a budget, %d malformed",
+                    records, seconds, recordsPerSecond(), allocated, noBudget, malformed);
+        }
+    }
+}
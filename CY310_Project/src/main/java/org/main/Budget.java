@@ -0,0 +1,88 @@
+package org.main;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+//Immutable snapshot of one user's stored budget, held in primitive arrays ordered by category name
+public final class Budget {
+
+    private final int userId;
+    private final long incomeCents;
+    private final int paychecks;
+    private final String[] categories;
+    private final int[] basisPoints;
+
+    public Budget(int userId, long incomeCents, int paychecks, String[] categories, int[] basisPoints) {
+        if (categories.length != basisPoints.length) {
+            throw new IllegalArgumentException("Every category needs exactly one percentage");
+        }
+        this.userId = userId;
+        this.incomeCents = incomeCents;
+        this.paychecks = paychecks;
+        this.categories = categories.clone();
+        this.basisPoints = basisPoints.clone();
+    }
+
+    //Build from entered percentages, sorted the same way SQLite returns them
+    public static Budget of(int userId, double income, int paychecks, Map<String, Double> percentages) {
+        Map<String, Double> sorted = new TreeMap<>(percentages);
+        String[] categories = new String[sorted.size()];
+        int[] basisPoints = new int[sorted.size()];
+        int i = 0;
+        for (Map.Entry<String, Double> entry : sorted.entrySet()) {
+            categories[i] = entry.getKey();
+            basisPoints[i] = MoneyAllocator.toBasisPoints(entry.getValue());
+            i++;
+        }
+        return new Budget(userId, MoneyAllocator.toCents(income), paychecks, categories, basisPoints);
+    }
+
+    public int userId() {
+        return userId;
+    }
+
+    public long incomeCents() {
+        return incomeCents;
+    }
+
+    public double income() {
+        return incomeCents / 100.0;
+    }
+
+    public int paychecks() {
+        return paychecks;
+    }
+
+    public int categoryCount() {
+        return categories.length;
+    }
+
+    public String category(int index) {
+        return categories[index];
+    }
+
+    public int basisPoints(int index) {
+        return basisPoints[index];
+    }
+
+    public double percentage(int index) {
+        return MoneyAllocator.toPercentage(basisPoints[index]);
+    }
+
+    //Split an amount across the categories; the parts always sum to amountCents
+    public long[] allocate(long amountCents) {
+        return MoneyAllocator.allocate(amountCents, basisPoints);
+    }
+
+    //Allocation-free variant for hot loops; out and scratch must hold categoryCount() values
+    public void allocate(long amountCents, long[] out, long[] scratch) {
+        MoneyAllocator.allocate(amountCents, basisPoints, basisPoints.length, out, scratch);
+    }
+
+    @Override
+    public String toString() {
+        return "Budget[userId=" + userId + ", income=" + MoneyAllocator.format(incomeCents) + ", paychecks=" + paychecks
+                + ", categories=" + Arrays.toString(categories) + ", basisPoints=" + Arrays.toString(basisPoints) + "]";
+    }
+}
@@ -0,0 +1,542 @@
+package org.main;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+//Cross-user reports over every stored budget: average share per category, top categories and income by paychecks
+//per month. Each shard is read by one forward-only cursor with a large fetch size; its thread turns rows into
+//primitive chunks, with category names interned to int ids, and worker threads fold the chunks into per-worker
+//arrays indexed by those ids. Chunks are recycled through a fixed pool, so memory depends on the chunk size, the
+//thread count and the number of distinct categories, not on the number of users. Nothing is written.
+public class BudgetAnalytics {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BudgetAnalytics.class);
+    private static final LatencyHistogram ANALYTICS_TIME = Metrics.histogram("analytics");
+
+    //Budget headers drive the scan, so the rows of a user arrive together and users without categories still count
+    private static final String SCAN_SQL = "SELECT h.user_id, h.income, h.paychecks, b.category, b.percentage "
+            + "FROM budget_header h LEFT JOIN budgets b ON b.user_id = h.user_id ORDER BY h.user_id";
+
+    public static final int DEFAULT_FETCH_SIZE = 10_000;
+    public static final int DEFAULT_CHUNK_ROWS = 8_192;
+    public static final int DEFAULT_TOP = 20;
+    //Paychecks per month above this share the last row of the income report
+    private static final int MAX_PAYCHECKS = 31;
+    //Income percentiles come from $100 buckets up to $100,000 a month, plus one bucket for everything above
+    private static final long INCOME_BUCKET_CENTS = 10_000;
+    private static final int INCOME_BUCKETS = 1_001;
+
+    private final int threads;
+    private final int fetchSize;
+    private final int chunkRows;
+
+    public BudgetAnalytics(int threads, int fetchSize, int chunkRows) {
+        this.threads = Math.max(1, threads);
+        this.fetchSize = fetchSize;
+        this.chunkRows = Math.max(1, chunkRows);
+    }
+
+    //Usage: analytics [--threads N] [--top N] [--fetch N] [--chunk N] [--out file.csv] [--scaling true]
+    public static void main(String[] args) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int top = DEFAULT_TOP;
+        int fetchSize = DEFAULT_FETCH_SIZE;
+        int chunkRows = DEFAULT_CHUNK_ROWS;
+        String out = null;
+        boolean scaling = false;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--threads":
+                    threads = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--top":
+                    top = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--fetch":
+                    fetchSize = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--chunk":
+                    chunkRows = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--out":
+                    out = args[i + 1];
+                    break;
+                case "--scaling":
+                    scaling = Boolean.parseBoolean(args[i + 1]);
+                    break;
+                default:
+                    System.out.println("Ignoring unknown option " + args[i]);
+            }
+        }
+
+        try {
+            ShardRouter shards = BudgetService.shared().shards();
+            if (scaling) {
+                System.out.print(scaling(shards, threads, fetchSize, chunkRows));
+                return;
+            }
+            long start = System.nanoTime();
+            Report report = new BudgetAnalytics(threads, fetchSize, chunkRows).run(shards);
+            double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+            System.out.print(report.describe(top));
+            System.out.printf("Scanned %d users and %d category rows from %d shard(s) in %.3fs on %d threads%n",
+                    report.users(), report.rows(), report.shards(), seconds, threads);
+            if (out != null) {
+                report.writeCsv(out);
+                System.out.println("Wrote every category to " + out);
+            }
+        } catch (SQLException | IOException e) {
+            LOG.atError().setCause(e).log("Error running analytics");
+        }
+    }
+
+    //Time the same scan on 1, 2, 4, ... up to maxThreads workers, after one untimed run to warm the page cache
+    public static String scaling(ShardRouter shards, int maxThreads, int fetchSize, int chunkRows) throws SQLException {
+        List<Integer> counts = new ArrayList<>();
+        for (int n = 1; n < maxThreads; n *= 2) {
+            counts.add(n);
+        }
+        counts.add(Math.max(1, maxThreads));
+
+        Report warm = new BudgetAnalytics(1, fetchSize, chunkRows).run(shards);
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%d users, %d category rows, %d shard(s), %d cores%n", warm.users(), warm.rows(),
+                warm.shards(), Runtime.getRuntime().availableProcessors()));
+        out.append(String.format("%-8s %12s %14s %10s%n", "Threads", "Seconds", "Rows/sec", "Speedup"));
+        double baseline = 0;
+        for (int n : counts) {
+            long start = System.nanoTime();
+            Report report = new BudgetAnalytics(n, fetchSize, chunkRows).run(shards);
+            double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+            if (baseline == 0) {
+                baseline = seconds;
+            }
+            out.append(String.format("%-8d %12.3f %14.0f %9.2fx%n", n, seconds, report.rows() / seconds, baseline / seconds));
+        }
+        return out.toString();
+    }
+
+    public Report run(ShardRouter shards) throws SQLException {
+        List<BudgetDataSource> sources = new ArrayList<>();
+        for (int index = 0; index < ShardRouter.MAX_SHARDS; index++) {
+            if (index == 0 || shards.shardExists(index)) {
+                sources.add(shards.shard(index));
+            }
+        }
+
+        //Every chunk is either free, being filled by a reader, queued, or being folded by a worker
+        int pool = threads * 2 + sources.size();
+        BlockingQueue<Chunk> free = new ArrayBlockingQueue<>(pool);
+        BlockingQueue<Chunk> full = new ArrayBlockingQueue<>(pool + threads);
+        for (int i = 0; i < pool; i++) {
+            free.add(new Chunk(chunkRows));
+        }
+        Dictionary dictionary = new Dictionary();
+        Accumulator[] accumulators = new Accumulator[threads];
+
+        long start = Metrics.start();
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads + sources.size(), runnable -> {
+            Thread thread = new Thread(runnable, "analytics-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            CompletionService<Boolean> tasks = new ExecutorCompletionService<>(executor);
+            for (int t = 0; t < threads; t++) {
+                Accumulator accumulator = new Accumulator();
+                accumulators[t] = accumulator;
+                tasks.submit(() -> {
+                    aggregate(accumulator, full, free);
+                    return false;
+                });
+            }
+            for (BudgetDataSource source : sources) {
+                tasks.submit(() -> {
+                    read(source, dictionary, free, full);
+                    return true;
+                });
+            }
+
+            //Once every reader is done, one end marker per worker lets the workers finish what is queued and stop
+            int readers = sources.size();
+            for (int done = 0; done < threads + sources.size(); done++) {
+                if (tasks.take().get() && --readers == 0) {
+                    for (int t = 0; t < threads; t++) {
+                        full.put(Chunk.END);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while running analytics", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+            Metrics.stop(ANALYTICS_TIME, start);
+        }
+
+        Accumulator total = accumulators[0];
+        for (int t = 1; t < threads; t++) {
+            total.merge(accumulators[t]);
+        }
+        return new Report(total, dictionary.names(), sources.size());
+    }
+
+    private void read(BudgetDataSource source, Dictionary dictionary, BlockingQueue<Chunk> free,
+                      BlockingQueue<Chunk> full) throws SQLException, InterruptedException {
+        //Ids this reader has already looked up, so the shared dictionary is only consulted for new names
+        Map<String, Integer> ids = new HashMap<>();
+        try (PooledConnection conn = source.borrow();
+             PreparedStatement stmt = conn.connection().prepareStatement(SCAN_SQL, ResultSet.TYPE_FORWARD_ONLY,
+                     ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(fetchSize);
+            try (ResultSet rs = stmt.executeQuery()) {
+                Chunk chunk = free.take();
+                int lastUser = 0;
+                long incomeCents = 0;
+                while (rs.next()) {
+                    int userId = rs.getInt(1);
+                    if (userId != lastUser) {
+                        incomeCents = MoneyAllocator.toCents(rs.getDouble(2));
+                        chunk.addUser(incomeCents, rs.getInt(3));
+                        lastUser = userId;
+                    }
+                    String category = rs.getString(4);
+                    if (category != null) {
+                        Integer id = ids.get(category);
+                        if (id == null) {
+                            id = dictionary.intern(category);
+                            ids.put(category, id);
+                        }
+                        chunk.addRow(id, MoneyAllocator.toBasisPoints(rs.getDouble(5)), incomeCents);
+                    }
+                    if (chunk.isFull()) {
+                        full.put(chunk);
+                        chunk = free.take();
+                    }
+                }
+                if (chunk.isEmpty()) {
+                    free.put(chunk);
+                } else {
+                    full.put(chunk);
+                }
+            }
+        }
+    }
+
+    private static void aggregate(Accumulator accumulator, BlockingQueue<Chunk> full, BlockingQueue<Chunk> free)
+            throws InterruptedException {
+        while (true) {
+            Chunk chunk = full.take();
+            if (chunk == Chunk.END) {
+                return;
+            }
+            accumulator.add(chunk);
+            chunk.clear();
+            free.put(chunk);
+        }
+    }
+
+    //Category name to a dense int id, shared by all readers of one run
+    private static final class Dictionary {
+        private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+        private final AtomicInteger next = new AtomicInteger();
+
+        int intern(String name) {
+            return ids.computeIfAbsent(name, k -> next.getAndIncrement());
+        }
+
+        String[] names() {
+            String[] names = new String[next.get()];
+            for (Map.Entry<String, Integer> entry : ids.entrySet()) {
+                names[entry.getValue()] = entry.getKey();
+            }
+            return names;
+        }
+    }
+
+    //Decoded rows in primitive columns. Users and category rows are kept apart because one user's rows can run
+    //past the end of a chunk; each row carries its user's income so it needs nothing from the previous chunk.
+    private static final class Chunk {
+        static final Chunk END = new Chunk(0);
+
+        final long[] userIncome;
+        final int[] userPaychecks;
+        final int[] rowCategory;
+        final int[] rowBasisPoints;
+        final long[] rowIncome;
+        int users;
+        int rows;
+
+        Chunk(int capacity) {
+            userIncome = new long[capacity];
+            userPaychecks = new int[capacity];
+            rowCategory = new int[capacity];
+            rowBasisPoints = new int[capacity];
+            rowIncome = new long[capacity];
+        }
+
+        void addUser(long incomeCents, int paychecks) {
+            userIncome[users] = incomeCents;
+            userPaychecks[users] = paychecks;
+            users++;
+        }
+
+        void addRow(int category, int basisPoints, long incomeCents) {
+            rowCategory[rows] = category;
+            rowBasisPoints[rows] = basisPoints;
+            rowIncome[rows] = incomeCents;
+            rows++;
+        }
+
+        boolean isFull() {
+            return users == userIncome.length || rows == rowCategory.length;
+        }
+
+        boolean isEmpty() {
+            return users == 0 && rows == 0;
+        }
+
+        void clear() {
+            users = 0;
+            rows = 0;
+        }
+    }
+
+    //One worker's totals. Category arrays are indexed by dictionary id and grow as new ids show up; the income
+    //arrays are indexed by paychecks per month, and the histogram by [paychecks][income bucket].
+    private static final class Accumulator {
+        long users;
+        long rows;
+        long[] categoryUsers = new long[64];
+        long[] categoryBasisPoints = new long[64];
+        long[] categoryCents = new long[64];
+        final long[] paycheckUsers = new long[MAX_PAYCHECKS + 1];
+        final long[] paycheckIncome = new long[MAX_PAYCHECKS + 1];
+        final long[] paycheckMin = new long[MAX_PAYCHECKS + 1];
+        final long[] paycheckMax = new long[MAX_PAYCHECKS + 1];
+        final long[] incomeBuckets = new long[(MAX_PAYCHECKS + 1) * INCOME_BUCKETS];
+
+        Accumulator() {
+            Arrays.fill(paycheckMin, Long.MAX_VALUE);
+        }
+
+        void add(Chunk chunk) {
+            users += chunk.users;
+            for (int i = 0; i < chunk.users; i++) {
+                long income = chunk.userIncome[i];
+                int key = Math.max(0, Math.min(MAX_PAYCHECKS, chunk.userPaychecks[i]));
+                paycheckUsers[key]++;
+                paycheckIncome[key] += income;
+                paycheckMin[key] = Math.min(paycheckMin[key], income);
+                paycheckMax[key] = Math.max(paycheckMax[key], income);
+                incomeBuckets[key * INCOME_BUCKETS + (int) Math.max(0, Math.min(INCOME_BUCKETS - 1, income / INCOME_BUCKET_CENTS))]++;
+            }
+
+            rows += chunk.rows;
+            for (int i = 0; i < chunk.rows; i++) {
+                int category = chunk.rowCategory[i];
+                if (category >= categoryUsers.length) {
+                    grow(category + 1);
+                }
+                int basisPoints = chunk.rowBasisPoints[i];
+                categoryUsers[category]++;
+                categoryBasisPoints[category] += basisPoints;
+                categoryCents[category] += chunk.rowIncome[i] * basisPoints / MoneyAllocator.FULL_BASIS_POINTS;
+            }
+        }
+
+        void merge(Accumulator other) {
+            users += other.users;
+            rows += other.rows;
+            if (other.categoryUsers.length > categoryUsers.length) {
+                grow(other.categoryUsers.length);
+            }
+            for (int i = 0; i < other.categoryUsers.length; i++) {
+                categoryUsers[i] += other.categoryUsers[i];
+                categoryBasisPoints[i] += other.categoryBasisPoints[i];
+                categoryCents[i] += other.categoryCents[i];
+            }
+            for (int key = 0; key <= MAX_PAYCHECKS; key++) {
+                paycheckUsers[key] += other.paycheckUsers[key];
+                paycheckIncome[key] += other.paycheckIncome[key];
+                paycheckMin[key] = Math.min(paycheckMin[key], other.paycheckMin[key]);
+                paycheckMax[key] = Math.max(paycheckMax[key], other.paycheckMax[key]);
+            }
+            for (int i = 0; i < incomeBuckets.length; i++) {
+                incomeBuckets[i] += other.incomeBuckets[i];
+            }
+        }
+
+        private void grow(int minLength) {
+            int length = Math.max(minLength, categoryUsers.length * 2);
+            categoryUsers = Arrays.copyOf(categoryUsers, length);
+            categoryBasisPoints = Arrays.copyOf(categoryBasisPoints, length);
+            categoryCents = Arrays.copyOf(categoryCents, length);
+        }
+    }
+
+    public static final class Report {
+        private final Accumulator totals;
+        private final String[] categories;
+        private final int shards;
+
+        private Report(Accumulator totals, String[] categories, int shards) {
+            this.totals = totals;
+            this.categories = categories;
+            this.shards = shards;
+        }
+
+        public long users() {
+            return totals.users;
+        }
+
+        public long rows() {
+            return totals.rows;
+        }
+
+        public int shards() {
+            return shards;
+        }
+
+        public int categoryCount() {
+            return categories.length;
+        }
+
+        public String category(int id) {
+            return categories[id];
+        }
+
+        public long categoryUsers(int id) {
+            return totals.categoryUsers[id];
+        }
+
+        //Average share among the users who have the category, in basis points
+        public int averageBasisPoints(int id) {
+            long users = totals.categoryUsers[id];
+            return users == 0 ? 0 : (int) Math.round((double) totals.categoryBasisPoints[id] / users);
+        }
+
+        //Average share across every user, counting users without the category as 0%
+        public int overallBasisPoints(int id) {
+            return totals.users == 0 ? 0 : (int) Math.round((double) totals.categoryBasisPoints[id] / totals.users);
+        }
+
+        //Average monthly amount among the users who have the category
+        public long averageCents(int id) {
+            long users = totals.categoryUsers[id];
+            return users == 0 ? 0 : totals.categoryCents[id] / users;
+        }
+
+        //Most used categories first, ties by name
+        public int[] topCategories(int limit) {
+            return IntStream.range(0, categories.length).boxed()
+                    .sorted(Comparator.comparingLong((Integer id) -> -totals.categoryUsers[id])
+                            .thenComparing(id -> categories[id]))
+                    .limit(Math.max(0, limit)).mapToInt(Integer::intValue).toArray();
+        }
+
+        //Income at the given percentile for users with this many paychecks, to the nearest $100 bucket
+        public long incomePercentile(int paychecks, double percentile) {
+            long users = totals.paycheckUsers[paychecks];
+            if (users == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(users * percentile / 100.0));
+            long seen = 0;
+            int base = paychecks * INCOME_BUCKETS;
+            for (int bucket = 0; bucket < INCOME_BUCKETS; bucket++) {
+                seen += totals.incomeBuckets[base + bucket];
+                if (seen >= rank) {
+                    long limit = bucket == INCOME_BUCKETS - 1 ? Long.MAX_VALUE : (bucket + 1) * INCOME_BUCKET_CENTS;
+                    return Math.max(totals.paycheckMin[paychecks], Math.min(limit, totals.paycheckMax[paychecks]));
+                }
+            }
+            return totals.paycheckMax[paychecks];
+        }
+
+        public String describe(int top) {
+            StringBuilder out = new StringBuilder();
+            out.append(String.format("%n---- Top Categories (%d of %d) ----%n", Math.min(top, categories.length),
+                    categories.length));
+            out.append(String.format("%-24s %10s %9s %12s %12s %14s%n", "Category", "Users", "Of users", "Avg share",
+                    "Overall", "Avg monthly"));
+            for (int id : topCategories(top)) {
+                out.append(String.format("%-24s %10d %8.1f%% %11.2f%% %11.2f%% %14s%n", categories[id],
+                        totals.categoryUsers[id], totals.users == 0 ? 0 : 100.0 * totals.categoryUsers[id] / totals.users,
+                        MoneyAllocator.toPercentage(averageBasisPoints(id)), MoneyAllocator.toPercentage(overallBasisPoints(id)),
+                        "$" + MoneyAllocator.format(averageCents(id))));
+            }
+
+            out.append(String.format("%n---- Monthly Income by Paychecks per Month ----%n"));
+            out.append(String.format("%-10s %10s %12s %12s %12s %12s %12s%n", "Paychecks", "Users", "Mean", "Median",
+                    "P90", "Min", "Max"));
+            for (int key = 0; key <= MAX_PAYCHECKS; key++) {
+                long users = totals.paycheckUsers[key];
+                if (users == 0) {
+                    continue;
+                }
+                out.append(String.format("%-10s %10d %12s %12s %12s %12s %12s%n",
+                        key == MAX_PAYCHECKS ? MAX_PAYCHECKS + "+" : Integer.toString(key), users,
+                        MoneyAllocator.format(totals.paycheckIncome[key] / users),
+                        MoneyAllocator.format(incomePercentile(key, 50)), MoneyAllocator.format(incomePercentile(key, 90)),
+                        MoneyAllocator.format(totals.paycheckMin[key]), MoneyAllocator.format(totals.paycheckMax[key])));
+            }
+            return out.toString();
+        }
+
+        //Every category, most used first
+        public void writeCsv(String file) throws IOException {
+            try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8)) {
+                writer.write("category,users,average_percentage,overall_percentage,average_monthly_amount");
+                writer.newLine();
+                StringBuilder line = new StringBuilder();
+                for (int id : topCategories(categories.length)) {
+                    line.setLength(0);
+                    String category = categories[id];
+                    if (category.indexOf(',') >= 0 || category.indexOf('"') >= 0) {
+                        line.append('"').append(category.replace("\"", "\"\"")).append('"');
+                    } else {
+                        line.append(category);
+                    }
+                    line.append(',').append(totals.categoryUsers[id])
+                            .append(',').append(MoneyAllocator.toPercentage(averageBasisPoints(id)))
+                            .append(',').append(MoneyAllocator.toPercentage(overallBasisPoints(id)))
+                            .append(',').append(MoneyAllocator.format(averageCents(id)));
+                    writer.write(line.toString());
+                    writer.newLine();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,724 @@
+package org.main;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//Columnar binary copy of every user and budget, for moving data between environments and into analytics.
+//Export streams the users, budget_header and budgets tables of every shard; import streams it back into an empty
+//database a block per transaction. Readers map each block from the FileChannel and scan its columns in place.
+//
+//Little-endian throughout; every column starts on an 8-byte boundary.
+//  header   "CY310ARC", int version, int reserved
+//  block    int users, int rows, int code width (1, 2 or 4 bytes), int reserved, then the columns:
+//           user_id int[users], income_cents long[users], paychecks int[users] (0 = no budget),
+//           category_start int[users + 1], category code[rows], basis_points short[rows],
+//           username, password and salt, each as int offsets[users + 1] followed by UTF-8 bytes
+//  footer   int dictionary size, the category names as a string column, int blocks, long block offsets[blocks]
+//  trailer  long footer offset, "CY310END"
+public class BudgetArchive {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BudgetArchive.class);
+
+    public static final int VERSION = 1;
+    public static final int DEFAULT_BLOCK_SIZE = 65_536;
+    public static final int MAX_BLOCK_SIZE = 1 << 20;
+
+    private static final byte[] MAGIC = "CY310ARC".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] END_MAGIC = "CY310END".getBytes(StandardCharsets.US_ASCII);
+    private static final int HEADER_BYTES = 16;
+    private static final int TRAILER_BYTES = 16;
+
+    //Users in id order, each followed by their categories in key order; users without a budget come back once
+    private static final String EXPORT_SQL = "SELECT u.id, u.username, u.password, u.salt, h.income, h.paychecks, "
+            + "b.category, b.percentage FROM users u LEFT JOIN budget_header h ON h.user_id = u.id "
+            + "LEFT JOIN budgets b ON b.user_id = h.user_id ORDER BY u.id, b.category";
+
+    private BudgetArchive() {
+    }
+
+    //Usage: archive export <file> [--block N] | archive import <file> | archive stats <file>
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: archive export <file> [--block N] | archive import <file> | archive stats <file>");
+            return;
+        }
+        int blockSize = DEFAULT_BLOCK_SIZE;
+        for (int i = 2; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--block":
+                    blockSize = Integer.parseInt(args[i + 1]);
+                    break;
+                default:
+                    System.out.println("Ignoring unknown option " + args[i]);
+            }
+        }
+        Path file = Paths.get(args[1]);
+
+        try {
+            long start = System.nanoTime();
+            switch (args[0]) {
+                case "export": {
+                    AppConfig config = AppConfig.current();
+                    SchemaMigrations.migrate(BudgetDataSource.shared());
+                    Report report = export(ShardRouter.fromConfig(config), file, blockSize);
+                    System.out.println(report.describe("Exported", seconds(start)));
+                    break;
+                }
+                case "import": {
+                    AppConfig config = AppConfig.current();
+                    ShardRouter router = ShardRouter.fromConfig(config);
+                    if (router.isSharded() || router.directoryExists()) {
+                        //Imported ids are kept, so they have to be placed by a rebalance like a bulk load
+                        System.out.println("Imports need an unsharded database; import with " + ShardRouter.COUNT_KEY
+                                + "=1, then run shards rebalance.");
+                        return;
+                    }
+                    Files.createDirectories(Paths.get(config.dbPath()).toAbsolutePath().getParent());
+                    BudgetDataSource dataSource = BudgetDataSource.shared();
+                    SchemaMigrations.migrate(dataSource);
+                    Report report = importArchive(dataSource, file);
+                    System.out.println(report.describe("Imported", seconds(start)));
+                    break;
+                }
+                case "stats":
+                    try (Reader reader = Reader.open(file)) {
+                        System.out.print(stats(reader));
+                        System.out.printf("Scanned %d users in %.3fs%n", reader.users(), seconds(start));
+                    }
+                    break;
+                default:
+                    System.out.println("Unknown archive command " + args[0]);
+            }
+        } catch (IOException | SQLException e) {
+            LOG.atError().setCause(e).addKeyValue("file", file).log("Error processing archive");
+        }
+    }
+
+    private static double seconds(long start) {
+        return (System.nanoTime() - start) / 1_000_000_000.0;
+    }
+
+    //Write every user of every existing shard; memory stays at one block whatever the size of the database
+    public static Report export(ShardRouter router, Path file, int blockSize) throws IOException, SQLException {
+        try (Writer writer = new Writer(file, blockSize)) {
+            for (int index = 0; index < ShardRouter.MAX_SHARDS; index++) {
+                if (index == 0 || router.shardExists(index)) {
+                    export(router.shard(index), writer);
+                }
+            }
+            writer.finish();
+            return new Report(writer.users, writer.rows, writer.blockOffsets.size(), writer.names.size(), Files.size(file));
+        }
+    }
+
+    private static void export(BudgetDataSource dataSource, Writer writer) throws IOException, SQLException {
+        try (PooledConnection conn = dataSource.borrow();
+             PreparedStatement stmt = conn.connection().prepareStatement(EXPORT_SQL)) {
+            stmt.setFetchSize(writer.blockSize);
+            try (ResultSet rs = stmt.executeQuery()) {
+                int lastUser = 0;
+                while (rs.next()) {
+                    int userId = rs.getInt(1);
+                    if (userId != lastUser) {
+                        double income = rs.getDouble(5);
+                        int paychecks = rs.wasNull() ? 0 : rs.getInt(6);
+                        writer.addUser(userId, rs.getString(2), rs.getString(3), rs.getString(4),
+                                MoneyAllocator.toCents(income), paychecks);
+                        lastUser = userId;
+                    }
+                    String category = rs.getString(7);
+                    if (category != null) {
+                        writer.addCategory(category, MoneyAllocator.toBasisPoints(rs.getDouble(8)));
+                    }
+                }
+            }
+        }
+    }
+
+    //Load an archive into a database without users; user ids are kept as exported
+    public static Report importArchive(BudgetDataSource dataSource, Path file) throws IOException, SQLException {
+        try (Reader reader = Reader.open(file); PooledConnection conn = dataSource.borrow()) {
+            Connection connection = conn.connection();
+            try (Statement stmt = connection.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT EXISTS (SELECT 1 FROM users)")) {
+                if (rs.next() && rs.getBoolean(1)) {
+                    throw new SQLException("Imports need a database without users: " + dataSource.getDbPath());
+                }
+            }
+
+            List<String> indexes = BulkLoader.dropSecondaryIndexes(connection);
+            try {
+                for (int b = 0; b < reader.blockCount(); b++) {
+                    importBlock(conn, reader, reader.block(b));
+                }
+            } finally {
+                if (!connection.getAutoCommit()) {
+                    connection.rollback();
+                    connection.setAutoCommit(true);
+                }
+                try (Statement stmt = connection.createStatement()) {
+                    for (String sql : indexes) {
+                        stmt.execute(sql);
+                    }
+                    stmt.execute("ANALYZE");
+                }
+            }
+            dataSource.budgetCache().clear();
+            return new Report(reader.users(), reader.rows(), reader.blockCount(), reader.dictionarySize(), Files.size(file));
+        }
+    }
+
+    //One block per transaction; rows go in the same order and through the same statements as a bulk load
+    private static void importBlock(PooledConnection conn, Reader reader, Block block) throws SQLException {
+        long createdAt = System.currentTimeMillis();
+        Connection connection = conn.connection();
+        connection.setAutoCommit(false);
+        PreparedStatement users = conn.prepare("INSERT INTO users (id, username, password, salt) VALUES (?, ?, ?, ?)");
+        PreparedStatement headers = conn.prepare("INSERT INTO budget_header (user_id, income, paychecks) VALUES (?, ?, ?)");
+        PreparedStatement budgets = conn.prepare("INSERT INTO budgets (user_id, category, percentage) VALUES (?, ?, ?)");
+        PreparedStatement versions = conn.prepare("INSERT INTO budget_versions (user_id, version, created_at, income_cents, paychecks) "
+                + "VALUES (?, 1, ?, ?, ?)");
+        PreparedStatement versionCategories = conn.prepare("INSERT INTO budget_version_categories (user_id, version, category, basis_points) "
+                + "VALUES (?, 1, ?, ?)");
+
+        for (int i = 0; i < block.users(); i++) {
+            int userId = block.userId(i);
+            users.setInt(1, userId);
+            users.setString(2, block.username(i));
+            users.setString(3, block.password(i));
+            users.setString(4, block.salt(i));
+            users.addBatch();
+
+            int paychecks = block.paychecks(i);
+            if (paychecks == 0) {
+                continue;
+            }
+            headers.setInt(1, userId);
+            headers.setDouble(2, block.incomeCents(i) / 100.0);
+            headers.setInt(3, paychecks);
+            headers.addBatch();
+
+            versions.setInt(1, userId);
+            versions.setLong(2, createdAt);
+            versions.setLong(3, block.incomeCents(i));
+            versions.setInt(4, paychecks);
+            versions.addBatch();
+
+            for (int r = block.categoryStart(i); r < block.categoryStart(i + 1); r++) {
+                String category = reader.category(block.categoryCode(r));
+                budgets.setInt(1, userId);
+                budgets.setString(2, category);
+                budgets.setDouble(3, MoneyAllocator.toPercentage(block.basisPoints(r)));
+                budgets.addBatch();
+
+                versionCategories.setInt(1, userId);
+                versionCategories.setString(2, category);
+                versionCategories.setInt(3, block.basisPoints(r));
+                versionCategories.addBatch();
+            }
+        }
+        users.executeBatch();
+        headers.executeBatch();
+        budgets.executeBatch();
+        versions.executeBatch();
+        versionCategories.executeBatch();
+        connection.commit();
+        connection.setAutoCommit(true);
+    }
+
+    //Per-category counts and average share, straight from the mapped columns without building any rows
+    public static String stats(Reader reader) {
+        int[] users = new int[reader.dictionarySize()];
+        long[] basisPoints = new long[reader.dictionarySize()];
+        long budgets = 0;
+        long incomeCents = 0;
+        for (int b = 0; b < reader.blockCount(); b++) {
+            Block block = reader.block(b);
+            for (int i = 0; i < block.users(); i++) {
+                if (block.paychecks(i) > 0) {
+                    budgets++;
+                    incomeCents += block.incomeCents(i);
+                }
+            }
+            for (int r = 0; r < block.rows(); r++) {
+                int code = block.categoryCode(r);
+                users[code]++;
+                basisPoints[code] += block.basisPoints(r);
+            }
+        }
+
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%d users, %d budgets, %d category rows, %d distinct categories in %d blocks%n",
+                reader.users(), budgets, reader.rows(), reader.dictionarySize(), reader.blockCount()));
+        if (budgets > 0) {
+            out.append(String.format("Average monthly income: $%s%n", MoneyAllocator.format(incomeCents / budgets)));
+        }
+        out.append(String.format("%-24s %10s %12s%n", "Category", "Users", "Avg share"));
+        for (int code = 0; code < users.length; code++) {
+            out.append(String.format("%-24s %10d %11.2f%%%n", reader.category(code), users[code],
+                    users[code] == 0 ? 0 : MoneyAllocator.toPercentage((int) (basisPoints[code] / users[code]))));
+        }
+        return out.toString();
+    }
+
+    //Buffers one block of users in primitive columns and writes it out when full
+    public static class Writer implements AutoCloseable {
+        private final FileChannel channel;
+        private final int blockSize;
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> names = new ArrayList<>();
+        private final List<Long> blockOffsets = new ArrayList<>();
+        private ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+
+        private final int[] userIds;
+        private final long[] incomeCents;
+        private final int[] paychecks;
+        private final int[] categoryStart;
+        private final byte[][] usernames;
+        private final byte[][] passwords;
+        private final byte[][] salts;
+        private int[] categoryCodes;
+        private short[] basisPoints;
+        private int size;
+        private long users;
+        private long rows;
+        private boolean finished;
+
+        public Writer(Path file, int blockSize) throws IOException {
+            if (blockSize < 1 || blockSize > MAX_BLOCK_SIZE) {
+                throw new IllegalArgumentException("Block size must be between 1 and " + MAX_BLOCK_SIZE);
+            }
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+            this.blockSize = blockSize;
+            userIds = new int[blockSize];
+            incomeCents = new long[blockSize];
+            paychecks = new int[blockSize];
+            categoryStart = new int[blockSize + 1];
+            usernames = new byte[blockSize][];
+            passwords = new byte[blockSize][];
+            salts = new byte[blockSize][];
+            categoryCodes = new int[blockSize * 8];
+            basisPoints = new short[blockSize * 8];
+
+            buffer.put(MAGIC).putInt(VERSION).putInt(0).flip();
+            write(buffer);
+        }
+
+        public void addUser(int userId, String username, String password, String salt, long income, int paycheckCount)
+                throws IOException {
+            if (size == blockSize) {
+                writeBlock();
+            }
+            int i = size++;
+            userIds[i] = userId;
+            incomeCents[i] = income;
+            paychecks[i] = paycheckCount;
+            usernames[i] = username.getBytes(StandardCharsets.UTF_8);
+            passwords[i] = password.getBytes(StandardCharsets.UTF_8);
+            salts[i] = salt.getBytes(StandardCharsets.UTF_8);
+            categoryStart[size] = categoryStart[i];
+            users++;
+        }
+
+        //Adds a category to the user added last
+        public void addCategory(String category, int basisPointValue) {
+            if (basisPointValue < 0 || basisPointValue > MoneyAllocator.FULL_BASIS_POINTS) {
+                throw new IllegalArgumentException("Category percentages must be between 0 and 100");
+            }
+            Integer code = codes.get(category);
+            if (code == null) {
+                code = names.size();
+                codes.put(category, code);
+                names.add(category);
+            }
+            int r = categoryStart[size]++;
+            if (r == categoryCodes.length) {
+                categoryCodes = Arrays.copyOf(categoryCodes, r * 2);
+                basisPoints = Arrays.copyOf(basisPoints, r * 2);
+            }
+            categoryCodes[r] = code;
+            basisPoints[r] = (short) basisPointValue;
+            rows++;
+        }
+
+        private void writeBlock() throws IOException {
+            int count = categoryStart[size];
+            int maxCode = 0;
+            for (int r = 0; r < count; r++) {
+                maxCode = Math.max(maxCode, categoryCodes[r]);
+            }
+            int width = maxCode < 1 << 8 ? 1 : maxCode < 1 << 16 ? 2 : 4;
+
+            long bytes = 16 + align(4L * size) + align(8L * size) + align(4L * size) + align(4L * (size + 1))
+                    + align((long) width * count) + align(2L * count)
+                    + stringBytes(usernames) + stringBytes(passwords) + stringBytes(salts);
+            if (bytes > Integer.MAX_VALUE) {
+                throw new IOException("Block is too large; use a smaller block size");
+            }
+            ByteBuffer out = buffer(bytes);
+            out.putInt(size).putInt(count).putInt(width).putInt(0);
+            for (int i = 0; i < size; i++) {
+                out.putInt(userIds[i]);
+            }
+            pad(out);
+            for (int i = 0; i < size; i++) {
+                out.putLong(incomeCents[i]);
+            }
+            for (int i = 0; i < size; i++) {
+                out.putInt(paychecks[i]);
+            }
+            pad(out);
+            for (int i = 0; i <= size; i++) {
+                out.putInt(categoryStart[i]);
+            }
+            pad(out);
+            for (int r = 0; r < count; r++) {
+                switch (width) {
+                    case 1:
+                        out.put((byte) categoryCodes[r]);
+                        break;
+                    case 2:
+                        out.putShort((short) categoryCodes[r]);
+                        break;
+                    default:
+                        out.putInt(categoryCodes[r]);
+                }
+            }
+            pad(out);
+            for (int r = 0; r < count; r++) {
+                out.putShort(basisPoints[r]);
+            }
+            pad(out);
+            putStrings(out, usernames, size);
+            putStrings(out, passwords, size);
+            putStrings(out, salts, size);
+
+            blockOffsets.add(channel.position());
+            out.flip();
+            write(out);
+            Arrays.fill(usernames, 0, size, null);
+            Arrays.fill(passwords, 0, size, null);
+            Arrays.fill(salts, 0, size, null);
+            size = 0;
+            categoryStart[0] = 0;
+        }
+
+        private long stringBytes(byte[][] values) {
+            long total = 0;
+            for (int i = 0; i < size; i++) {
+                total += values[i].length;
+            }
+            return align(4L * (size + 1)) + align(total);
+        }
+
+        private static void putStrings(ByteBuffer out, byte[][] values, int count) {
+            int offset = 0;
+            out.putInt(0);
+            for (int i = 0; i < count; i++) {
+                offset += values[i].length;
+                out.putInt(offset);
+            }
+            pad(out);
+            for (int i = 0; i < count; i++) {
+                out.put(values[i]);
+            }
+            pad(out);
+        }
+
+        //Flush the last block and write the dictionary and block index; the file is unreadable until this runs
+        public void finish() throws IOException {
+            if (size > 0) {
+                writeBlock();
+            }
+            long footerOffset = channel.position();
+            byte[][] dictionary = new byte[names.size()][];
+            long nameBytes = 0;
+            for (int i = 0; i < dictionary.length; i++) {
+                dictionary[i] = names.get(i).getBytes(StandardCharsets.UTF_8);
+                nameBytes += dictionary[i].length;
+            }
+            ByteBuffer out = buffer(8 + align(4L * (dictionary.length + 1)) + align(nameBytes) + 8
+                    + 8L * blockOffsets.size() + TRAILER_BYTES);
+            out.putInt(dictionary.length).putInt(0);
+            putStrings(out, dictionary, dictionary.length);
+            out.putInt(blockOffsets.size()).putInt(0);
+            for (long offset : blockOffsets) {
+                out.putLong(offset);
+            }
+            out.putLong(footerOffset).put(END_MAGIC);
+            out.flip();
+            write(out);
+            channel.force(false);
+            finished = true;
+        }
+
+        private ByteBuffer buffer(long bytes) {
+            if (buffer.capacity() < bytes) {
+                buffer = ByteBuffer.allocateDirect((int) Math.min(Integer.MAX_VALUE - 8, Math.max(bytes, buffer.capacity() * 2L)))
+                        .order(ByteOrder.LITTLE_ENDIAN);
+            }
+            buffer.clear();
+            return buffer;
+        }
+
+        private void write(ByteBuffer out) throws IOException {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+            if (!finished) {
+                LOG.atWarn().log("Archive closed before finish(); the file is incomplete");
+            }
+        }
+    }
+
+    //Opens an archive: the footer is read up front, blocks are mapped on demand
+    public static class Reader implements AutoCloseable {
+        private final FileChannel channel;
+        private final String[] dictionary;
+        private final long[] blockOffsets;
+        private final long footerOffset;
+        private long users;
+        private long rows;
+
+        private Reader(FileChannel channel) throws IOException {
+            this.channel = channel;
+            long size = channel.size();
+            if (size < HEADER_BYTES + TRAILER_BYTES) {
+                throw new IOException("Not a budget archive: file is too short");
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            ByteBuffer trailer = channel.map(FileChannel.MapMode.READ_ONLY, size - TRAILER_BYTES, TRAILER_BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (!matches(header, 0, MAGIC) || !matches(trailer, 8, END_MAGIC)) {
+                throw new IOException("Not a budget archive, or an incomplete one");
+            }
+            if (header.getInt(8) != VERSION) {
+                throw new IOException("Unsupported archive version " + header.getInt(8));
+            }
+
+            footerOffset = trailer.getLong(0);
+            ByteBuffer footer = channel.map(FileChannel.MapMode.READ_ONLY, footerOffset, size - TRAILER_BYTES - footerOffset)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            int names = footer.getInt(0);
+            dictionary = new String[names];
+            int bytesStart = (int) align(8 + 4L * (names + 1));
+            for (int i = 0; i < names; i++) {
+                dictionary[i] = string(footer, 8, bytesStart, i);
+            }
+            int index = (int) (bytesStart + align(footer.getInt(8 + 4 * names)));
+            blockOffsets = new long[footer.getInt(index)];
+            for (int b = 0; b < blockOffsets.length; b++) {
+                blockOffsets[b] = footer.getLong(index + 8 + 8 * b);
+            }
+            ByteBuffer counts = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            for (long offset : blockOffsets) {
+                counts.clear();
+                while (counts.hasRemaining() && channel.read(counts, offset + counts.position()) >= 0) {
+                    //Positional reads may return short
+                }
+                users += counts.getInt(0);
+                rows += counts.getInt(4);
+            }
+        }
+
+        public static Reader open(Path file) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                return new Reader(channel);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        public long users() {
+            return users;
+        }
+
+        public long rows() {
+            return rows;
+        }
+
+        public int blockCount() {
+            return blockOffsets.length;
+        }
+
+        public int dictionarySize() {
+            return dictionary.length;
+        }
+
+        public String category(int code) {
+            return dictionary[code];
+        }
+
+        public Block block(int index) {
+            long end = index + 1 < blockOffsets.length ? blockOffsets[index + 1] : footerOffset;
+            try {
+                return new Block(channel.map(FileChannel.MapMode.READ_ONLY, blockOffsets[index], end - blockOffsets[index]));
+            } catch (IOException e) {
+                throw new IllegalStateException("Error mapping archive block " + index + ": " + e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        private static boolean matches(ByteBuffer buffer, int at, byte[] magic) {
+            for (int i = 0; i < magic.length; i++) {
+                if (buffer.get(at + i) != magic[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    //Zero-copy view of one block: every accessor reads the mapped file directly
+    public static final class Block {
+        private final MappedByteBuffer data;
+        private final int users;
+        private final int rows;
+        private final int codeWidth;
+        private final int userIds;
+        private final int incomes;
+        private final int paychecks;
+        private final int categoryStarts;
+        private final int codes;
+        private final int basisPoints;
+        private final int usernames;
+        private final int passwords;
+        private final int salts;
+
+        private Block(MappedByteBuffer data) {
+            data.order(ByteOrder.LITTLE_ENDIAN);
+            this.data = data;
+            users = data.getInt(0);
+            rows = data.getInt(4);
+            codeWidth = data.getInt(8);
+            userIds = 16;
+            incomes = userIds + (int) align(4L * users);
+            paychecks = incomes + 8 * users;
+            categoryStarts = paychecks + (int) align(4L * users);
+            codes = categoryStarts + (int) align(4L * (users + 1));
+            basisPoints = codes + (int) align((long) codeWidth * rows);
+            usernames = basisPoints + (int) align(2L * rows);
+            passwords = afterStrings(usernames);
+            salts = afterStrings(passwords);
+        }
+
+        //A string column is its offsets followed by its bytes; the last offset is the byte count
+        private int afterStrings(int offsets) {
+            int bytes = offsets + (int) align(4L * (users + 1));
+            return bytes + (int) align(data.getInt(offsets + 4 * users));
+        }
+
+        public int users() {
+            return users;
+        }
+
+        public int rows() {
+            return rows;
+        }
+
+        public int userId(int i) {
+            return data.getInt(userIds + 4 * i);
+        }
+
+        public long incomeCents(int i) {
+            return data.getLong(incomes + 8 * i);
+        }
+
+        //0 when the user has no budget
+        public int paychecks(int i) {
+            return data.getInt(paychecks + 4 * i);
+        }
+
+        //User i owns category rows [categoryStart(i), categoryStart(i + 1))
+        public int categoryStart(int i) {
+            return data.getInt(categoryStarts + 4 * i);
+        }
+
+        public int categoryCode(int row) {
+            switch (codeWidth) {
+                case 1:
+                    return data.get(codes + row) & 0xFF;
+                case 2:
+                    return data.getShort(codes + 2 * row) & 0xFFFF;
+                default:
+                    return data.getInt(codes + 4 * row);
+            }
+        }
+
+        public int basisPoints(int row) {
+            return data.getShort(basisPoints + 2 * row);
+        }
+
+        public String username(int i) {
+            return string(data, usernames, usernames + (int) align(4L * (users + 1)), i);
+        }
+
+        public String password(int i) {
+            return string(data, passwords, passwords + (int) align(4L * (users + 1)), i);
+        }
+
+        public String salt(int i) {
+            return string(data, salts, salts + (int) align(4L * (users + 1)), i);
+        }
+    }
+
+    //Value i of a string column whose offsets start at offsets and whose bytes start at bytes
+    private static String string(ByteBuffer data, int offsets, int bytes, int i) {
+        int from = data.getInt(offsets + 4 * i);
+        int to = data.getInt(offsets + 4 * (i + 1));
+        byte[] value = new byte[to - from];
+        data.get(bytes + from, value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    private static void pad(ByteBuffer out) {
+        while ((out.position() & 7) != 0) {
+            out.put((byte) 0);
+        }
+    }
+
+    public record Report(long users, long rows, int blocks, int categories, long bytes) {
+
+        public String describe(String action, double seconds) {
+            return String.format("%s %d users (%d category rows, %d blocks, %d distinct categories, %.1f MB) in %.2fs, %.0f users/sec",
+                    action, users, rows, blocks, categories, bytes / 1e6, seconds, seconds == 0 ? 0 : users / seconds);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package org.main;
+
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+//Bounded LRU cache of budgets by user id, with a TTL so edits from other processes are eventually seen
+public class BudgetCache {
+
+    public interface Loader {
+        Budget load(int userId) throws SQLException;
+    }
+
+    private record CachedBudget(Budget budget, long loadedAt) {
+    }
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LinkedHashMap<Integer, CachedBudget> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    //Bumped on every write so a load that raced with a save never caches the old budget
+    private long writeGeneration;
+
+    public BudgetCache(int maxEntries, long ttlMillis) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, CachedBudget> eldest) {
+                if (size() > BudgetCache.this.maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    //Return the cached budget, or load it and cache the result; null when the user has no budget
+    public Budget get(int userId, Loader loader) throws SQLException {
+        long generation;
+        synchronized (this) {
+            CachedBudget entry = entries.get(userId);
+            if (entry != null) {
+                if (System.nanoTime() - entry.loadedAt() < ttlNanos) {
+                    hits.increment();
+                    return entry.budget();
+                }
+                entries.remove(userId);
+                expirations.increment();
+            }
+            generation = writeGeneration;
+        }
+
+        misses.increment();
+        Budget budget = loader.load(userId);
+
+        if (budget != null && maxEntries > 0) {
+            synchronized (this) {
+                if (generation == writeGeneration) {
+                    entries.put(userId, new CachedBudget(budget, System.nanoTime()));
+                }
+            }
+        }
+        return budget;
+    }
+
+    //Drop the entry after a save commits. Writing the saved budget into the cache instead would race: two saves can
+    //commit in one order and reach the cache in the other, leaving the older budget cached until the TTL.
+    public synchronized void invalidate(int userId) {
+        writeGeneration++;
+        entries.remove(userId);
+    }
+
+    public synchronized void clear() {
+        writeGeneration++;
+        entries.clear();
+    }
+
+    public synchronized CacheStats stats() {
+        return new CacheStats(entries.size(), maxEntries, hits.sum(), misses.sum(), evictions.sum(), expirations.sum());
+    }
+
+    public record CacheStats(int size, int maxEntries, long hits, long misses, long evictions, long expirations) {
+
+        public double hitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : hits / (double) lookups;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("size=%d/%d hits=%d misses=%d hitRate=%.1f%% evictions=%d expirations=%d",
+                    size, maxEntries, hits, misses, hitRate() * 100, evictions, expirations);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package org.main;
+
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+public class BudgetDataSource {
+
+    //Default database location and pool settings
+    public static final String DEFAULT_DB_PATH = Paths.get(System.getProperty("user.home"), ".sqlite", "db", "cy310.db").toString();
+    public static final int DEFAULT_POOL_SIZE = 4;
+    public static final int DEFAULT_STATEMENT_CACHE_SIZE = 32;
+    private static final long BORROW_TIMEOUT_MILLIS = 30_000;
+    //How long a waiter blocks on the idle queue before checking whether a closed connection freed a slot
+    private static final long SLOT_CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private static BudgetDataSource shared;
+
+    private final String dbPath;
+    private final String url;
+    private final StorageProfile profile;
+    private final int maxSize;
+    private final int statementCacheSize;
+    private final BlockingQueue<PooledConnection> idle;
+    private final BudgetCache budgetCache;
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder borrows = new LongAdder();
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder borrowNanos = new LongAdder();
+    private final AtomicLong maxBorrowNanos = new AtomicLong();
+    private volatile boolean closed;
+    private volatile boolean shard;
+
+    //Loaded with the first physical connection rather than with this class, so creating the pool stays cheap
+    private static final class Driver {
+        static {
+            try {
+                // Explicitly load the SQLite JDBC driver
+                Class.forName("org.sqlite.JDBC");
+            } catch (ClassNotFoundException e) {
+                LoggerFactory.getLogger(BudgetDataSource.class).atError().setCause(e).log("SQLite JDBC driver not found");
+            }
+        }
+
+        static void load() {
+        }
+    }
+
+    public BudgetDataSource(String dbPath, StorageProfile profile, int maxSize, int statementCacheSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1");
+        }
+        this.dbPath = dbPath;
+        this.url = "jdbc:sqlite:" + dbPath;
+        this.profile = profile;
+        this.maxSize = maxSize;
+        this.statementCacheSize = statementCacheSize;
+        this.idle = new ArrayBlockingQueue<>(maxSize);
+
+        AppConfig config = AppConfig.current();
+        this.budgetCache = new BudgetCache(config.budgetCacheSize(), config.budgetCacheTtlMillis());
+    }
+
+    //Pool used by the console application, configured through AppConfig
+    public static synchronized BudgetDataSource shared() {
+        if (shared == null) {
+            AppConfig config = AppConfig.current();
+            shared = new BudgetDataSource(config.dbPath(), config.storageProfile(), config.poolSize(), config.statementCacheSize());
+        }
+        return shared;
+    }
+
+    public String getDbPath() {
+        return dbPath;
+    }
+
+    public StorageProfile getProfile() {
+        return profile;
+    }
+
+    //Set by ShardRouter; writes to a shard first check the user still lives there
+    void markShard() {
+        shard = true;
+    }
+
+    boolean isShard() {
+        return shard;
+    }
+
+    //Budgets read from this database, kept in step by BudgetRepository.save
+    public BudgetCache budgetCache() {
+        return budgetCache;
+    }
+
+    //Borrow a connection, opening a new one while under the pool limit and waiting otherwise
+    public PooledConnection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        long start = System.nanoTime();
+
+        PooledConnection conn = idle.poll();
+        if (conn == null) {
+            conn = openIfUnderLimit();
+        }
+        if (conn == null) {
+            waits.increment();
+            long deadline = start + TimeUnit.MILLISECONDS.toNanos(BORROW_TIMEOUT_MILLIS);
+            while (conn == null) {
+                if (closed) {
+                    throw new SQLException("Connection pool is closed");
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new SQLException("Timed out waiting for a database connection");
+                }
+                try {
+                    conn = idle.poll(Math.min(remaining, SLOT_CHECK_NANOS), TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted while waiting for a database connection", e);
+                }
+                //An unhealthy connection is closed on release instead of going back to idle, which frees a slot
+                //without waking anyone; look for the slot rather than wait out the whole timeout
+                if (conn == null) {
+                    conn = openIfUnderLimit();
+                }
+            }
+        }
+
+        active.incrementAndGet();
+        recordBorrow(System.nanoTime() - start);
+        return conn.lease();
+    }
+
+    private PooledConnection openIfUnderLimit() throws SQLException {
+        while (true) {
+            int current = total.get();
+            if (current >= maxSize) {
+                return null;
+            }
+            if (total.compareAndSet(current, current + 1)) {
+                Connection physical = null;
+                try {
+                    Driver.load();
+                    physical = DriverManager.getConnection(url);
+                    profile.apply(physical);
+                    return new PooledConnection(this, physical, statementCacheSize);
+                } catch (SQLException e) {
+                    total.decrementAndGet();
+                    if (physical != null) {
+                        physical.close();
+                    }
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private void recordBorrow(long nanos) {
+        borrows.increment();
+        borrowNanos.add(nanos);
+        long max = maxBorrowNanos.get();
+        while (nanos > max && !maxBorrowNanos.compareAndSet(max, nanos)) {
+            max = maxBorrowNanos.get();
+        }
+    }
+
+    //Called by PooledConnection.close()
+    void release(PooledConnection conn, boolean healthy) {
+        active.decrementAndGet();
+        if (!healthy || closed || !idle.offer(conn)) {
+            total.decrementAndGet();
+            conn.closePhysical();
+        }
+    }
+
+    public PoolMetrics metrics() {
+        long count = borrows.sum();
+        double avgMillis = count == 0 ? 0 : borrowNanos.sum() / (double) count / 1_000_000.0;
+        return new PoolMetrics(active.get(), idle.size(), total.get(), maxSize,
+                count, waits.sum(), avgMillis, maxBorrowNanos.get() / 1_000_000.0);
+    }
+
+    public void close() {
+        closed = true;
+        PooledConnection conn;
+        while ((conn = idle.poll()) != null) {
+            total.decrementAndGet();
+            conn.closePhysical();
+        }
+    }
+
+    public record PoolMetrics(int active, int idle, int total, int maxSize,
+                              long borrows, long waits, double avgBorrowMillis, double maxBorrowMillis) {
+
+        @Override
+        public String toString() {
+            return String.format("active=%d idle=%d total=%d/%d borrows=%d waits=%d avgBorrow=%.3fms maxBorrow=%.3fms",
+                    active, idle, total, maxSize, borrows, waits, avgBorrowMillis, maxBorrowMillis);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package org.main;
+
+//Raised by BudgetService for invalid input and storage failures; the message is safe to show to the user
+public class BudgetException extends Exception {
+
+    public BudgetException(String message) {
+        super(message);
+    }
+
+    public BudgetException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
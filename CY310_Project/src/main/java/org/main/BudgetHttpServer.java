@@ -0,0 +1,297 @@
+package org.main;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+//Embedded HTTP/JSON front end over BudgetService; every request runs on its own virtual thread.
+//
+//  POST   /api/users     {"username", "password"}                  -> 201 {"user_id"}
+//  POST   /api/login     {"username", "password"}                  -> 200 {"token", "user_id"}, 429 when throttled
+//  POST   /api/logout                                              -> 204
+//  GET    /api/budget                                              -> 200 budget
+//  PUT    /api/budget    {"income", "paychecks", "categories": {}} -> 200 budget
+//  POST   /api/allocate  {"amount"}                                -> 200 allocation
+//
+//Everything except /api/users and /api/login needs "Authorization: Bearer <token>".
+public class BudgetHttpServer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BudgetHttpServer.class);
+
+    public static final int DEFAULT_PORT = 8310;
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+    private static final BigDecimal MAX_AMOUNT = BigDecimal.valueOf(MoneyAllocator.MAX_AMOUNT_CENTS, 2);
+
+    private final BudgetService service;
+    private final SessionManager sessions;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    public BudgetHttpServer(BudgetService service, SessionManager sessions, int port) throws IOException {
+        this.service = service;
+        this.sessions = sessions;
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+
+        server.createContext("/api/users", exchange -> handle(exchange, "POST", false, this::register));
+        server.createContext("/api/login", exchange -> handle(exchange, "POST", false, this::login));
+        server.createContext("/api/logout", exchange -> handle(exchange, "POST", true, this::logout));
+        server.createContext("/api/budget", exchange -> handle(exchange, null, true, this::budget));
+        server.createContext("/api/allocate", exchange -> handle(exchange, "POST", true, this::allocate));
+        server.setExecutor(executor);
+    }
+
+    //Usage: serve [port]
+    public static void main(String[] args) {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        //Responses are small; without TCP_NODELAY each one can wait on a delayed ACK
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        try {
+            BudgetDataSource dataSource = BudgetDataSource.shared();
+            SchemaMigrations.migrate(dataSource);
+            AppConfig config = AppConfig.current();
+            SessionManager sessions = new SessionManager(config.getInt("cy310.http.sessionMinutes", 30) * 60_000L,
+                    config.getInt("cy310.http.maxSessions", 100_000));
+
+            BudgetHttpServer server = new BudgetHttpServer(BudgetService.shared(), sessions, port);
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+            server.start();
+            LOG.atInfo().addKeyValue("url", "http://localhost:" + port + "/api").log("Budget API listening");
+        } catch (IOException | SQLException e) {
+            LOG.atError().setCause(e).log("Error starting server");
+        }
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    private interface Handler {
+        Response handle(HttpExchange exchange, Integer userId, Map<String, Object> body) throws BudgetException;
+    }
+
+    private record Response(int status, String json) {
+    }
+
+    private void handle(HttpExchange exchange, String method, boolean authenticated, Handler handler) throws IOException {
+        try (exchange) {
+            Response response;
+            try {
+                if (method != null && !method.equals(exchange.getRequestMethod())) {
+                    response = error(405, "Use " + method + " for " + exchange.getRequestURI().getPath());
+                } else {
+                    Integer userId = null;
+                    if (authenticated) {
+                        userId = sessions.resolve(bearerToken(exchange));
+                    }
+                    if (authenticated && userId == null) {
+                        response = error(401, "Missing or expired session token.");
+                    } else {
+                        response = handler.handle(exchange, userId, readBody(exchange));
+                    }
+                }
+            } catch (LoginThrottledException e) {
+                exchange.getResponseHeaders().set("Retry-After", String.valueOf(e.retryAfterSeconds()));
+                response = error(429, e.getMessage());
+            } catch (BudgetException e) {
+                response = error(400, e.getMessage());
+            } catch (IllegalArgumentException | ClassCastException | ArithmeticException e) {
+                response = error(400, "Invalid request: " + e.getMessage());
+            } catch (IllegalStateException e) {
+                Metrics.error("http.unavailable");
+                response = error(503, e.getMessage());
+            } catch (RuntimeException e) {
+                //Anything else is a bug, but the client still gets an answer rather than a dropped connection
+                Metrics.error("http.internal");
+                LOG.atError().setCause(e).addKeyValue("path", exchange.getRequestURI().getPath()).log("Request failed");
+                response = error(500, "Internal server error.");
+            }
+            send(exchange, response);
+        }
+    }
+
+    private Response register(HttpExchange exchange, Integer userId, Map<String, Object> body) throws BudgetException {
+        int id = service.register(string(body, "username"), string(body, "password"));
+        return new Response(201, "{\"user_id\":" + id + "}");
+    }
+
+    private Response login(HttpExchange exchange, Integer userId, Map<String, Object> body) throws BudgetException {
+        Integer id = service.authenticate(string(body, "username"), string(body, "password"),
+                exchange.getRemoteAddress().getAddress().getHostAddress());
+        if (id == null) {
+            return error(401, "Login failed.");
+        }
+        StringBuilder out = new StringBuilder("{\"token\":");
+        Json.quote(out, sessions.create(id)).append(",\"user_id\":").append(id).append('}');
+        return new Response(200, out.toString());
+    }
+
+    private Response logout(HttpExchange exchange, Integer userId, Map<String, Object> body) {
+        sessions.revoke(bearerToken(exchange));
+        return new Response(204, null);
+    }
+
+    private Response budget(HttpExchange exchange, Integer userId, Map<String, Object> body) throws BudgetException {
+        switch (exchange.getRequestMethod()) {
+            case "GET":
+                Budget budget = service.getBudget(userId);
+                return budget == null ? error(404, "No budget found for this user.") : new Response(200, budgetJson(budget));
+
+            case "PUT":
+                Map<String, Double> categories = new LinkedHashMap<>();
+                for (Map.Entry<String, Object> entry : object(body, "categories").entrySet()) {
+                    if (!(entry.getValue() instanceof BigDecimal)) {
+                        throw new IllegalArgumentException("category " + entry.getKey() + " must be a number");
+                    }
+                    categories.put(entry.getKey(), ((BigDecimal) entry.getValue()).doubleValue());
+                }
+                Budget saved = service.saveBudget(userId, amount(body, "income").doubleValue(),
+                        integer(body, "paychecks"), categories);
+                return new Response(200, budgetJson(saved));
+
+            default:
+                return error(405, "Use GET or PUT for /api/budget");
+        }
+    }
+
+    private Response allocate(HttpExchange exchange, Integer userId, Map<String, Object> body) throws BudgetException {
+        long amountCents = MoneyAllocator.toCents(amount(body, "amount"));
+        Allocation allocation = service.allocate(userId, amountCents);
+
+        StringBuilder out = new StringBuilder("{\"amount\":").append(MoneyAllocator.format(allocation.amountCents()))
+                .append(",\"allocations\":[");
+        for (int i = 0; i < allocation.categoryCount(); i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            out.append("{\"category\":");
+            Json.quote(out, allocation.category(i)).append(",\"percentage\":").append(allocation.percentage(i))
+                    .append(",\"amount\":").append(MoneyAllocator.format(allocation.cents(i))).append('}');
+        }
+        return new Response(200, out.append("]}").toString());
+    }
+
+    private static String budgetJson(Budget budget) {
+        StringBuilder out = new StringBuilder("{\"user_id\":").append(budget.userId())
+                .append(",\"income\":").append(MoneyAllocator.format(budget.incomeCents()))
+                .append(",\"paychecks\":").append(budget.paychecks())
+                .append(",\"categories\":{");
+        for (int i = 0; i < budget.categoryCount(); i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            Json.quote(out, budget.category(i)).append(':').append(budget.percentage(i));
+        }
+        return out.append("}}").toString();
+    }
+
+    private static Response error(int status, String message) {
+        StringBuilder out = new StringBuilder("{\"error\":");
+        return new Response(status, Json.quote(out, message).append('}').toString());
+    }
+
+    private static String bearerToken(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.startsWith("Bearer ")) {
+            return null;
+        }
+        return header.substring("Bearer ".length()).trim();
+    }
+
+    private static Map<String, Object> readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] bytes = in.readNBytes(MAX_BODY_BYTES + 1);
+            if (bytes.length > MAX_BODY_BYTES) {
+                throw new IllegalArgumentException("request body is too large");
+            }
+            String text = new String(bytes, StandardCharsets.UTF_8);
+            return text.isBlank() ? Map.of() : Json.parseObject(text);
+        }
+    }
+
+    private static void send(HttpExchange exchange, Response response) throws IOException {
+        if (response.json() == null) {
+            exchange.sendResponseHeaders(response.status(), -1);
+            return;
+        }
+        byte[] bytes = response.json().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(response.status(), bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String string(Map<String, Object> body, String field) {
+        Object value = body.get(field);
+        if (!(value instanceof String)) {
+            throw new IllegalArgumentException(field + " must be a string");
+        }
+        return (String) value;
+    }
+
+    private static BigDecimal number(Map<String, Object> body, String field) {
+        Object value = body.get(field);
+        if (value instanceof String) {
+            return new BigDecimal((String) value);
+        }
+        if (!(value instanceof BigDecimal)) {
+            throw new IllegalArgumentException(field + " must be a number");
+        }
+        return (BigDecimal) value;
+    }
+
+    private static int integer(Map<String, Object> body, String field) {
+        BigDecimal value = number(body, field);
+        if (value.signum() != 0 && value.stripTrailingZeros().scale() > 0) {
+            throw new IllegalArgumentException(field + " must be a whole number");
+        }
+        if (value.compareTo(BigDecimal.valueOf(Integer.MIN_VALUE)) < 0 || value.compareTo(BigDecimal.valueOf(Integer.MAX_VALUE)) > 0) {
+            throw new IllegalArgumentException(field + " is out of range");
+        }
+        return value.intValueExact();
+    }
+
+    //Dollar amounts are bounded so a split across basis-point weights cannot overflow long cents
+    private static BigDecimal amount(Map<String, Object> body, String field) {
+        BigDecimal value = number(body, field);
+        if (value.abs().compareTo(MAX_AMOUNT) > 0) {
+            throw new IllegalArgumentException(field + " must not exceed " + MAX_AMOUNT.toPlainString());
+        }
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> object(Map<String, Object> body, String field) {
+        Object value = body.get(field);
+        if (!(value instanceof Map)) {
+            throw new IllegalArgumentException(field + " must be an object");
+        }
+        return (Map<String, Object>) value;
+    }
+}
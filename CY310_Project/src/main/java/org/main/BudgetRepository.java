@@ -0,0 +1,273 @@
+package org.main;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//Budget reads and writes, with the per-user cache kept in step
+public class BudgetRepository {
+
+    private static final LatencyHistogram LOAD_TIME = Metrics.histogram("sql.budget.load");
+    private static final LatencyHistogram SAVE_TIME = Metrics.histogram("sql.budget.save");
+
+    private static final String LOAD_SQL = "SELECT h.income, h.paychecks, b.category, b.percentage FROM budget_header h "
+            + "JOIN budgets b ON b.user_id = h.user_id WHERE h.user_id = ?";
+
+    //Read through the data source's budget cache; null when the user has no budget
+    public static Budget find(BudgetDataSource dataSource, int userId) throws SQLException {
+        return dataSource.budgetCache().get(userId, id -> load(dataSource, id));
+    }
+
+    //Always query the database
+    public static Budget load(BudgetDataSource dataSource, int userId) throws SQLException {
+        long start = Metrics.start();
+        try (PooledConnection conn = dataSource.borrow()) {
+            PreparedStatement pstmt = conn.prepare(LOAD_SQL);
+            pstmt.setInt(1, userId);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                long incomeCents = MoneyAllocator.toCents(rs.getDouble("income"));
+                int paychecks = rs.getInt("paychecks");
+                List<String> categories = new ArrayList<>();
+                int[] basisPoints = new int[8];
+                do {
+                    if (categories.size() == basisPoints.length) {
+                        basisPoints = Arrays.copyOf(basisPoints, basisPoints.length * 2);
+                    }
+                    basisPoints[categories.size()] = MoneyAllocator.toBasisPoints(rs.getDouble("percentage"));
+                    categories.add(rs.getString("category"));
+                } while (rs.next());
+
+                return new Budget(userId, incomeCents, paychecks, categories.toArray(new String[0]),
+                        Arrays.copyOf(basisPoints, categories.size()));
+            }
+        } finally {
+            Metrics.stop(LOAD_TIME, start);
+        }
+    }
+
+    //REPLACE rewrites every category; INCREMENTAL only touches categories that changed
+    public enum SaveMode { REPLACE, INCREMENTAL }
+
+    //Save a budget in a single transaction so a crash never leaves it half-written.
+    //Any change also appends a snapshot to budget_versions, so earlier budgets stay queryable.
+    public static void save(BudgetDataSource dataSource, int userId, double income, int paychecks,
+                            Map<String, Double> categories, SaveMode mode) throws SQLException {
+        Budget budget = Budget.of(userId, income, paychecks, categories);
+        long start = Metrics.start();
+        try (PooledConnection conn = dataSource.borrow()) {
+            Connection connection = conn.connection();
+            connection.setAutoCommit(false);
+            //Take the write lock before the first read: INCREMENTAL reads the stored budget first, and a deferred
+            //transaction that reads and then writes fails with SQLITE_BUSY if another save commits in between
+            if (dataSource.isShard()) {
+                ShardRouter.checkResident(conn, userId);
+            } else {
+                ShardRouter.lockForWrite(conn);
+            }
+
+            write(conn, budget, income, paychecks, categories, mode);
+            connection.commit();
+        } finally {
+            Metrics.stop(SAVE_TIME, start);
+        }
+
+        dataSource.budgetCache().invalidate(userId);
+    }
+
+    //Body of save for a caller that already holds the transaction, such as WriteBehindQueue's group commit
+    static void write(PooledConnection conn, Budget budget, double income, int paychecks, Map<String, Double> categories,
+                      SaveMode mode) throws SQLException {
+        boolean changed;
+        if (mode == SaveMode.REPLACE) {
+            replaceBudget(conn, budget.userId(), income, paychecks, categories);
+            changed = true;
+        } else {
+            changed = diffBudget(conn, budget.userId(), income, paychecks, categories);
+        }
+        if (changed) {
+            saveSnapshot(conn, budget, System.currentTimeMillis());
+        }
+    }
+
+    //Latest snapshot version for a user, 0 when none has been saved
+    public static int currentVersion(BudgetDataSource dataSource, int userId) throws SQLException {
+        try (PooledConnection conn = dataSource.borrow()) {
+            return currentVersion(conn, userId);
+        }
+    }
+
+    static int currentVersion(PooledConnection conn, int userId) throws SQLException {
+        PreparedStatement stmt = conn.prepare("SELECT MAX(version) FROM budget_versions WHERE user_id = ?");
+        stmt.setInt(1, userId);
+        try (ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    //Load a past version of a user's budget, or null if it does not exist
+    public static Budget loadVersion(BudgetDataSource dataSource, int userId, int version) throws SQLException {
+        String sql = "SELECT v.income_cents, v.paychecks, c.category, c.basis_points FROM budget_versions v "
+                + "JOIN budget_version_categories c ON c.user_id = v.user_id AND c.version = v.version "
+                + "WHERE v.user_id = ? AND v.version = ?";
+        try (PooledConnection conn = dataSource.borrow()) {
+            PreparedStatement stmt = conn.prepare(sql);
+            stmt.setInt(1, userId);
+            stmt.setInt(2, version);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                long incomeCents = rs.getLong("income_cents");
+                int paychecks = rs.getInt("paychecks");
+                List<String> categories = new ArrayList<>();
+                int[] basisPoints = new int[8];
+                do {
+                    if (categories.size() == basisPoints.length) {
+                        basisPoints = Arrays.copyOf(basisPoints, basisPoints.length * 2);
+                    }
+                    basisPoints[categories.size()] = rs.getInt("basis_points");
+                    categories.add(rs.getString("category"));
+                } while (rs.next());
+
+                return new Budget(userId, incomeCents, paychecks, categories.toArray(new String[0]),
+                        Arrays.copyOf(basisPoints, categories.size()));
+            }
+        }
+    }
+
+    private static void saveSnapshot(PooledConnection conn, Budget budget, long createdAt) throws SQLException {
+        String versionSQL = "INSERT INTO budget_versions (user_id, version, created_at, income_cents, paychecks) "
+                + "VALUES (?, ?, ?, ?, ?)";
+        String categorySQL = "INSERT INTO budget_version_categories (user_id, version, category, basis_points) "
+                + "VALUES (?, ?, ?, ?)";
+
+        int version = currentVersion(conn, budget.userId()) + 1;
+        PreparedStatement versionStmt = conn.prepare(versionSQL);
+        versionStmt.setInt(1, budget.userId());
+        versionStmt.setInt(2, version);
+        versionStmt.setLong(3, createdAt);
+        versionStmt.setLong(4, budget.incomeCents());
+        versionStmt.setInt(5, budget.paychecks());
+        versionStmt.executeUpdate();
+
+        PreparedStatement categoryStmt = conn.prepare(categorySQL);
+        for (int i = 0; i < budget.categoryCount(); i++) {
+            categoryStmt.setInt(1, budget.userId());
+            categoryStmt.setInt(2, version);
+            categoryStmt.setString(3, budget.category(i));
+            categoryStmt.setInt(4, budget.basisPoints(i));
+            categoryStmt.addBatch();
+        }
+        categoryStmt.executeBatch();
+    }
+
+    private static void replaceBudget(PooledConnection conn, int userId, double income, int paychecks,
+                                      Map<String, Double> categories) throws SQLException {
+        String deleteSQL = "DELETE FROM budgets WHERE user_id = ?";
+        String insertSQL = "INSERT INTO budgets (user_id, category, percentage) VALUES (?, ?, ?)";
+
+        saveHeader(conn, userId, income, paychecks);
+
+        // Clear old budget for the user
+        PreparedStatement deleteStmt = conn.prepare(deleteSQL);
+        deleteStmt.setInt(1, userId);
+        deleteStmt.executeUpdate();
+
+        // Insert new budget data
+        PreparedStatement insertStmt = conn.prepare(insertSQL);
+        for (Map.Entry<String, Double> entry : categories.entrySet()) {
+            insertStmt.setInt(1, userId);
+            insertStmt.setString(2, entry.getKey());
+            insertStmt.setDouble(3, entry.getValue());
+            insertStmt.addBatch();
+        }
+        insertStmt.executeBatch();
+    }
+
+    //Returns true when anything was written
+    private static boolean diffBudget(PooledConnection conn, int userId, double income, int paychecks,
+                                   Map<String, Double> categories) throws SQLException {
+        String headerSQL = "SELECT income, paychecks FROM budget_header WHERE user_id = ?";
+        String selectSQL = "SELECT category, percentage FROM budgets WHERE user_id = ?";
+        String upsertSQL = "INSERT INTO budgets (user_id, category, percentage) VALUES (?, ?, ?) "
+                + "ON CONFLICT (user_id, category) DO UPDATE SET percentage = excluded.percentage";
+        String deleteSQL = "DELETE FROM budgets WHERE user_id = ? AND category = ?";
+
+        // Only rewrite the header when income or paychecks changed
+        PreparedStatement headerStmt = conn.prepare(headerSQL);
+        headerStmt.setInt(1, userId);
+        boolean headerChanged;
+        try (ResultSet rs = headerStmt.executeQuery()) {
+            headerChanged = !rs.next()
+                    || Double.compare(rs.getDouble("income"), income) != 0
+                    || rs.getInt("paychecks") != paychecks;
+        }
+        if (headerChanged) {
+            saveHeader(conn, userId, income, paychecks);
+        }
+
+        // Load what is stored now
+        Map<String, Double> stored = new HashMap<>();
+        PreparedStatement selectStmt = conn.prepare(selectSQL);
+        selectStmt.setInt(1, userId);
+        try (ResultSet rs = selectStmt.executeQuery()) {
+            while (rs.next()) {
+                stored.put(rs.getString("category"), rs.getDouble("percentage"));
+            }
+        }
+
+        PreparedStatement upsertStmt = conn.prepare(upsertSQL);
+        PreparedStatement deleteStmt = conn.prepare(deleteSQL);
+        int upserts = 0;
+        int deletes = 0;
+
+        for (Map.Entry<String, Double> entry : categories.entrySet()) {
+            Double previous = stored.get(entry.getKey());
+            if (previous == null || Double.compare(previous, entry.getValue()) != 0) {
+                upsertStmt.setInt(1, userId);
+                upsertStmt.setString(2, entry.getKey());
+                upsertStmt.setDouble(3, entry.getValue());
+                upsertStmt.addBatch();
+                upserts++;
+            }
+        }
+
+        for (String category : stored.keySet()) {
+            if (!categories.containsKey(category)) {
+                deleteStmt.setInt(1, userId);
+                deleteStmt.setString(2, category);
+                deleteStmt.addBatch();
+                deletes++;
+            }
+        }
+
+        if (deletes > 0) {
+            deleteStmt.executeBatch();
+        }
+        if (upserts > 0) {
+            upsertStmt.executeBatch();
+        }
+        return headerChanged || upserts > 0 || deletes > 0;
+    }
+
+    private static void saveHeader(PooledConnection conn, int userId, double income, int paychecks) throws SQLException {
+        String upsertSQL = "INSERT INTO budget_header (user_id, income, paychecks) VALUES (?, ?, ?) "
+                + "ON CONFLICT (user_id) DO UPDATE SET income = excluded.income, paychecks = excluded.paychecks";
+
+        PreparedStatement stmt = conn.prepare(upsertSQL);
+        stmt.setInt(1, userId);
+        stmt.setDouble(2, income);
+        stmt.setInt(3, paychecks);
+        stmt.executeUpdate();
+    }
+}
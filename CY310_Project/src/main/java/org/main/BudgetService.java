@@ -0,0 +1,274 @@
+package org.main;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.time.YearMonth;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+//Headless API over the budget operations. It keeps no per-user state, so one instance can serve any number of
+//concurrent users and front ends; the console classes are thin wrappers around it.
+public class BudgetService {
+
+    //SQLite primary result code for constraint violations such as a duplicate username; extended codes keep it in the low byte
+    private static final int SQLITE_CONSTRAINT = 19;
+
+    private static final Logger LOG = LoggerFactory.getLogger(BudgetService.class);
+    private static final LatencyHistogram LOGIN_TIME = Metrics.histogram("login");
+    private static final LatencyHistogram QUERY_TIME = Metrics.histogram("query");
+    private static final LatencyHistogram SAVE_TIME = Metrics.histogram("save");
+    private static final LatencyHistogram ALLOCATE_TIME = Metrics.histogram("allocate");
+
+    private static BudgetService shared;
+
+    private final ShardRouter shards;
+    private final Passwords passwords;
+    private final LoginThrottle throttle;
+    //Null unless write-behind is on, in which case saves and allocations are queued and committed in groups
+    private final WriteBehindQueue writes;
+
+    public BudgetService(BudgetDataSource dataSource, Passwords passwords) {
+        this(ShardRouter.single(dataSource), passwords);
+    }
+
+    public BudgetService(ShardRouter shards, Passwords passwords) {
+        this(shards, passwords, LoginThrottle.fromConfig(AppConfig.current()));
+    }
+
+    public BudgetService(ShardRouter shards, Passwords passwords, LoginThrottle throttle) {
+        this(shards, passwords, throttle, null);
+    }
+
+    public BudgetService(ShardRouter shards, Passwords passwords, LoginThrottle throttle, WriteBehindQueue writes) {
+        this.shards = shards;
+        this.passwords = passwords;
+        this.throttle = throttle;
+        this.writes = writes;
+    }
+
+    public static synchronized BudgetService shared() {
+        if (shared == null) {
+            AppConfig config = AppConfig.current();
+            ShardRouter shards = ShardRouter.fromConfig(config);
+            shared = new BudgetService(shards, Passwords.fromConfig(config), LoginThrottle.fromConfig(config),
+                    WriteBehindQueue.fromConfig(config, shards));
+            Metrics.install(shared);
+        }
+        return shared;
+    }
+
+    //Shard 0, which is the whole database unless sharding is configured
+    public BudgetDataSource dataSource() {
+        return shards.primary();
+    }
+
+    public ShardRouter shards() {
+        return shards;
+    }
+
+    public Passwords passwords() {
+        return passwords;
+    }
+
+    public LoginThrottle throttle() {
+        return throttle;
+    }
+
+    public WriteBehindQueue writes() {
+        return writes;
+    }
+
+    //Wait until every queued save and allocation is on disk; returns at once when writes are not queued
+    public void flushWrites() {
+        if (writes != null) {
+            writes.flush();
+        }
+    }
+
+    //Create an account and return its user id
+    public int register(String username, String password) throws BudgetException {
+        if (username == null || username.isBlank() || password == null || password.isEmpty()) {
+            throw new BudgetException("Username and password are required.");
+        }
+        String passwordHash = passwords.hash(password);
+        try {
+            return shards.createUser(username, passwordHash);
+        } catch (SQLException e) {
+            if ((e.getErrorCode() & 0xFF) == SQLITE_CONSTRAINT) {
+                throw new BudgetException("Username '" + username + "' is already taken.", e);
+            }
+            throw failure("register", null, "Error inserting user", e);
+        }
+    }
+
+    //Return the user id for valid credentials, or null. Hashes made with old settings are upgraded on success.
+    public Integer authenticate(String username, String password) throws BudgetException {
+        return authenticate(username, password, null);
+    }
+
+    //As above, also throttling by the caller's address when there is one. Throttled attempts are refused before
+    //any lookup or hashing with LoginThrottledException.
+    public Integer authenticate(String username, String password, String source) throws BudgetException {
+        if (username == null || password == null) {
+            return null;
+        }
+        long wait = throttle.check(username, source);
+        if (wait > 0) {
+            throw new LoginThrottledException(wait);
+        }
+        long start = Metrics.start();
+        try {
+            UserRepository.Credentials credentials = shards.findCredentials(username);
+            String storedHash = credentials == null ? null : credentials.storedHash();
+            if (!passwords.verify(password, storedHash)) {
+                throttle.recordFailure(username, source);
+                return null;
+            }
+            throttle.recordSuccess(username);
+            if (passwords.needsRehash(storedHash)) {
+                String upgraded = passwords.hash(password);
+                shards.write(credentials.userId(), shard -> {
+                    UserRepository.updatePasswordHash(shard, credentials.userId(), upgraded);
+                    return null;
+                });
+            }
+            return credentials.userId();
+        } catch (SQLException e) {
+            throw failure("login", null, "Error verifying user", e);
+        } finally {
+            Metrics.stop(LOGIN_TIME, start);
+        }
+    }
+
+    //Validate and store a budget, returning what was saved
+    public Budget saveBudget(int userId, double income, int paychecks, Map<String, Double> percentages) throws BudgetException {
+        if (!(income > 0)) {
+            throw new BudgetException("Monthly income must be positive.");
+        }
+        if (MoneyAllocator.toCents(income) > MoneyAllocator.MAX_AMOUNT_CENTS) {
+            throw new BudgetException("Monthly income is too large.");
+        }
+        if (paychecks <= 0) {
+            throw new BudgetException("Paychecks per month must be a positive integer.");
+        }
+        if (percentages.isEmpty()) {
+            throw new BudgetException("A budget needs at least one category.");
+        }
+
+        //Percentages are kept to two decimal places, so round before checking the total
+        Map<String, Double> rounded = new LinkedHashMap<>();
+        int totalBasisPoints = 0;
+        for (Map.Entry<String, Double> entry : percentages.entrySet()) {
+            if (entry.getKey() == null || entry.getKey().isBlank()) {
+                throw new BudgetException("Category names must not be blank.");
+            }
+            int basisPoints = MoneyAllocator.toBasisPoints(entry.getValue());
+            if (basisPoints <= 0) {
+                throw new BudgetException("The percentage for " + entry.getKey() + " must be at least 0.01%.");
+            }
+            totalBasisPoints += basisPoints;
+            rounded.put(entry.getKey(), MoneyAllocator.toPercentage(basisPoints));
+        }
+        if (totalBasisPoints != MoneyAllocator.FULL_BASIS_POINTS) {
+            throw new BudgetException(String.format("Your percentages total %.2f%%. They must total 100%%.",
+                    MoneyAllocator.toPercentage(totalBasisPoints)));
+        }
+
+        Budget budget = Budget.of(userId, income, paychecks, rounded);
+        if (writes != null) {
+            writes.submitBudget(budget, income, paychecks, rounded);
+            return budget;
+        }
+        long start = Metrics.start();
+        try {
+            shards.write(userId, shard -> {
+                BudgetRepository.save(shard, userId, income, paychecks, rounded, BudgetRepository.SaveMode.INCREMENTAL);
+                return null;
+            });
+        } catch (SQLException e) {
+            throw failure("save", userId, "Error saving budget", e);
+        } finally {
+            Metrics.stop(SAVE_TIME, start);
+        }
+        return budget;
+    }
+
+    //The user's budget, or null when none has been entered
+    public Budget getBudget(int userId) throws BudgetException {
+        Budget pending = writes == null ? null : writes.pendingBudget(userId);
+        if (pending != null) {
+            return pending;
+        }
+        long start = Metrics.start();
+        try {
+            return shards.read(userId, shard -> BudgetRepository.find(shard, userId));
+        } catch (SQLException e) {
+            throw failure("query", userId, "Error fetching budget", e);
+        } finally {
+            Metrics.stop(QUERY_TIME, start);
+        }
+    }
+
+    //Split a paycheck across the user's budget and record it in the allocation ledger
+    public Allocation allocate(int userId, long amountCents) throws BudgetException {
+        if (amountCents <= 0) {
+            throw new BudgetException("Please enter a positive amount.");
+        }
+        if (amountCents > MoneyAllocator.MAX_AMOUNT_CENTS) {
+            throw new BudgetException("That amount is too large to allocate.");
+        }
+        Budget budget = getBudget(userId);
+        if (budget == null || budget.categoryCount() == 0) {
+            throw new BudgetException("No budget created.");
+        }
+        long start = Metrics.start();
+        try {
+            Allocation allocation = new Allocation(budget, amountCents);
+            long now = System.currentTimeMillis();
+            if (writes != null) {
+                writes.submitAllocation(allocation, now);
+            } else {
+                shards.write(userId, shard -> LedgerRepository.record(shard, allocation, now));
+            }
+            return allocation;
+        } catch (SQLException e) {
+            throw failure("allocate", userId, "Error recording allocation", e);
+        } finally {
+            Metrics.stop(ALLOCATE_TIME, start);
+        }
+    }
+
+    //Most recent allocations, newest first
+    public List<LedgerRepository.LedgerEntry> recentAllocations(int userId, int limit) throws BudgetException {
+        //The ledger is only read from disk, so queued allocations have to land first
+        flushWrites();
+        try {
+            return shards.read(userId, shard -> LedgerRepository.recentEntries(shard, userId, 0, limit));
+        } catch (SQLException e) {
+            throw failure("history", userId, "Error fetching allocation history", e);
+        }
+    }
+
+    //Per-category totals for the current month and the months before it
+    public List<LedgerRepository.MonthlyTotal> monthlyTotals(int userId, int months) throws BudgetException {
+        YearMonth from = YearMonth.now().minusMonths(Math.max(0, months - 1));
+        flushWrites();
+        try {
+            int fromMonth = from.getYear() * 100 + from.getMonthValue();
+            return shards.read(userId, shard -> LedgerRepository.monthlyTotals(shard, userId, fromMonth));
+        } catch (SQLException e) {
+            throw failure("history", userId, "Error fetching monthly totals", e);
+        }
+    }
+
+    //Count and log a database failure, and wrap it for the caller
+    private static BudgetException failure(String operation, Integer userId, String message, SQLException e) {
+        Metrics.error(operation);
+        LOG.atError().setCause(e).addKeyValue("operation", operation).addKeyValue("userId", userId)
+                .addKeyValue("sqlState", e.getSQLState()).addKeyValue("errorCode", e.getErrorCode()).log(message);
+        return new BudgetException(message + ": " + e.getMessage(), e);
+    }
+}
@@ -0,0 +1,573 @@
+package org.main;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+//Fills a database with users, hashed credentials and budgets for capacity planning, either generated or read from
+//CSV. Users are written a chunk per transaction through batched statements in key order, passwords are hashed in
+//parallel, and secondary indexes on the loaded tables are dropped for the load and rebuilt afterwards.
+//
+//CSV format, one user per line: username,password,income,paychecks,Category:percent|Category:percent|...
+//Lines that repeat a category, or a username seen earlier in the file or already in the database, are skipped as
+//malformed rather than failing the chunk's constraints and stopping the load.
+public class BulkLoader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BulkLoader.class);
+
+    public static final int DEFAULT_CHUNK_SIZE = 20_000;
+    //Cheap enough for millions of rows; hashes are upgraded to the configured cost on each user's first login
+    public static final int DEFAULT_ITERATIONS = 1_000;
+
+    private static final String[] LOADED_TABLES = {"users", "budget_header", "budgets", "budget_versions", "budget_version_categories"};
+
+    //Sorted so each generated budget's categories come out in primary-key order; weights are typical relative shares
+    private static final String[] CATEGORY_NAMES = {
+            "Charity", "Childcare", "Clothing", "Debt", "Dining", "Education", "Emergency Fund", "Entertainment",
+            "Gifts", "Groceries", "Healthcare", "Insurance", "Personal Care", "Pets", "Rent", "Savings",
+            "Subscriptions", "Transportation", "Travel", "Utilities"};
+    private static final int[] CATEGORY_WEIGHTS = {
+            3, 10, 4, 12, 6, 6, 8, 5, 2, 14, 6, 8, 2, 3, 35, 12, 2, 12, 5, 9};
+
+    private final BudgetDataSource dataSource;
+    private final PasswordHasher hasher;
+    private final int threads;
+    private final int chunkSize;
+
+    public BulkLoader(BudgetDataSource dataSource, PasswordHasher hasher, int threads, int chunkSize) {
+        this.dataSource = dataSource;
+        this.hasher = hasher;
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+    }
+
+    //Usage: load generate <users> [options] | load import <file.csv> [options] | load csv <out.csv> <users> [options]
+    //Options: --min-categories N --max-categories N --password P --seed N --iterations N --threads N --chunk N
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("""
+                    Usage: load generate <users> [options]
+                           load import <file.csv> [options]
+                           load csv <out.csv> <users> [options]
+                    Options: --min-categories N --max-categories N --password P --seed N --iterations N --threads N --chunk N
+                    Imported usernames that already exist in the database are skipped and counted as malformed.""");
+            return;
+        }
+        int firstOption = args[0].equals("csv") ? 3 : 2;
+        int minCategories = 3;
+        int maxCategories = 12;
+        String password = "password";
+        long seed = 310;
+        int iterations = DEFAULT_ITERATIONS;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int chunkSize = DEFAULT_CHUNK_SIZE;
+        for (int i = firstOption; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--min-categories":
+                    minCategories = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--max-categories":
+                    maxCategories = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--password":
+                    password = args[i + 1];
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[i + 1]);
+                    break;
+                case "--iterations":
+                    iterations = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--chunk":
+                    chunkSize = Integer.parseInt(args[i + 1]);
+                    break;
+                default:
+                    System.out.println("Ignoring unknown option " + args[i]);
+            }
+        }
+        if (minCategories < 1 || maxCategories < minCategories || maxCategories > CATEGORY_NAMES.length) {
+            System.out.println("Categories per user must be between 1 and " + CATEGORY_NAMES.length + ".");
+            return;
+        }
+        Generator generator = new Generator(new Random(seed), minCategories, maxCategories, password);
+
+        try {
+            if (args[0].equals("csv")) {
+                long start = System.nanoTime();
+                long users = Long.parseLong(args[2]);
+                writeCsv(Paths.get(args[1]), users, generator);
+                double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+                System.out.printf("Wrote %d users to %s in %.2fs%n", users, args[1], seconds);
+                return;
+            }
+
+            //Bulk loads favour speed over durability. If the machine crashes or loses power part way, the database file
+            //may be corrupt: restore it from a backup or delete it and rerun the load
+            AppConfig config = AppConfig.current();
+            ShardRouter router = ShardRouter.fromConfig(config);
+            if (router.isSharded() || router.directoryExists()) {
+                //The shard directory hands out user ids, so ids picked here could clash with users on other shards
+                System.out.println("Bulk loads need an unsharded database; load with " + ShardRouter.COUNT_KEY
+                        + "=1 before sharding, then run shards rebalance.");
+                return;
+            }
+            Files.createDirectories(Paths.get(config.dbPath()).toAbsolutePath().getParent());
+            BudgetDataSource dataSource = new BudgetDataSource(config.dbPath(), StorageProfile.THROUGHPUT, 1,
+                    BudgetDataSource.DEFAULT_STATEMENT_CACHE_SIZE);
+            SchemaMigrations.migrate(dataSource);
+            BulkLoader loader = new BulkLoader(dataSource, new Pbkdf2PasswordHasher(iterations), threads, chunkSize);
+
+            Report report;
+            switch (args[0]) {
+                case "generate":
+                    report = loader.generate(Long.parseLong(args[1]), generator);
+                    break;
+                case "import":
+                    report = loader.importCsv(Paths.get(args[1]));
+                    break;
+                default:
+                    System.out.println("Unknown load command " + args[0]);
+                    return;
+            }
+            dataSource.close();
+            System.out.println(report);
+            System.out.printf("Passwords were hashed with %d PBKDF2 iterations and are upgraded on first login.%n", iterations);
+        } catch (IOException | SQLException e) {
+            LOG.atError().setCause(e).log("Error loading data");
+        }
+    }
+
+    public Report generate(long users, Generator generator) throws SQLException {
+        Chunk chunk = new Chunk(chunkSize, CATEGORY_NAMES.length);
+        return load(chunk, () -> {
+            if (chunk.loaded + chunk.size >= users) {
+                return false;
+            }
+            generator.next(chunk);
+            return true;
+        });
+    }
+
+    public Report importCsv(Path input) throws IOException, SQLException {
+        Chunk chunk = new Chunk(chunkSize, CATEGORY_NAMES.length);
+        try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+            long[] lineNumber = new long[1];
+            return load(chunk, () -> {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lineNumber[0]++;
+                    if (line.isBlank() || (lineNumber[0] == 1 && line.startsWith("username,"))) {
+                        continue;
+                    }
+                    try {
+                        parseCsvLine(line, chunk);
+                        return true;
+                    } catch (RuntimeException e) {
+                        chunk.malformed++;
+                        LOG.atWarn().addKeyValue("line", lineNumber[0]).addKeyValue("reason", e.getMessage()).log("Skipping malformed line");
+                    }
+                }
+                return false;
+            });
+        }
+    }
+
+    //Pulls one more user into the chunk; false when the source is exhausted
+    private interface Source {
+        boolean next() throws IOException;
+    }
+
+    private Report load(Chunk chunk, Source source) throws SQLException {
+        long start = System.nanoTime();
+        ForkJoinPool workers = new ForkJoinPool(threads);
+        try (PooledConnection conn = dataSource.borrow()) {
+            Connection connection = conn.connection();
+            List<String> indexes = dropSecondaryIndexes(connection);
+            chunk.nextUserId = maxUserId(conn) + 1;
+
+            double indexSeconds;
+            try {
+                while (source.next()) {
+                    if (chunk.size == chunkSize) {
+                        writeChunk(workers, conn, chunk);
+                        printProgress(chunk, start);
+                    }
+                }
+                if (chunk.size > 0) {
+                    writeChunk(workers, conn, chunk);
+                }
+            } catch (IOException e) {
+                throw new SQLException("Error reading input: " + e.getMessage(), e);
+            } finally {
+                //Indexes come back even when the load stops part way; committed chunks stay loaded
+                if (!connection.getAutoCommit()) {
+                    connection.rollback();
+                    connection.setAutoCommit(true);
+                }
+                long indexStart = System.nanoTime();
+                try (Statement stmt = connection.createStatement()) {
+                    for (String sql : indexes) {
+                        stmt.execute(sql);
+                    }
+                    stmt.execute("ANALYZE");
+                }
+                indexSeconds = (System.nanoTime() - indexStart) / 1_000_000_000.0;
+            }
+
+            double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+            return new Report(chunk.loaded, chunk.rows, chunk.malformed, indexes.size(), indexSeconds, seconds);
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    //Hash the chunk's passwords in parallel, then write every row for it in one transaction
+    private void writeChunk(ForkJoinPool workers, PooledConnection conn, Chunk chunk) throws SQLException {
+        int size = chunk.size;
+        boolean[] skip = existingUsernames(conn, chunk);
+        try {
+            workers.submit(() -> IntStream.range(0, size).parallel().filter(i -> !skip[i])
+                    .forEach(i -> chunk.hashes[i] = hasher.hash(chunk.passwords[i]))).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while hashing passwords", e);
+        } catch (ExecutionException e) {
+            throw new SQLException("Password hashing failed: " + e.getCause().getMessage(), e.getCause());
+        }
+
+        long createdAt = System.currentTimeMillis();
+        Connection connection = conn.connection();
+        connection.setAutoCommit(false);
+        PreparedStatement users = conn.prepare("INSERT INTO users (id, username, password, salt) VALUES (?, ?, ?, '')");
+        PreparedStatement headers = conn.prepare("INSERT INTO budget_header (user_id, income, paychecks) VALUES (?, ?, ?)");
+        PreparedStatement budgets = conn.prepare("INSERT INTO budgets (user_id, category, percentage) VALUES (?, ?, ?)");
+        PreparedStatement versions = conn.prepare("INSERT INTO budget_versions (user_id, version, created_at, income_cents, paychecks) "
+                + "VALUES (?, 1, ?, ?, ?)");
+        PreparedStatement versionCategories = conn.prepare("INSERT INTO budget_version_categories (user_id, version, category, basis_points) "
+                + "VALUES (?, 1, ?, ?)");
+
+        int written = 0;
+        int categoryRows = 0;
+        for (int i = 0; i < size; i++) {
+            if (skip[i]) {
+                continue;
+            }
+            int userId = chunk.nextUserId + written++;
+            String username = chunk.usernames[i] != null ? chunk.usernames[i] : String.format("user-%09d", userId);
+            users.setInt(1, userId);
+            users.setString(2, username);
+            users.setString(3, chunk.hashes[i]);
+            users.addBatch();
+
+            headers.setInt(1, userId);
+            headers.setDouble(2, chunk.incomeCents[i] / 100.0);
+            headers.setInt(3, chunk.paychecks[i]);
+            headers.addBatch();
+
+            versions.setInt(1, userId);
+            versions.setLong(2, createdAt);
+            versions.setLong(3, chunk.incomeCents[i]);
+            versions.setInt(4, chunk.paychecks[i]);
+            versions.addBatch();
+
+            for (int c = chunk.categoryStart[i]; c < chunk.categoryStart[i + 1]; c++) {
+                budgets.setInt(1, userId);
+                budgets.setString(2, chunk.categories[c]);
+                budgets.setDouble(3, MoneyAllocator.toPercentage(chunk.basisPoints[c]));
+                budgets.addBatch();
+
+                versionCategories.setInt(1, userId);
+                versionCategories.setString(2, chunk.categories[c]);
+                versionCategories.setInt(3, chunk.basisPoints[c]);
+                versionCategories.addBatch();
+                categoryRows++;
+            }
+        }
+        users.executeBatch();
+        headers.executeBatch();
+        budgets.executeBatch();
+        versions.executeBatch();
+        versionCategories.executeBatch();
+        connection.commit();
+        connection.setAutoCommit(true);
+
+        chunk.rows += 3L * written + 2L * categoryRows;
+        chunk.loaded += written;
+        chunk.malformed += size - written;
+        chunk.nextUserId += written;
+        chunk.clear();
+    }
+
+    //Imported usernames already in the database, from an earlier chunk or from before the load. Inserting one would
+    //fail the UNIQUE constraint and abort the load, so those users are skipped. Generated users are named after
+    //fresh ids and are not checked.
+    private static boolean[] existingUsernames(PooledConnection conn, Chunk chunk) throws SQLException {
+        boolean[] skip = new boolean[chunk.size];
+        PreparedStatement lookup = conn.prepare("SELECT 1 FROM users WHERE username = ?");
+        for (int i = 0; i < chunk.size; i++) {
+            if (chunk.usernames[i] == null) {
+                continue;
+            }
+            lookup.setString(1, chunk.usernames[i]);
+            try (ResultSet rs = lookup.executeQuery()) {
+                skip[i] = rs.next();
+            }
+            if (skip[i]) {
+                LOG.atWarn().addKeyValue("username", chunk.usernames[i]).log("Skipping user that already exists");
+            }
+        }
+        return skip;
+    }
+
+    private static void printProgress(Chunk chunk, long start) {
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        System.out.printf("  %,d users, %,d rows (%.0f rows/sec)%n", chunk.loaded, chunk.rows, chunk.rows / seconds);
+    }
+
+    //Drop explicitly created indexes on the loaded tables and return the SQL to rebuild them.
+    //Primary keys and UNIQUE constraints cannot be dropped; rows are inserted in key order to keep those cheap.
+    static List<String> dropSecondaryIndexes(Connection connection) throws SQLException {
+        List<String> rebuild = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        String tables = "'" + String.join("','", LOADED_TABLES) + "'";
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT name, sql FROM sqlite_master WHERE type = 'index' "
+                     + "AND sql IS NOT NULL AND tbl_name IN (" + tables + ")")) {
+            while (rs.next()) {
+                names.add(rs.getString("name"));
+                rebuild.add(rs.getString("sql"));
+            }
+        }
+        try (Statement stmt = connection.createStatement()) {
+            for (String name : names) {
+                stmt.execute("DROP INDEX \"" + name + "\"");
+            }
+        }
+        return rebuild;
+    }
+
+    private static int maxUserId(PooledConnection conn) throws SQLException {
+        try (ResultSet rs = conn.prepare("SELECT COALESCE(MAX(id), 0) FROM users").executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private static void parseCsvLine(String line, Chunk chunk) {
+        String[] fields = line.split(",", -1);
+        if (fields.length != 5) {
+            throw new IllegalArgumentException("expected 5 fields, found " + fields.length);
+        }
+        String username = fields[0].trim();
+        if (username.isEmpty() || fields[1].isEmpty()) {
+            throw new IllegalArgumentException("username and password are required");
+        }
+        if (chunk.seenUsernames.contains(username)) {
+            throw new IllegalArgumentException("username '" + username + "' appears more than once");
+        }
+        long incomeCents = MoneyAllocator.parseCents(fields[2].trim());
+        int paychecks = Integer.parseInt(fields[3].trim());
+        if (incomeCents <= 0 || paychecks <= 0) {
+            throw new IllegalArgumentException("income and paychecks must be positive");
+        }
+
+        String[] categories = fields[4].split("\\|");
+        int total = 0;
+        int start = chunk.categoryStart[chunk.size];
+        chunk.ensureCategoryCapacity(start + categories.length);
+        for (int c = 0; c < categories.length; c++) {
+            int colon = categories[c].lastIndexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("category '" + categories[c] + "' needs a name and a percentage");
+            }
+            int basisPoints = MoneyAllocator.toBasisPoints(Double.parseDouble(categories[c].substring(colon + 1).trim()));
+            if (basisPoints <= 0) {
+                throw new IllegalArgumentException("category percentages must be positive");
+            }
+            String name = categories[c].substring(0, colon).trim();
+            if (name.isEmpty()) {
+                throw new IllegalArgumentException("category '" + categories[c] + "' needs a name and a percentage");
+            }
+            for (int earlier = start; earlier < start + c; earlier++) {
+                if (chunk.categories[earlier].equals(name)) {
+                    throw new IllegalArgumentException("category '" + name + "' appears more than once");
+                }
+            }
+            chunk.categories[start + c] = name;
+            chunk.basisPoints[start + c] = basisPoints;
+            total += basisPoints;
+        }
+        if (total != MoneyAllocator.FULL_BASIS_POINTS) {
+            throw new IllegalArgumentException("percentages total " + MoneyAllocator.toPercentage(total) + ", not 100");
+        }
+
+        int i = chunk.size++;
+        chunk.seenUsernames.add(username);
+        chunk.usernames[i] = username;
+        chunk.passwords[i] = fields[1];
+        chunk.incomeCents[i] = incomeCents;
+        chunk.paychecks[i] = paychecks;
+        chunk.categoryStart[chunk.size] = start + categories.length;
+    }
+
+    private static void writeCsv(Path output, long users, Generator generator) throws IOException {
+        Chunk chunk = new Chunk(1, CATEGORY_NAMES.length);
+        try (BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            writer.write("username,password,income,paychecks,categories");
+            writer.newLine();
+            StringBuilder line = new StringBuilder();
+            for (long n = 1; n <= users; n++) {
+                generator.next(chunk);
+                line.setLength(0);
+                line.append(String.format("user-%09d", n)).append(',').append(chunk.passwords[0]).append(',')
+                        .append(MoneyAllocator.format(chunk.incomeCents[0])).append(',').append(chunk.paychecks[0]).append(',');
+                for (int c = 0; c < chunk.categoryStart[1]; c++) {
+                    if (c > 0) {
+                        line.append('|');
+                    }
+                    line.append(chunk.categories[c]).append(':').append(MoneyAllocator.toPercentage(chunk.basisPoints[c]));
+                }
+                writer.write(line.toString());
+                writer.newLine();
+                chunk.clear();
+            }
+        }
+    }
+
+    //Realistic-looking users: log-normal incomes around $5,000 a month and a weighted subset of common categories
+    public static class Generator {
+        private final Random random;
+        private final int minCategories;
+        private final int maxCategories;
+        private final String password;
+        private final int[] weights = new int[CATEGORY_NAMES.length];
+
+        public Generator(Random random, int minCategories, int maxCategories, String password) {
+            this.random = random;
+            this.minCategories = minCategories;
+            this.maxCategories = maxCategories;
+            this.password = password;
+        }
+
+        void next(Chunk chunk) {
+            int i = chunk.size++;
+            chunk.usernames[i] = null;
+            chunk.passwords[i] = password;
+            double income = Math.exp(Math.log(5000) + random.nextGaussian() * 0.5);
+            chunk.incomeCents[i] = Math.max(100_000, Math.min(5_000_000, Math.round(income * 100)));
+            int paycheckChoice = random.nextInt(10);
+            chunk.paychecks[i] = paycheckChoice < 2 ? 1 : paycheckChoice < 8 ? 2 : 4;
+
+            //Selection sampling keeps the chosen categories in sorted order
+            int count = minCategories + random.nextInt(maxCategories - minCategories + 1);
+            int start = chunk.categoryStart[i];
+            chunk.ensureCategoryCapacity(start + count);
+            int chosen = 0;
+            int totalWeight = 0;
+            for (int c = 0; c < CATEGORY_NAMES.length && chosen < count; c++) {
+                if (random.nextInt(CATEGORY_NAMES.length - c) < count - chosen) {
+                    //Jitter each typical weight by up to +/-50%
+                    int weight = Math.max(1, CATEGORY_WEIGHTS[c] * (50 + random.nextInt(101)) / 100);
+                    chunk.categories[start + chosen] = CATEGORY_NAMES[c];
+                    weights[chosen] = weight;
+                    totalWeight += weight;
+                    chosen++;
+                }
+            }
+
+            //Weights to basis points summing to exactly 100%, remainder to the first categories
+            int assigned = 0;
+            for (int c = 0; c < count; c++) {
+                int basisPoints = MoneyAllocator.FULL_BASIS_POINTS * weights[c] / totalWeight;
+                chunk.basisPoints[start + c] = basisPoints;
+                assigned += basisPoints;
+            }
+            for (int c = 0; assigned < MoneyAllocator.FULL_BASIS_POINTS; c = (c + 1) % count) {
+                chunk.basisPoints[start + c]++;
+                assigned++;
+            }
+            chunk.categoryStart[i + 1] = start + count;
+        }
+    }
+
+    //One transaction's worth of users; categories are flattened, user i owning [categoryStart[i], categoryStart[i+1])
+    static class Chunk {
+        final String[] usernames;
+        final String[] passwords;
+        final String[] hashes;
+        final long[] incomeCents;
+        final int[] paychecks;
+        final int[] categoryStart;
+        String[] categories;
+        int[] basisPoints;
+        //Usernames parsed into this chunk; earlier chunks are committed and found in the database instead
+        final Set<String> seenUsernames = new HashSet<>();
+        int size;
+        int nextUserId = 1;
+        long loaded;
+        long rows;
+        long malformed;
+
+        Chunk(int capacity, int categoriesPerUser) {
+            usernames = new String[capacity];
+            passwords = new String[capacity];
+            hashes = new String[capacity];
+            incomeCents = new long[capacity];
+            paychecks = new int[capacity];
+            categoryStart = new int[capacity + 1];
+            categories = new String[capacity * categoriesPerUser];
+            basisPoints = new int[capacity * categoriesPerUser];
+        }
+
+        void ensureCategoryCapacity(int needed) {
+            if (needed > categories.length) {
+                int capacity = Math.max(needed, categories.length * 2);
+                categories = Arrays.copyOf(categories, capacity);
+                basisPoints = Arrays.copyOf(basisPoints, capacity);
+            }
+        }
+
+        void clear() {
+            size = 0;
+            seenUsernames.clear();
+            categoryStart[0] = 0;
+        }
+    }
+
+    public record Report(long users, long rows, long malformed, int indexes, double indexSeconds, double seconds) {
+
+        public double rowsPerSecond() {
+            return seconds == 0 ? 0 : rows / seconds;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Loaded %d users (%d rows) in %.2fs, %.0f rows/sec, %.0f users/sec; "
+                            + "%d malformed lines; rebuilt %d indexes and ran ANALYZE in %.2fs",
+                    users, rows, seconds, rowsPerSecond(), seconds == 0 ? 0 : users / seconds, malformed, indexes, indexSeconds);
+        }
+    }
+}
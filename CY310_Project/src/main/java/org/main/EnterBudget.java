@@ -1,43 +1,32 @@
 package org.main;
 
-import java.nio.file.Paths;
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.util.Scanner;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 public class EnterBudget {
 
-    //Initiate Variables
-    private static double monthlyIncome;
-    private static int paychecksPerMonth;
-    private static final Map<String, Double> budgetCategories = new HashMap<>();
-    private static final String DB_PATH = Paths.get(System.getProperty("user.home"), ".sqlite", "db", "cy310.db").toString();
-
-    public static void enterBudget(int userId) {
-        Scanner scanner = new Scanner(System.in);
-
+    public static void enterBudget(BudgetService service, Scanner scanner, int userId) {
         //Enter monthly income
         System.out.println("Enter your total monthly income: ");
-        monthlyIncome = getPositiveDouble(scanner);
+        double monthlyIncome = getPositiveDouble(scanner);
 
         //Enter how often paychecks are received
         System.out.println("How many paychecks do you receive per month? ");
-        paychecksPerMonth = getPositiveInt(scanner);
+        int paychecksPerMonth = getPositiveInt(scanner);
 
         //Enter budget categories and percentages
         System.out.println("Enter budget categories and their percentages (they must total 100%):");
-        inputBudgetCategories(scanner);
+        Map<String, Double> budgetCategories = inputBudgetCategories(scanner);
 
-        //Save the budget to the database
-        saveBudgetToDatabase(userId);
-
-        //Display the budget summary
-        displayBudgetSummary();
+        //Save the budget to the database and display the budget summary
+        try {
+            Budget budget = service.saveBudget(userId, monthlyIncome, paychecksPerMonth, budgetCategories);
+            System.out.println("Budget saved successfully.");
+            displayBudgetSummary(budget);
+        } catch (BudgetException e) {
+            System.out.println(e.getMessage()); //Error message display
+        }
     }
 
     //Validate user input
@@ -71,80 +60,60 @@ public class EnterBudget {
         }
     }
 
-    private static void inputBudgetCategories(Scanner scanner) {
-        double totalPercentage = 0;
+    private static Map<String, Double> inputBudgetCategories(Scanner scanner) {
+        Map<String, Double> budgetCategories = new LinkedHashMap<>();
+        //Totals are kept in basis points so the 100% check is exact
+        int totalBasisPoints = 0;
 
         while (true) {
             System.out.println("Enter a category name (or type 'done' to finish): ");
             String category = scanner.nextLine();
 
             if (category.equalsIgnoreCase("done")) {
-                if (totalPercentage == 100) {
-                    break;
+                if (totalBasisPoints == MoneyAllocator.FULL_BASIS_POINTS) {
+                    return budgetCategories;
                 } else {
-                    System.out.printf("Your percentages total %.2f%%. They must total 100%%.%n", totalPercentage);
+                    System.out.printf("Your percentages total %.2f%%. They must total 100%%.%n", MoneyAllocator.toPercentage(totalBasisPoints));
                     continue;
                 }
             }
 
             System.out.println("Enter the percentage for " + category + ": ");
-            double percentage = getPositiveDouble(scanner);
+            int basisPoints = MoneyAllocator.toBasisPoints(getPositiveDouble(scanner));
 
-            if (totalPercentage + percentage > 100) {
-                System.out.printf("Adding %.2f%% exceeds 100%%. Try again.%n", percentage);
-            } else {
-                budgetCategories.put(category, percentage);
-                totalPercentage += percentage;
-                System.out.printf("Added %s: %.2f%% (Total: %.2f%%)%n", category, percentage, totalPercentage);
-            }
-        }
-    }
+            //Entering a category again replaces its earlier percentage
+            Double previous = budgetCategories.get(category);
+            int otherBasisPoints = totalBasisPoints - (previous == null ? 0 : MoneyAllocator.toBasisPoints(previous));
 
-    private static void saveBudgetToDatabase(int userId) {
-        String deleteSQL = "DELETE FROM budgets WHERE user_id = ?";
-        String insertSQL = "INSERT INTO budgets (user_id, category, percentage, income, paychecks) VALUES (?, ?, ?, ?, ?)";
-
-        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_PATH);
-             PreparedStatement deleteStmt = conn.prepareStatement(deleteSQL);
-             PreparedStatement insertStmt = conn.prepareStatement(insertSQL)) {
-
-            // Clear old budget for the user
-            deleteStmt.setInt(1, userId);
-            deleteStmt.executeUpdate();
-
-            // Insert new budget data
-            for (Map.Entry<String, Double> entry : budgetCategories.entrySet()) {
-                insertStmt.setInt(1, userId);
-                insertStmt.setString(2, entry.getKey());
-                insertStmt.setDouble(3, entry.getValue());
-                insertStmt.setDouble(4, monthlyIncome);
-                insertStmt.setInt(5, paychecksPerMonth);
-                insertStmt.executeUpdate();
+            if (basisPoints == 0) {
+                System.out.println("Percentages are kept to two decimal places. Please enter at least 0.01%.");
+            } else if (otherBasisPoints + basisPoints > MoneyAllocator.FULL_BASIS_POINTS) {
+                System.out.printf("Adding %.2f%% exceeds 100%%. Try again.%n", MoneyAllocator.toPercentage(basisPoints));
+            } else {
+                budgetCategories.put(category, MoneyAllocator.toPercentage(basisPoints));
+                totalBasisPoints = otherBasisPoints + basisPoints;
+                System.out.printf("Added %s: %.2f%% (Total: %.2f%%)%n", category,
+                        MoneyAllocator.toPercentage(basisPoints), MoneyAllocator.toPercentage(totalBasisPoints));
             }
-
-            System.out.println("Budget saved successfully.");
-        } catch (SQLException e) {
-            System.out.println("Error saving budget: " + e.getMessage()); //Error message display
         }
     }
 
-    public static void displayBudgetSummary() {
+    public static void displayBudgetSummary(Budget budget) {
         System.out.println("\n---- Budget Summary ----");
-        System.out.printf("Monthly Income: $%.2f%n", monthlyIncome);
-        System.out.printf("Paychecks Per Month: %d%n", paychecksPerMonth);
+        System.out.printf("Monthly Income: $%s%n", MoneyAllocator.format(budget.incomeCents()));
+        System.out.printf("Paychecks Per Month: %d%n", budget.paychecks());
         System.out.println("\nCategory Allocations:");
 
-        double paycheckAmount = monthlyIncome / paychecksPerMonth;
-
-        for (Map.Entry<String, Double> entry : budgetCategories.entrySet()) {
-            String category = entry.getKey();
-            double percentage = entry.getValue();
-            double monthlyAllocation = (monthlyIncome * percentage) / 100;
-            double perPaycheckAllocation = monthlyAllocation / paychecksPerMonth;
+        //Both splits reconcile to the cent: monthly to the income, per paycheck to one paycheck
+        long paycheckCents = MoneyAllocator.split(budget.incomeCents(), budget.paychecks())[0];
+        long[] monthlyAllocations = budget.allocate(budget.incomeCents());
+        long[] paycheckAllocations = budget.allocate(paycheckCents);
 
-            System.out.printf("%s: %.2f%% (Monthly: $%.2f, Per Paycheck: $%.2f)%n",
-                    category, percentage, monthlyAllocation, perPaycheckAllocation);
+        for (int i = 0; i < budget.categoryCount(); i++) {
+            System.out.printf("%s: %.2f%% (Monthly: $%s, Per Paycheck: $%s)%n",
+                    budget.category(i), budget.percentage(i),
+                    MoneyAllocator.format(monthlyAllocations[i]), MoneyAllocator.format(paycheckAllocations[i]));
         }
 
     }
-}
+}
\ No newline at end of file
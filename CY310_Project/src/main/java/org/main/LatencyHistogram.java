@@ -0,0 +1,121 @@
+package org.main;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+//Lock-free log-linear latency histogram. Values are bucketed in ~1us units with 8 sub-buckets per power of two,
+//so any percentile is within 12.5% of the true value, from 1us up to several days, in a fixed 3KB of counters.
+public class LatencyHistogram implements LatencyHistogramMXBean {
+
+    private static final int UNIT_SHIFT = 10;
+    private static final int SUB_BITS = 3;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 40;
+    //Exponents SUB_BITS..MAX_EXPONENT each take SUB_COUNT buckets after the first SUB_COUNT linear ones; anything
+    //larger is counted in the last bucket
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_COUNT;
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts.incrementAndGet(bucket(nanos));
+        count.increment();
+        totalNanos.add(nanos);
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+    static int bucket(long nanos) {
+        long units = nanos >>> UNIT_SHIFT;
+        if (units < SUB_COUNT) {
+            return (int) units;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(units);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int shift = exponent - SUB_BITS;
+        return (shift + 1) * SUB_COUNT + (int) ((units >>> shift) & (SUB_COUNT - 1));
+    }
+
+    //Upper edge of a bucket, in nanoseconds
+    static long bucketLimit(int bucket) {
+        if (bucket < SUB_COUNT) {
+            return (long) (bucket + 1) << UNIT_SHIFT;
+        }
+        int shift = bucket / SUB_COUNT - 1;
+        long lower = (long) (SUB_COUNT + bucket % SUB_COUNT) << shift;
+        return (lower + (1L << shift)) << UNIT_SHIFT;
+    }
+
+    //Value at or below which the given fraction of recorded latencies fall, in nanoseconds
+    public long percentileNanos(double fraction) {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= target) {
+                return Math.min(bucketLimit(i), maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public double getMeanMicros() {
+        long n = count.sum();
+        return n == 0 ? 0 : totalNanos.sum() / (double) n / 1_000.0;
+    }
+
+    @Override
+    public double getP50Micros() {
+        return percentileNanos(0.50) / 1_000.0;
+    }
+
+    @Override
+    public double getP90Micros() {
+        return percentileNanos(0.90) / 1_000.0;
+    }
+
+    @Override
+    public double getP99Micros() {
+        return percentileNanos(0.99) / 1_000.0;
+    }
+
+    @Override
+    public double getMaxMicros() {
+        return maxNanos.get() / 1_000.0;
+    }
+}
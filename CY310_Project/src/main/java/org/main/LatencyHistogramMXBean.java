@@ -0,0 +1,17 @@
+package org.main;
+
+//JMX view of one operation's latency; times are in microseconds
+public interface LatencyHistogramMXBean {
+
+    long getCount();
+
+    double getMeanMicros();
+
+    double getP50Micros();
+
+    double getP90Micros();
+
+    double getP99Micros();
+
+    double getMaxMicros();
+}
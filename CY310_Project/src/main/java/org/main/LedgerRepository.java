@@ -0,0 +1,163 @@
+package org.main;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+//Append-only history of budgeted paychecks. Each allocation is written once, together with its per-category
+//lines and an increment of the monthly per-category totals, so reports never have to re-scan the ledger.
+public class LedgerRepository {
+
+    private static final LatencyHistogram RECORD_TIME = Metrics.histogram("sql.ledger.record");
+    private static final LatencyHistogram RECENT_TIME = Metrics.histogram("sql.ledger.recent");
+    private static final LatencyHistogram MONTHLY_TIME = Metrics.histogram("sql.ledger.monthly");
+
+    public record LedgerEntry(long id, int budgetVersion, long createdAt, long amountCents) {
+    }
+
+    //Month is yyyymm in the local time zone
+    public record MonthlyTotal(int month, String category, long amountCents, int allocations) {
+    }
+
+    private static final String ENTRY_SQL = "INSERT INTO allocation_ledger (user_id, budget_version, created_at, amount_cents) "
+            + "VALUES (?, (SELECT MAX(version) FROM budget_versions WHERE user_id = ?), ?, ?) RETURNING id, budget_version";
+    private static final String LINE_SQL = "INSERT INTO allocation_ledger_lines (entry_id, category, amount_cents) VALUES (?, ?, ?)";
+    private static final String ROLLUP_SQL = "INSERT INTO monthly_category_totals (user_id, month, category, amount_cents, allocations) "
+            + "VALUES (?, ?, ?, ?, 1) ON CONFLICT (user_id, month, category) DO UPDATE SET "
+            + "amount_cents = amount_cents + excluded.amount_cents, allocations = allocations + 1";
+
+    //Append an allocation and update the rollups in one transaction; returns the new ledger entry
+    public static LedgerEntry record(BudgetDataSource dataSource, Allocation allocation, long createdAt) throws SQLException {
+        int userId = allocation.budget().userId();
+        long start = Metrics.start();
+        try (PooledConnection conn = dataSource.borrow()) {
+            Connection connection = conn.connection();
+            connection.setAutoCommit(false);
+            if (dataSource.isShard()) {
+                ShardRouter.checkResident(conn, userId);
+            }
+
+            LedgerEntry entry = append(conn, allocation, createdAt);
+            connection.commit();
+            return entry;
+        } finally {
+            Metrics.stop(RECORD_TIME, start);
+        }
+    }
+
+    //Append several allocations of one user in a single transaction, as a payroll batch run does
+    public static void recordAll(BudgetDataSource dataSource, List<Allocation> allocations, long createdAt) throws SQLException {
+        if (allocations.isEmpty()) {
+            return;
+        }
+        int userId = allocations.get(0).budget().userId();
+        long start = Metrics.start();
+        try (PooledConnection conn = dataSource.borrow()) {
+            Connection connection = conn.connection();
+            connection.setAutoCommit(false);
+            if (dataSource.isShard()) {
+                ShardRouter.checkResident(conn, userId);
+            }
+
+            for (Allocation allocation : allocations) {
+                append(conn, allocation, createdAt);
+            }
+            connection.commit();
+        } finally {
+            Metrics.stop(RECORD_TIME, start);
+        }
+    }
+
+    //Body of record for a caller that already holds the transaction, such as WriteBehindQueue's group commit
+    static LedgerEntry append(PooledConnection conn, Allocation allocation, long createdAt) throws SQLException {
+        int userId = allocation.budget().userId();
+        int month = month(createdAt);
+        PreparedStatement entryStmt = conn.prepare(ENTRY_SQL);
+        entryStmt.setInt(1, userId);
+        entryStmt.setInt(2, userId);
+        entryStmt.setLong(3, createdAt);
+        entryStmt.setLong(4, allocation.amountCents());
+        long entryId;
+        int budgetVersion;
+        try (ResultSet rs = entryStmt.executeQuery()) {
+            rs.next();
+            entryId = rs.getLong(1);
+            budgetVersion = rs.getInt(2);
+        }
+
+        PreparedStatement lineStmt = conn.prepare(LINE_SQL);
+        PreparedStatement rollupStmt = conn.prepare(ROLLUP_SQL);
+        for (int i = 0; i < allocation.categoryCount(); i++) {
+            lineStmt.setLong(1, entryId);
+            lineStmt.setString(2, allocation.category(i));
+            lineStmt.setLong(3, allocation.cents(i));
+            lineStmt.addBatch();
+
+            rollupStmt.setInt(1, userId);
+            rollupStmt.setInt(2, month);
+            rollupStmt.setString(3, allocation.category(i));
+            rollupStmt.setLong(4, allocation.cents(i));
+            rollupStmt.addBatch();
+        }
+        lineStmt.executeBatch();
+        rollupStmt.executeBatch();
+        return new LedgerEntry(entryId, budgetVersion, createdAt, allocation.amountCents());
+    }
+
+    //Most recent entries first, served by the (user_id, created_at) index
+    public static List<LedgerEntry> recentEntries(BudgetDataSource dataSource, int userId, long sinceMillis, int limit)
+            throws SQLException {
+        String sql = "SELECT id, budget_version, created_at, amount_cents FROM allocation_ledger "
+                + "WHERE user_id = ? AND created_at >= ? ORDER BY created_at DESC LIMIT ?";
+        List<LedgerEntry> entries = new ArrayList<>();
+        long start = Metrics.start();
+        try (PooledConnection conn = dataSource.borrow()) {
+            PreparedStatement stmt = conn.prepare(sql);
+            stmt.setInt(1, userId);
+            stmt.setLong(2, sinceMillis);
+            stmt.setInt(3, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    entries.add(new LedgerEntry(rs.getLong("id"), rs.getInt("budget_version"),
+                            rs.getLong("created_at"), rs.getLong("amount_cents")));
+                }
+            }
+        } finally {
+            Metrics.stop(RECENT_TIME, start);
+        }
+        return entries;
+    }
+
+    //Precomputed per-category totals from fromMonth (yyyymm) onwards, oldest month first
+    public static List<MonthlyTotal> monthlyTotals(BudgetDataSource dataSource, int userId, int fromMonth) throws SQLException {
+        String sql = "SELECT month, category, amount_cents, allocations FROM monthly_category_totals "
+                + "WHERE user_id = ? AND month >= ? ORDER BY month, category";
+        List<MonthlyTotal> totals = new ArrayList<>();
+        long start = Metrics.start();
+        try (PooledConnection conn = dataSource.borrow()) {
+            PreparedStatement stmt = conn.prepare(sql);
+            stmt.setInt(1, userId);
+            stmt.setInt(2, fromMonth);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    totals.add(new MonthlyTotal(rs.getInt("month"), rs.getString("category"),
+                            rs.getLong("amount_cents"), rs.getInt("allocations")));
+                }
+            }
+        } finally {
+            Metrics.stop(MONTHLY_TIME, start);
+        }
+        return totals;
+    }
+
+    public static int month(long epochMillis) {
+        YearMonth month = YearMonth.from(Instant.ofEpochMilli(epochMillis).atZone(ZoneId.systemDefault()));
+        return month.getYear() * 100 + month.getMonthValue();
+    }
+}
@@ -0,0 +1,47 @@
+package org.main;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+//The original single-round salted SHA-256. Kept only so existing accounts can log in once and be upgraded.
+//Legacy rows keep the salt in users.salt; UserRepository presents them as sha256$<salt>$<hash>.
+public class LegacySha256PasswordHasher implements PasswordHasher {
+
+    public static final String ALGORITHM = "sha256";
+
+    public static String encode(String salt, String hash) {
+        return ALGORITHM + "$" + salt + "$" + hash;
+    }
+
+    @Override
+    public String algorithm() {
+        return ALGORITHM;
+    }
+
+    @Override
+    public String hash(String password) {
+        throw new UnsupportedOperationException("Legacy SHA-256 hashes are verify-only");
+    }
+
+    @Override
+    public boolean verify(String password, String storedHash) {
+        String[] parts = storedHash.split("\\$");
+        if (parts.length != 3 || !parts[0].equals(ALGORITHM)) {
+            return false;
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(parts[1].getBytes());
+            byte[] actual = digest.digest(password.getBytes());
+            return MessageDigest.isEqual(Base64.getDecoder().decode(parts[2]), actual);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    @Override
+    public boolean needsRehash(String storedHash) {
+        return true;
+    }
+}
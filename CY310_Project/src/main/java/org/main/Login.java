@@ -1,157 +1,84 @@
 package org.main;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.io.File;
-import java.nio.file.Paths;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
-import java.util.Base64;
 import java.util.Scanner;
 
 public class Login {
-    static {
-        try {
-            // Explicitly load the SQLite JDBC driver
-            Class.forName("org.sqlite.JDBC");
-        } catch (ClassNotFoundException e) {
-            System.out.println("SQLite JDBC driver not found: " + e.getMessage());
-        }
-    }
 
-    private static final String DB_PATH = Paths.get(System.getProperty("user.home"), ".sqlite", "db", "cy310.db").toString();
+    private static final Logger LOG = LoggerFactory.getLogger(Login.class);
+
+    private static volatile Thread bootstrap;
 
     public static void connect() {
         // Check if the database exists, otherwise create it
-        File dbFile = new File(DB_PATH);
-        if (!dbFile.exists()) {
+        File dbFile = new File(BudgetDataSource.shared().getDbPath()).getAbsoluteFile();
+        boolean created = !dbFile.exists();
+        if (created) {
             // Create the necessary directories
             new File(dbFile.getParent()).mkdirs();
-            System.out.println("Database not found. Creating new database...");
-            createNewDatabase();
-            createTable();
+            LOG.atInfo().addKeyValue("path", dbFile).log("Database not found, creating a new one");
         } else {
-            System.out.println("Database found.");
+            LOG.atInfo().addKeyValue("path", dbFile).log("Database found");
         }
-    }
 
-    private static void createNewDatabase() {
-        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + Login.DB_PATH)) {
-            if (conn != null) {
-                System.out.println("A new database has been created.");
+        // The first connection creates the file and runs any migrations, then stays in the pool
+        try {
+            SchemaMigrations.migrate(BudgetDataSource.shared());
+            if (created) {
+                LOG.info("A new database has been created");
             }
         } catch (SQLException e) {
-            System.out.println(e.getMessage());
+            LOG.atError().setCause(e).log("Error preparing database");
+            System.out.println("Error preparing database: " + e.getMessage());
         }
     }
 
-    private static void createTable() {
-        String createUsersTable = """
-            CREATE TABLE IF NOT EXISTS users (
-             id INTEGER PRIMARY KEY AUTOINCREMENT,
-             username TEXT NOT NULL UNIQUE,
-             password TEXT NOT NULL,
-             salt TEXT NOT NULL
-            );""";
-
-        String createBudgetsTable = """
-            CREATE TABLE IF NOT EXISTS budgets (
-             id INTEGER PRIMARY KEY AUTOINCREMENT,
-             user_id INTEGER NOT NULL,
-             category TEXT NOT NULL,
-             percentage REAL NOT NULL CHECK (percentage >= 0 AND percentage <= 100),
-             income REAL NOT NULL,
-             paychecks INTEGER NOT NULL,
-             FOREIGN KEY (user_id) REFERENCES users (id)
-            );""";
-
-        String addIncomeColumn = "ALTER TABLE budgets ADD COLUMN income REAL NOT NULL DEFAULT 0";  // To add income column if missing
-
-        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_PATH);
-             Statement stmt = conn.createStatement()) {
-
-            // Create users table
-            stmt.execute(createUsersTable);
-
-            // Create budgets table if it doesn't exist
-            stmt.execute(createBudgetsTable);
-
-        } catch (SQLException e) {
-            System.out.println(e.getMessage());
+    // Open the database on a background thread so the first menu does not wait for the driver to load
+    public static synchronized void connectInBackground() {
+        if (bootstrap == null) {
+            bootstrap = Thread.ofPlatform().name("db-bootstrap").daemon(true).start(Login::connect);
         }
     }
 
-
-    private static String hashPassword(String password, String salt) throws NoSuchAlgorithmException {
-        MessageDigest digest = MessageDigest.getInstance("SHA-256");
-        digest.update(salt.getBytes());
-        byte[] hash = digest.digest(password.getBytes());
-        return Base64.getEncoder().encodeToString(hash);
-    }
-
-    private static String generateSalt() {
-        SecureRandom random = new SecureRandom();
-        byte[] salt = new byte[16];
-        random.nextBytes(salt);
-        return Base64.getEncoder().encodeToString(salt);
+    // Block until connectInBackground has finished; returns at once if it was never started
+    public static void awaitDatabase() {
+        Thread thread = bootstrap;
+        if (thread == null) {
+            return;
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
-    public static void addUser(String username, String password) {
-        String salt = generateSalt();
 
+    public static void addUser(BudgetService service, String username, String password) {
+        awaitDatabase();
         try {
-            String hashedPassword = hashPassword(password, salt);
-
-            String sql = "INSERT INTO users (username, password, salt) VALUES (?, ?, ?)";
-            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_PATH);
-                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
-                pstmt.setString(1, username);
-                pstmt.setString(2, hashedPassword);
-                pstmt.setString(3, salt);
-                pstmt.executeUpdate();
-                System.out.println("User added successfully.");
-            } catch (SQLException e) {
-                System.out.println("Error inserting user: " + e.getMessage());
-            }
-        } catch (NoSuchAlgorithmException e) {
-            System.out.println("Error hashing password: " + e.getMessage());
+            service.register(username, password);
+            System.out.println("User added successfully.");
+        } catch (BudgetException e) {
+            System.out.println(e.getMessage());
         }
     }
 
-    public static Integer verifyUser(String username, String inputPassword) {
-        String sql = "SELECT id, password, salt FROM users WHERE username = ?";
-
-        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_PATH);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            pstmt.setString(1, username);
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    int userId = rs.getInt("id");
-                    String storedHash = rs.getString("password");
-                    String storedSalt = rs.getString("salt");
-
-                    String inputHash = hashPassword(inputPassword, storedSalt);
-
-                    if (storedHash.equals(inputHash)) {
-                        return userId;  // Login successful, return user ID
-                    }
-                }
-            }
-        } catch (SQLException | NoSuchAlgorithmException e) {
-            System.out.println("Error verifying user: " + e.getMessage());
+    public static Integer verifyUser(BudgetService service, String username, String inputPassword) {
+        awaitDatabase();
+        try {
+            return service.authenticate(username, inputPassword);
+        } catch (BudgetException e) {
+            System.out.println(e.getMessage());
         }
         return null;  // Login failed
     }
 
-    public static Integer login() {
-        Scanner scanner = new Scanner(System.in);
-
+    public static Integer login(BudgetService service, Scanner scanner) {
         while (true) {
             System.out.println("-----------------------------------");
             System.out.println("Please select an option:");
@@ -170,7 +97,7 @@ public class Login {
                     System.out.println("Enter password: ");
                     String inputPassword = scanner.nextLine();
 
-                    Integer userId = verifyUser(username, inputPassword);
+                    Integer userId = verifyUser(service, username, inputPassword);
                     if (userId != null) {
                         System.out.println("Login successful.");
                         return userId;  // Return user ID after successful login
@@ -185,7 +112,7 @@ public class Login {
                     System.out.println("Enter password: ");
                     inputPassword = scanner.nextLine();
 
-                    addUser(username, inputPassword);
+                    addUser(service, username, inputPassword);
                     break;
 
                 case "0":
@@ -0,0 +1,228 @@
+package org.main;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+//Failed-login counters per username and per source address. Each key keeps a sliding-window failure count (the
+//previous fixed window weighted by how much of it still overlaps, plus the current one). A username that keeps
+//failing must wait twice as long before each new attempt; a key over its window limit is locked out, and every
+//further lockout doubles up to a maximum. check() runs before any SQL or hashing, so rejected attempts cost a map
+//lookup. Keys live in striped LRU tables with a fixed total size, so a spray of usernames cannot grow memory.
+public class LoginThrottle {
+
+    public static final String ENABLED_KEY = "cy310.login.throttle";
+    public static final String MAX_FAILURES_KEY = "cy310.login.maxFailures";
+    public static final String MAX_SOURCE_FAILURES_KEY = "cy310.login.maxSourceFailures";
+    public static final String WINDOW_KEY = "cy310.login.windowSeconds";
+    public static final String BACKOFF_KEY = "cy310.login.backoffMillis";
+    public static final String LOCKOUT_KEY = "cy310.login.lockoutSeconds";
+    public static final String MAX_LOCKOUT_KEY = "cy310.login.maxLockoutSeconds";
+    public static final String MAX_KEYS_KEY = "cy310.login.trackedKeys";
+
+    //Power of two, so a key's stripe is a mask of its hash
+    private static final int STRIPES = 64;
+
+    private final boolean enabled;
+    private final Table usernames;
+    private final Table sources;
+    private final long windowNanos;
+    private final long backoffNanos;
+    private final long lockoutNanos;
+    private final long maxLockoutNanos;
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder lockouts = new LongAdder();
+
+    public LoginThrottle(boolean enabled, int maxFailures, int maxSourceFailures, long windowMillis, long backoffMillis,
+                         long lockoutMillis, long maxLockoutMillis, int maxKeys) {
+        this.enabled = enabled;
+        this.usernames = new Table(maxFailures, true, maxKeys);
+        this.sources = new Table(maxSourceFailures, false, maxKeys);
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.backoffNanos = TimeUnit.MILLISECONDS.toNanos(backoffMillis);
+        this.lockoutNanos = TimeUnit.MILLISECONDS.toNanos(lockoutMillis);
+        this.maxLockoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(lockoutMillis, maxLockoutMillis));
+    }
+
+    public static LoginThrottle fromConfig(AppConfig config) {
+        return new LoginThrottle(Boolean.parseBoolean(config.get(ENABLED_KEY, "true")),
+                config.getInt(MAX_FAILURES_KEY, 5),
+                config.getInt(MAX_SOURCE_FAILURES_KEY, 50),
+                config.getInt(WINDOW_KEY, 900) * 1000L,
+                config.getInt(BACKOFF_KEY, 250),
+                config.getInt(LOCKOUT_KEY, 60) * 1000L,
+                config.getInt(MAX_LOCKOUT_KEY, 3600) * 1000L,
+                config.getInt(MAX_KEYS_KEY, 50_000));
+    }
+
+    public static LoginThrottle disabled() {
+        return new LoginThrottle(false, Integer.MAX_VALUE, Integer.MAX_VALUE, 1, 0, 0, 0, 0);
+    }
+
+    //Milliseconds until this attempt may run, or 0 when it may run now. source may be null.
+    public long check(String username, String source) {
+        if (!enabled) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        long wait = Math.max(usernames.blockedFor(username, now), source == null ? 0 : sources.blockedFor(source, now));
+        if (wait > 0) {
+            rejected.increment();
+            return Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait));
+        }
+        return 0;
+    }
+
+    public void recordFailure(String username, String source) {
+        if (!enabled) {
+            return;
+        }
+        long now = System.nanoTime();
+        usernames.fail(username, now);
+        if (source != null) {
+            sources.fail(source, now);
+        }
+    }
+
+    //A correct password clears the username's history; the source keeps its count so valid logins cannot launder it
+    public void recordSuccess(String username) {
+        if (enabled) {
+            usernames.clear(username);
+        }
+    }
+
+    public ThrottleStats stats() {
+        return new ThrottleStats(usernames.size(), sources.size(), usernames.maxKeys + sources.maxKeys, rejected.sum(),
+                lockouts.sum(), usernames.evictions.sum() + sources.evictions.sum());
+    }
+
+    public record ThrottleStats(int trackedUsernames, int trackedSources, int maxKeys, long rejected, long lockouts,
+                                long evictions) {
+    }
+
+    //State of one key; guarded by its stripe's lock
+    private static final class Counter {
+        long windowStart;
+        int current;
+        int previous;
+        int consecutive;
+        int lockouts;
+        long lastFailure;
+        long blockedUntil;
+    }
+
+    private final class Table {
+        private final int limit;
+        private final boolean backoff;
+        private final int maxKeys;
+        private final Stripe[] stripes = new Stripe[STRIPES];
+        private final LongAdder evictions = new LongAdder();
+
+        Table(int limit, boolean backoff, int maxKeys) {
+            this.limit = limit;
+            this.backoff = backoff;
+            this.maxKeys = maxKeys;
+            int perStripe = Math.max(1, (maxKeys + STRIPES - 1) / STRIPES);
+            for (int i = 0; i < STRIPES; i++) {
+                stripes[i] = new Stripe(perStripe, evictions);
+            }
+        }
+
+        private Stripe stripe(String key) {
+            int h = key.hashCode();
+            return stripes[(h ^ (h >>> 16)) & (STRIPES - 1)];
+        }
+
+        //Lookups never create entries, so checking unknown keys costs no memory
+        long blockedFor(String key, long now) {
+            Stripe stripe = stripe(key);
+            synchronized (stripe) {
+                Counter counter = stripe.get(key);
+                return counter == null ? 0 : Math.max(0, counter.blockedUntil - now);
+            }
+        }
+
+        void fail(String key, long now) {
+            Stripe stripe = stripe(key);
+            synchronized (stripe) {
+                Counter counter = stripe.get(key);
+                if (counter == null) {
+                    counter = new Counter();
+                    counter.windowStart = now;
+                    stripe.put(key, counter);
+                }
+
+                //Roll the fixed windows forward, then estimate failures over the last full window
+                long elapsed = now - counter.windowStart;
+                if (elapsed >= windowNanos) {
+                    counter.previous = elapsed >= 2 * windowNanos ? 0 : counter.current;
+                    counter.current = 0;
+                    counter.windowStart += elapsed / windowNanos * windowNanos;
+                    elapsed = now - counter.windowStart;
+                }
+                //A quiet spell as long as the longest lockout forgives earlier lockouts
+                if (now - counter.lastFailure > maxLockoutNanos) {
+                    counter.lockouts = 0;
+                    counter.consecutive = 0;
+                }
+                counter.current++;
+                counter.consecutive++;
+                counter.lastFailure = now;
+                double overlap = (windowNanos - elapsed) / (double) windowNanos;
+                double failures = counter.previous * overlap + counter.current;
+
+                if (failures >= limit) {
+                    counter.lockouts++;
+                    lockouts.increment();
+                    counter.blockedUntil = now + Math.min(maxLockoutNanos, lockoutNanos << Math.min(counter.lockouts - 1, 30));
+                    //Start the next window afresh, so the lockout rather than old failures decides when to retry
+                    counter.previous = 0;
+                    counter.current = 0;
+                    counter.windowStart = now;
+                } else if (backoff && counter.consecutive > 1) {
+                    counter.blockedUntil = now + Math.min(lockoutNanos, backoffNanos << Math.min(counter.consecutive - 2, 30));
+                }
+            }
+        }
+
+        void clear(String key) {
+            Stripe stripe = stripe(key);
+            synchronized (stripe) {
+                stripe.remove(key);
+            }
+        }
+
+        int size() {
+            int size = 0;
+            for (Stripe stripe : stripes) {
+                synchronized (stripe) {
+                    size += stripe.size();
+                }
+            }
+            return size;
+        }
+    }
+
+    //Least recently used keys go first once a stripe is full
+    private static final class Stripe extends LinkedHashMap<String, Counter> {
+        private final int capacity;
+        private final LongAdder evictions;
+
+        Stripe(int capacity, LongAdder evictions) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Counter> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
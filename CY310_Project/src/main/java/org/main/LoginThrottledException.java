@@ -0,0 +1,22 @@
+package org.main;
+
+//Raised by BudgetService.authenticate when LoginThrottle refuses an attempt; nothing was looked up or hashed
+public class LoginThrottledException extends BudgetException {
+
+    private final long retryAfterMillis;
+
+    public LoginThrottledException(long retryAfterMillis) {
+        super(retryAfterMillis <= 1000 ? "Too many failed login attempts. Try again in a moment."
+                : "Too many failed login attempts. Try again in " + (retryAfterMillis + 999) / 1000 + " seconds.");
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public long retryAfterMillis() {
+        return retryAfterMillis;
+    }
+
+    //Whole seconds, rounded up, for a Retry-After header
+    public long retryAfterSeconds() {
+        return (retryAfterMillis + 999) / 1000;
+    }
+}
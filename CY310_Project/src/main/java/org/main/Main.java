@@ -4,18 +4,88 @@ import static org.main.Login.connect;
 import static org.main.UtilizeBudget.utilizeBudget;
 import static org.main.ViewBudget.viewBudget;
 
+import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.Scanner;
 
 public class Main {
 
     public static void main(String[] args) {
-        connect(); //Connect to SQLite database
+        //Batch mode: allocate <input> <output> [--threads N] [--chunk N]
+        if (args.length > 0 && args[0].equals("allocate")) {
+            BatchAllocator.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        //Bulk load mode: load generate|import|csv ...
+        if (args.length > 0 && args[0].equals("load")) {
+            BulkLoader.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        //Binary export and import: archive export|import|stats <file>
+        if (args.length > 0 && args[0].equals("archive")) {
+            BudgetArchive.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        //Shard maintenance: shards status|rebalance ...
+        if (args.length > 0 && args[0].equals("shards")) {
+            ShardTool.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        //What-if projections: simulate <user_id> [--income LIST] [--paychecks LIST] [--shift FROM>TO=LIST]...
+        if (args.length > 0 && args[0].equals("simulate")) {
+            connect();
+            ScenarioSimulator.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        //Cross-user reports: analytics [--threads N] [--top N] [--fetch N] [--out file.csv] [--scaling true]
+        if (args.length > 0 && args[0].equals("analytics")) {
+            connect();
+            BudgetAnalytics.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        //Server mode: serve [port]
+        if (args.length > 0 && args[0].equals("serve")) {
+            connect();
+            BudgetHttpServer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
+        //Startup check: check (also the training run for the AppCDS archive)
+        if (args.length > 0 && args[0].equals("check")) {
+            check();
+            return;
+        }
+
+        if (AppConfig.current().fastStartup()) {
+            Login.connectInBackground(); //Connect to SQLite database while the menu is shown
+        } else {
+            connect(); //Connect to SQLite database
+        }
         mainMenu(); //Initialize menu
     }
 
+    //Open the database, run one budget query and report the schema version; exits with 1 on failure
+    private static void check() {
+        connect();
+        BudgetService service = BudgetService.shared();
+        try (PooledConnection conn = service.dataSource().borrow()) {
+            int version = SchemaMigrations.currentVersion(conn.connection());
+            service.getBudget(0);
+            System.out.println("Database ready: " + service.dataSource().getDbPath() + " (schema version " + version + ")");
+            if (version != SchemaMigrations.CURRENT_VERSION) {
+                System.exit(1);
+            }
+        } catch (SQLException | BudgetException e) {
+            System.out.println("Database check failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
     private static void mainMenu() {
+        //One scanner and one service for the whole session
         Scanner scanner = new Scanner(System.in);
-        int userId = Login.login();
+        BudgetService service = BudgetService.shared();
+        int userId = Login.login(service, scanner);
 
         while (true) {
             System.out.println("-----------------------------------");
@@ -24,28 +94,39 @@ public class Main {
                 1. Budget a paycheck
                 2. Enter/Edit Budget Information
                 3. View Budget Information
-                4. Exit""");
+                4. Exit
+                5. View Spending History
+                6. Run What-If Scenarios""");
 
             String mainMenuSelection = scanner.nextLine();
 
             switch (mainMenuSelection) {
                 case "1": //Budget a paycheck
-                    utilizeBudget(userId);
+                    utilizeBudget(service, scanner, userId);
                     break;
 
                 case "2": //Enter/Edit Budget Information
-                    EnterBudget.enterBudget(userId);
+                    EnterBudget.enterBudget(service, scanner, userId);
                     break;
 
                 case "3": //View Budget Information
-                    viewBudget(userId);
+                    viewBudget(service, userId);
                     break;
 
                 case "4": //Exit
+                    service.flushWrites();
                     System.out.println("Goodbye.");
                     System.exit(0);
                     break;
 
+                case "5": //View Spending History
+                    SpendingHistory.viewHistory(service, userId);
+                    break;
+
+                case "6": //Run What-If Scenarios
+                    WhatIfScenarios.runScenarios(service, scanner, userId);
+                    break;
+
                 default: //Retry
                     System.out.println("Please enter a valid option.");
             }
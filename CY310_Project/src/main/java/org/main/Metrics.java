@@ -0,0 +1,184 @@
+package org.main;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+//Latency histograms per operation and SQL statement, plus error counts. Enabled with cy310.metrics.enabled=true;
+//when disabled, timing is a branch on a constant and no clock is read. install() publishes everything over JMX
+//under org.main:* and, when cy310.metrics.file is set, appends a JSON snapshot to that file every interval.
+public final class Metrics {
+
+    public static final String ENABLED_KEY = "cy310.metrics.enabled";
+    public static final String FILE_KEY = "cy310.metrics.file";
+    public static final String INTERVAL_KEY = "cy310.metrics.intervalSeconds";
+
+    public static final boolean ENABLED = Boolean.parseBoolean(AppConfig.current().get(ENABLED_KEY, "false"));
+
+    private static final Logger LOG = LoggerFactory.getLogger(Metrics.class);
+    private static final Map<String, LatencyHistogram> HISTOGRAMS = new ConcurrentHashMap<>();
+    private static final Map<String, LongAdder> ERRORS = new ConcurrentHashMap<>();
+
+    private static RuntimeMetrics runtime;
+    private static ScheduledExecutorService writer;
+
+    private Metrics() {
+    }
+
+    //Look up once and keep in a static final field; recording is then a plain method call. Histograms created after
+    //install(), as classes initialise, are registered with JMX as they appear.
+    public static synchronized LatencyHistogram histogram(String name) {
+        LatencyHistogram histogram = HISTOGRAMS.get(name);
+        if (histogram == null) {
+            histogram = new LatencyHistogram(name);
+            HISTOGRAMS.put(name, histogram);
+            if (runtime != null) {
+                try {
+                    registerHistogram(ManagementFactory.getPlatformMBeanServer(), histogram);
+                } catch (JMException e) {
+                    LOG.atWarn().setCause(e).addKeyValue("histogram", name).log("Could not register metrics with JMX");
+                }
+            }
+        }
+        return histogram;
+    }
+
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    public static void stop(LatencyHistogram histogram, long start) {
+        if (ENABLED) {
+            histogram.record(System.nanoTime() - start);
+        }
+    }
+
+    //Errors are rare, so they are counted whether or not timing is enabled
+    public static void error(String operation) {
+        ERRORS.computeIfAbsent(operation, key -> new LongAdder()).increment();
+    }
+
+    public static Map<String, Long> errorCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : ERRORS.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().sum());
+        }
+        return counts;
+    }
+
+    //Register the JMX beans and start the metrics file writer for a service; later calls do nothing
+    public static synchronized void install(BudgetService service) {
+        if (!ENABLED || runtime != null) {
+            return;
+        }
+        runtime = new RuntimeMetrics(service.dataSource(), service.passwords(), service.throttle(), service.writes());
+
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(runtime, new ObjectName("org.main:type=Runtime"));
+            for (String name : new String[]{"login", "hash", "query", "save", "allocate"}) {
+                histogram(name);
+            }
+            for (LatencyHistogram histogram : HISTOGRAMS.values()) {
+                registerHistogram(server, histogram);
+            }
+        } catch (JMException e) {
+            LOG.atWarn().setCause(e).log("Could not register metrics with JMX");
+        }
+
+        AppConfig config = AppConfig.current();
+        String file = config.get(FILE_KEY, null);
+        if (file != null) {
+            int interval = config.getInt(INTERVAL_KEY, 60);
+            Path path = Paths.get(file);
+            writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "metrics-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            writer.scheduleAtFixedRate(() -> writeSnapshot(path), interval, interval, TimeUnit.SECONDS);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> writeSnapshot(path), "metrics-final-snapshot"));
+            LOG.atInfo().addKeyValue("file", path.toAbsolutePath()).addKeyValue("intervalSeconds", interval)
+                    .log("Writing metrics snapshots");
+        }
+    }
+
+    private static void registerHistogram(MBeanServer server, LatencyHistogram histogram) throws JMException {
+        ObjectName name = new ObjectName("org.main:type=Latency,name=" + ObjectName.quote(histogram.name()));
+        if (!server.isRegistered(name)) {
+            server.registerMBean(histogram, name);
+        }
+    }
+
+    //One JSON object per line, so the file can be tailed and diffed over time
+    public static synchronized String snapshotJson() {
+        StringBuilder out = new StringBuilder("{\"time\":").append(System.currentTimeMillis()).append(",\"latency\":{");
+        boolean first = true;
+        for (LatencyHistogram histogram : new TreeMap<>(HISTOGRAMS).values()) {
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+            out.append(first ? "" : ",");
+            first = false;
+            Json.quote(out, histogram.name()).append(String.format(Locale.ROOT,
+                    ":{\"count\":%d,\"mean_us\":%.1f,\"p50_us\":%.1f,\"p90_us\":%.1f,\"p99_us\":%.1f,\"max_us\":%.1f}",
+                    histogram.getCount(), histogram.getMeanMicros(), histogram.getP50Micros(), histogram.getP90Micros(),
+                    histogram.getP99Micros(), histogram.getMaxMicros()));
+        }
+        out.append("},\"errors\":{");
+        first = true;
+        for (Map.Entry<String, Long> entry : errorCounts().entrySet()) {
+            out.append(first ? "" : ",");
+            first = false;
+            Json.quote(out, entry.getKey()).append(':').append(entry.getValue());
+        }
+        out.append('}');
+        if (runtime != null) {
+            out.append(String.format(Locale.ROOT, ",\"pool\":{\"active\":%d,\"idle\":%d,\"total\":%d,\"borrows\":%d,\"waits\":%d,\"max_borrow_ms\":%.3f}",
+                    runtime.getPoolActive(), runtime.getPoolIdle(), runtime.getPoolTotal(), runtime.getPoolBorrows(),
+                    runtime.getPoolWaits(), runtime.getPoolMaxBorrowMillis()));
+            out.append(String.format(Locale.ROOT, ",\"cache\":{\"size\":%d,\"hits\":%d,\"misses\":%d,\"hit_rate\":%.4f,\"evictions\":%d}",
+                    runtime.getCacheSize(), runtime.getCacheHits(), runtime.getCacheMisses(), runtime.getCacheHitRate(),
+                    runtime.getCacheEvictions()));
+            out.append(String.format(Locale.ROOT, ",\"passwords\":{\"queued\":%d,\"rejected\":%d}",
+                    runtime.getPasswordQueueDepth(), runtime.getPasswordRejected()));
+            out.append(String.format(Locale.ROOT, ",\"throttle\":{\"tracked\":%d,\"rejected\":%d,\"lockouts\":%d,\"evictions\":%d}",
+                    runtime.getThrottleTrackedKeys(), runtime.getThrottleRejected(), runtime.getThrottleLockouts(),
+                    runtime.getThrottleEvictions()));
+            out.append(String.format(Locale.ROOT, ",\"writes\":{\"queued\":%d,\"committed\":%d,\"batches\":%d,\"mean_batch\":%.2f,\"max_batch\":%d,\"rejected\":%d,\"failed\":%d}",
+                    runtime.getWriteQueueDepth(), runtime.getWritesCommitted(), runtime.getWriteBatches(),
+                    runtime.getWriteMeanBatchSize(), runtime.getWriteMaxBatchSize(), runtime.getWritesRejected(),
+                    runtime.getWritesFailed()));
+        }
+        return out.append('}').toString();
+    }
+
+    private static void writeSnapshot(Path path) {
+        try (Writer out = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            out.write(snapshotJson());
+            out.write('\n');
+        } catch (IOException e) {
+            LOG.atWarn().setCause(e).addKeyValue("file", path).log("Could not write metrics snapshot");
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package org.main;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+
+//Exact money arithmetic on long cents; splits use largest-remainder rounding so they always add back up to the input
+public final class MoneyAllocator {
+
+    //Percentages are held as basis points: 1% = 100, 100% = 10,000
+    public static final int FULL_BASIS_POINTS = 10_000;
+    //Largest amount that can be split by basis-point weights totalling 100% without overflowing long arithmetic
+    public static final long MAX_AMOUNT_CENTS = Long.MAX_VALUE / FULL_BASIS_POINTS;
+
+    //Sort keys pack the remainder above a 20-bit index so one primitive sort orders both
+    private static final int INDEX_BITS = 20;
+    private static final int MAX_PARTS = 1 << INDEX_BITS;
+
+    private MoneyAllocator() {
+    }
+
+    public static long toCents(double amount) {
+        return Math.round(amount * 100);
+    }
+
+    //Parse a decimal amount such as "1234.5" exactly, rounding half up to the cent
+    public static long parseCents(String amount) {
+        return toCents(new BigDecimal(amount.trim()));
+    }
+
+    public static long toCents(BigDecimal amount) {
+        return amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    public static int toBasisPoints(double percentage) {
+        return (int) Math.round(percentage * 100);
+    }
+
+    public static double toPercentage(int basisPoints) {
+        return basisPoints / 100.0;
+    }
+
+    //Format cents as dollars without going through floating point, e.g. 123456 -> "1234.56"
+    public static String format(long cents) {
+        String sign = cents < 0 ? "-" : "";
+        long abs = Math.abs(cents);
+        long fraction = abs % 100;
+        return sign + (abs / 100) + (fraction < 10 ? ".0" : ".") + fraction;
+    }
+
+    public static long[] allocate(long amountCents, int[] weights) {
+        long[] out = new long[weights.length];
+        allocate(amountCents, weights, weights.length, out, new long[weights.length]);
+        return out;
+    }
+
+    //Split amountCents in proportion to weights[0..count) into out, using scratch (length >= count) as work space.
+    //Each part gets its floor share, then the leftover cents go to the largest remainders, ties to the lower index.
+    public static void allocate(long amountCents, int[] weights, int count, long[] out, long[] scratch) {
+        if (amountCents < 0) {
+            throw new IllegalArgumentException("Amount must not be negative");
+        }
+        if (count > MAX_PARTS) {
+            throw new IllegalArgumentException("Cannot split across more than " + MAX_PARTS + " parts");
+        }
+
+        long totalWeight = 0;
+        for (int i = 0; i < count; i++) {
+            if (weights[i] < 0) {
+                throw new IllegalArgumentException("Weights must not be negative");
+            }
+            totalWeight += weights[i];
+        }
+        if (totalWeight >= 1L << (Long.SIZE - 1 - INDEX_BITS)) {
+            throw new IllegalArgumentException("Total weight is too large");
+        }
+        if (totalWeight == 0) {
+            Arrays.fill(out, 0, count, 0L);
+            return;
+        }
+
+        //Budgets normally total exactly 100%; a constant divisor lets the JIT replace the division with a multiply
+        boolean fullBudget = totalWeight == FULL_BASIS_POINTS;
+        long assigned = 0;
+        for (int i = 0; i < count; i++) {
+            long product = Math.multiplyExact(amountCents, (long) weights[i]);
+            long share = fullBudget ? product / FULL_BASIS_POINTS : product / totalWeight;
+            long remainder = product - share * totalWeight;
+            out[i] = share;
+            assigned += share;
+            scratch[i] = (remainder << INDEX_BITS) | (MAX_PARTS - 1 - i);
+        }
+
+        int leftover = (int) (amountCents - assigned);
+        if (leftover > 0) {
+            selectLargest(scratch, count, leftover);
+            for (int k = count - leftover; k < count; k++) {
+                int index = MAX_PARTS - 1 - (int) (scratch[k] & (MAX_PARTS - 1));
+                out[index]++;
+            }
+        }
+    }
+
+    //Quickselect: rearrange keys[0..count) so the k largest (all distinct) end up in keys[count-k..count)
+    private static void selectLargest(long[] keys, int count, int k) {
+        int target = count - k;
+        int low = 0;
+        int high = count - 1;
+        while (low < high) {
+            long pivot = keys[(low + high) >>> 1];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (keys[i] < pivot) {
+                    i++;
+                }
+                while (keys[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    long swap = keys[i];
+                    keys[i] = keys[j];
+                    keys[j] = swap;
+                    i++;
+                    j--;
+                }
+            }
+            if (target <= j) {
+                high = j;
+            } else if (target >= i) {
+                low = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    //Split an amount into equal parts; the first parts absorb the leftover cents
+    public static long[] split(long amountCents, int parts) {
+        long[] out = new long[parts];
+        long base = amountCents / parts;
+        long leftover = amountCents % parts;
+        for (int i = 0; i < parts; i++) {
+            out[i] = base + (i < leftover ? 1 : 0);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,15 @@
+package org.main;
+
+//One password hashing scheme. Stored hashes start with "<algorithm>$" and carry whatever parameters the
+//scheme needs, so accounts hashed under older settings keep verifying while new hashes use the current ones.
+public interface PasswordHasher {
+
+    String algorithm();
+
+    String hash(String password);
+
+    boolean verify(String password, String storedHash);
+
+    //True when the stored hash was made with weaker or different settings than this hasher would use now
+    boolean needsRehash(String storedHash);
+}
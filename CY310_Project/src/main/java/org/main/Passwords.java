@@ -0,0 +1,134 @@
+package org.main;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+//Hashes and checks passwords on a small fixed pool with a bounded queue. A login burst can only occupy these
+//threads; once the queue is full further attempts fail fast with IllegalStateException instead of piling up
+//CPU-bound work in front of everything else.
+public class Passwords implements AutoCloseable {
+
+    public static final String ITERATIONS_KEY = "cy310.password.iterations";
+    public static final String WORKERS_KEY = "cy310.password.workers";
+    public static final String QUEUE_KEY = "cy310.password.queue";
+
+    public record PoolStats(int workers, int queued, long completed, long rejected) {
+    }
+
+    private static final LatencyHistogram HASH_TIME = Metrics.histogram("hash");
+
+    private final PasswordHasher current;
+    private final List<PasswordHasher> known;
+    private final ThreadPoolExecutor pool;
+    private final LongAdder rejected = new LongAdder();
+    //Hash of a random password, checked for unknown usernames so they take as long as wrong passwords. Made on first
+    //use, on a worker, so creating the service at startup does not pay for a full hash
+    private volatile String decoyHash;
+
+    public Passwords(PasswordHasher current, int workers, int queueSize) {
+        this.current = current;
+        this.known = List.of(current, new LegacySha256PasswordHasher());
+        AtomicInteger threadCount = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), runnable -> {
+                    Thread thread = new Thread(runnable, "password-worker-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public static Passwords fromConfig(AppConfig config) {
+        return new Passwords(new Pbkdf2PasswordHasher(config.getInt(ITERATIONS_KEY, Pbkdf2PasswordHasher.DEFAULT_ITERATIONS)),
+                config.getInt(WORKERS_KEY, Runtime.getRuntime().availableProcessors()),
+                config.getInt(QUEUE_KEY, 64));
+    }
+
+    public PasswordHasher current() {
+        return current;
+    }
+
+    public String hash(String password) {
+        return run(() -> current.hash(password));
+    }
+
+    //Check a password against a stored hash of any known scheme; a null stored hash burns the same time and fails
+    public boolean verify(String password, String storedHash) {
+        if (storedHash == null) {
+            run(() -> current.verify(password, decoyHash()));
+            return false;
+        }
+        PasswordHasher hasher = hasherFor(storedHash);
+        return hasher != null && run(() -> hasher.verify(password, storedHash));
+    }
+
+    private String decoyHash() {
+        String hash = decoyHash;
+        if (hash == null) {
+            hash = current.hash(Long.toString(System.nanoTime()));
+            decoyHash = hash;
+        }
+        return hash;
+    }
+
+    public boolean needsRehash(String storedHash) {
+        return current.needsRehash(storedHash);
+    }
+
+    public PoolStats stats() {
+        return new PoolStats(pool.getMaximumPoolSize(), pool.getQueue().size(), pool.getCompletedTaskCount(), rejected.sum());
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    private PasswordHasher hasherFor(String storedHash) {
+        int end = storedHash.indexOf('$');
+        String algorithm = end < 0 ? "" : storedHash.substring(0, end);
+        for (PasswordHasher hasher : known) {
+            if (hasher.algorithm().equals(algorithm)) {
+                return hasher;
+            }
+        }
+        return null;
+    }
+
+    private <T> T run(Callable<T> task) {
+        Future<T> future;
+        try {
+            future = pool.submit(() -> {
+                long start = Metrics.start();
+                try {
+                    return task.call();
+                } finally {
+                    Metrics.stop(HASH_TIME, start);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            Metrics.error("hash.rejected");
+            throw new IllegalStateException("Too many logins in progress, please try again shortly.");
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while checking password", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package org.main;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+//One borrower's handle on a pooled physical connection. Each borrow gets a new handle sharing the connection and its
+//statement cache, so a handle closed twice cannot hand back a connection someone else has borrowed since.
+public class PooledConnection implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PooledConnection.class);
+
+    private final BudgetDataSource pool;
+    private final Connection connection;
+    private final Map<String, PreparedStatement> statements;
+    private boolean closed;
+
+    PooledConnection(BudgetDataSource pool, Connection connection, int statementCacheSize) {
+        this.pool = pool;
+        this.connection = connection;
+
+        //Least recently used statements are closed once the cache is full
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() > statementCacheSize) {
+                    closeQuietly(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    private PooledConnection(PooledConnection previous) {
+        this.pool = previous.pool;
+        this.connection = previous.connection;
+        this.statements = previous.statements;
+    }
+
+    //A fresh handle on the same connection for the next borrower
+    PooledConnection lease() {
+        return new PooledConnection(this);
+    }
+
+    public Connection connection() {
+        return connection;
+    }
+
+    //Return a cached prepared statement; callers must not close it
+    public PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement stmt = statements.get(sql);
+        if (stmt == null) {
+            stmt = connection.prepareStatement(sql);
+            statements.put(sql, stmt);
+        } else {
+            stmt.clearParameters();
+            stmt.clearBatch();
+        }
+        return stmt;
+    }
+
+    //Hand the connection back to the pool, rolling back any unfinished transaction; later calls do nothing
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        boolean healthy = true;
+        try {
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            healthy = false;
+        }
+        pool.release(this, healthy);
+    }
+
+    void closePhysical() {
+        for (PreparedStatement stmt : statements.values()) {
+            closeQuietly(stmt);
+        }
+        statements.clear();
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            LOG.atWarn().setCause(e).log("Error closing connection");
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement stmt) {
+        try {
+            stmt.close();
+        } catch (SQLException ignored) {
+            // Statement is being discarded anyway
+        }
+    }
+}
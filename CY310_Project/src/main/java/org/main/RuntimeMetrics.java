@@ -0,0 +1,146 @@
+package org.main;
+
+import java.util.Map;
+
+//Reads the counters the pool, cache, password workers, login throttle and write queue already keep; nothing here is on a hot path
+public class RuntimeMetrics implements RuntimeMetricsMXBean {
+
+    private final BudgetDataSource dataSource;
+    private final Passwords passwords;
+    private final LoginThrottle throttle;
+    //Null when write-behind is off; every write counter then reads zero
+    private final WriteBehindQueue writes;
+
+    public RuntimeMetrics(BudgetDataSource dataSource, Passwords passwords, LoginThrottle throttle, WriteBehindQueue writes) {
+        this.dataSource = dataSource;
+        this.passwords = passwords;
+        this.throttle = throttle;
+        this.writes = writes;
+    }
+
+    @Override
+    public int getPoolActive() {
+        return dataSource.metrics().active();
+    }
+
+    @Override
+    public int getPoolIdle() {
+        return dataSource.metrics().idle();
+    }
+
+    @Override
+    public int getPoolTotal() {
+        return dataSource.metrics().total();
+    }
+
+    @Override
+    public long getPoolBorrows() {
+        return dataSource.metrics().borrows();
+    }
+
+    @Override
+    public long getPoolWaits() {
+        return dataSource.metrics().waits();
+    }
+
+    @Override
+    public double getPoolMaxBorrowMillis() {
+        return dataSource.metrics().maxBorrowMillis();
+    }
+
+    @Override
+    public int getCacheSize() {
+        return dataSource.budgetCache().stats().size();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return dataSource.budgetCache().stats().hits();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return dataSource.budgetCache().stats().misses();
+    }
+
+    @Override
+    public double getCacheHitRate() {
+        return dataSource.budgetCache().stats().hitRate();
+    }
+
+    @Override
+    public long getCacheEvictions() {
+        return dataSource.budgetCache().stats().evictions();
+    }
+
+    @Override
+    public int getPasswordQueueDepth() {
+        return passwords.stats().queued();
+    }
+
+    @Override
+    public long getPasswordRejected() {
+        return passwords.stats().rejected();
+    }
+
+    @Override
+    public int getThrottleTrackedKeys() {
+        LoginThrottle.ThrottleStats stats = throttle.stats();
+        return stats.trackedUsernames() + stats.trackedSources();
+    }
+
+    @Override
+    public long getThrottleRejected() {
+        return throttle.stats().rejected();
+    }
+
+    @Override
+    public long getThrottleLockouts() {
+        return throttle.stats().lockouts();
+    }
+
+    @Override
+    public long getThrottleEvictions() {
+        return throttle.stats().evictions();
+    }
+
+    @Override
+    public int getWriteQueueDepth() {
+        return writes == null ? 0 : writes.depth();
+    }
+
+    @Override
+    public long getWritesCommitted() {
+        return writes == null ? 0 : writes.stats().committed();
+    }
+
+    @Override
+    public long getWriteBatches() {
+        return writes == null ? 0 : writes.stats().batches();
+    }
+
+    @Override
+    public double getWriteMeanBatchSize() {
+        return writes == null ? 0 : writes.stats().meanBatch();
+    }
+
+    @Override
+    public int getWriteMaxBatchSize() {
+        return writes == null ? 0 : writes.stats().maxBatch();
+    }
+
+    @Override
+    public long getWritesRejected() {
+        return writes == null ? 0 : writes.stats().rejected();
+    }
+
+    @Override
+    public long getWritesFailed() {
+        return writes == null ? 0 : writes.stats().failed();
+    }
+
+    @Override
+    public Map<String, Long> getErrorCounts() {
+        return Metrics.errorCounts();
+    }
+}
@@ -0,0 +1,57 @@
+package org.main;
+
+import java.util.Map;
+
+//JMX view of the connection pool, budget cache, password workers, login throttle and error counts
+public interface RuntimeMetricsMXBean {
+
+    int getPoolActive();
+
+    int getPoolIdle();
+
+    int getPoolTotal();
+
+    long getPoolBorrows();
+
+    long getPoolWaits();
+
+    double getPoolMaxBorrowMillis();
+
+    int getCacheSize();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    double getCacheHitRate();
+
+    long getCacheEvictions();
+
+    int getPasswordQueueDepth();
+
+    long getPasswordRejected();
+
+    int getThrottleTrackedKeys();
+
+    long getThrottleRejected();
+
+    long getThrottleLockouts();
+
+    long getThrottleEvictions();
+
+    int getWriteQueueDepth();
+
+    long getWritesCommitted();
+
+    long getWriteBatches();
+
+    double getWriteMeanBatchSize();
+
+    int getWriteMaxBatchSize();
+
+    long getWritesRejected();
+
+    long getWritesFailed();
+
+    Map<String, Long> getErrorCounts();
+}
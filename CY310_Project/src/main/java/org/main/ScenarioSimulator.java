@@ -0,0 +1,537 @@
+package org.main;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
+
+//What-if projections for a stored budget. Every combination of the sweep values (income change, paychecks per month,
+//percentage shifts between categories) is one variant; variants are evaluated in parallel with fork-join into one
+//primitive array of cumulative per-category totals. The budget is read once and nothing is ever written back.
+public class ScenarioSimulator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ScenarioSimulator.class);
+    private static final LatencyHistogram SIMULATE_TIME = Metrics.histogram("simulate");
+
+    public static final int DEFAULT_MONTHS = 12;
+    public static final int MAX_MONTHS = 600;
+    //Results hold variants x months x categories longs, about 128 MB at this limit
+    public static final int MAX_CELLS = 1 << 24;
+    //Income changes go up to +1000%, growth is at most 100% a month either way
+    public static final int MAX_INCOME_CHANGE = 10 * MoneyAllocator.FULL_BASIS_POINTS;
+    public static final int MAX_GROWTH = MoneyAllocator.FULL_BASIS_POINTS;
+    //Ranges this small are evaluated directly instead of being split further
+    private static final int LEAF_VARIANTS = 64;
+
+    private final int threads;
+
+    public ScenarioSimulator(int threads) {
+        this.threads = threads;
+    }
+
+    //Move basis points of income from one category to another; each value is one variant along this dimension
+    public record Shift(int from, int to, int[] basisPoints) {
+    }
+
+    //incomeChanges are basis points of the stored income (-1,000 = -10%), growth compounds monthly in basis points.
+    //An empty paychecks array keeps the stored paychecks per month.
+    public record Sweep(int[] incomeChanges, int[] paychecks, List<Shift> shifts, int months, int growthBasisPoints) {
+    }
+
+    //Usage: simulate <user_id> [--income LIST] [--paychecks LIST] [--shift FROM>TO=LIST]... [--months N]
+    //                [--growth PCT] [--threads N] [--out file.csv]
+    //LIST is "a,b,c" or "from:to:step", in percent except for paychecks
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Usage: simulate <user_id> [--income LIST] [--paychecks LIST] [--shift FROM>TO=LIST]... "
+                    + "[--months N] [--growth PCT] [--threads N] [--out file.csv]");
+            return;
+        }
+        try {
+            int userId = Integer.parseInt(args[0]);
+            Budget budget = BudgetService.shared().getBudget(userId);
+            if (budget == null || budget.categoryCount() == 0) {
+                System.out.println("No budget found for user " + userId + ".");
+                return;
+            }
+
+            int[] incomeChanges = {0};
+            int[] paychecks = {};
+            List<Shift> shifts = new ArrayList<>();
+            int months = DEFAULT_MONTHS;
+            int growth = 0;
+            int threads = Runtime.getRuntime().availableProcessors();
+            String out = null;
+            for (int i = 1; i + 1 < args.length; i += 2) {
+                switch (args[i]) {
+                    case "--income":
+                        incomeChanges = parsePercentages(args[i + 1]);
+                        break;
+                    case "--paychecks":
+                        paychecks = parseCounts(args[i + 1]);
+                        break;
+                    case "--shift":
+                        shifts.add(parseShift(budget, args[i + 1]));
+                        break;
+                    case "--months":
+                        months = Integer.parseInt(args[i + 1]);
+                        break;
+                    case "--growth":
+                        growth = percent(args[i + 1]);
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(args[i + 1]);
+                        break;
+                    case "--out":
+                        out = args[i + 1];
+                        break;
+                    default:
+                        System.out.println("Ignoring unknown option " + args[i]);
+                }
+            }
+
+            long start = System.nanoTime();
+            Projection projection = new ScenarioSimulator(threads)
+                    .simulate(budget, new Sweep(incomeChanges, paychecks, shifts, months, growth));
+            double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+            System.out.print(projection.summary());
+            System.out.printf("Evaluated %d variants over %d months in %.3fs on %d threads%n",
+                    projection.variantCount(), projection.months(), seconds, threads);
+            if (out != null) {
+                projection.writeCsv(out);
+                System.out.println("Wrote every variant to " + out);
+            }
+        } catch (BudgetException | IOException e) {
+            LOG.atError().setCause(e).log("Error running simulation");
+        } catch (IllegalArgumentException e) {
+            System.out.println("Invalid scenario: " + e.getMessage());
+        }
+    }
+
+    public Projection simulate(Budget budget, Sweep sweep) {
+        int categories = budget.categoryCount();
+        if (categories == 0) {
+            throw new IllegalArgumentException("The budget has no categories");
+        }
+        if (sweep.months() < 1 || sweep.months() > MAX_MONTHS) {
+            throw new IllegalArgumentException("Months must be between 1 and " + MAX_MONTHS);
+        }
+        int[] paychecks = sweep.paychecks().length == 0 ? new int[]{budget.paychecks()} : sweep.paychecks().clone();
+        for (int count : paychecks) {
+            if (count < 1) {
+                throw new IllegalArgumentException("Paychecks per month must be positive");
+            }
+        }
+        int[] incomeChanges = sweep.incomeChanges().length == 0 ? new int[]{0} : sweep.incomeChanges().clone();
+        int maxChange = Integer.MIN_VALUE;
+        for (int change : incomeChanges) {
+            if (change < -MoneyAllocator.FULL_BASIS_POINTS) {
+                throw new IllegalArgumentException("Income cannot drop by more than 100%");
+            }
+            if (change > MAX_INCOME_CHANGE) {
+                throw new IllegalArgumentException("Income cannot rise by more than "
+                        + MoneyAllocator.toPercentage(MAX_INCOME_CHANGE) + "%");
+            }
+            maxChange = Math.max(maxChange, change);
+        }
+        if (sweep.growthBasisPoints() < -MAX_GROWTH || sweep.growthBasisPoints() > MAX_GROWTH) {
+            throw new IllegalArgumentException("Growth must be between -" + MoneyAllocator.toPercentage(MAX_GROWTH)
+                    + "% and " + MoneyAllocator.toPercentage(MAX_GROWTH) + "% a month");
+        }
+        checkIncome(budget.incomeCents(), maxChange, sweep.growthBasisPoints(), sweep.months());
+        Shift[] shifts = sweep.shifts().toArray(new Shift[0]);
+        for (Shift shift : shifts) {
+            if (shift.from() < 0 || shift.from() >= categories || shift.to() < 0 || shift.to() >= categories
+                    || shift.from() == shift.to() || shift.basisPoints().length == 0) {
+                throw new IllegalArgumentException("Each shift needs two different categories and at least one value");
+            }
+            for (int value : shift.basisPoints()) {
+                if (value < 0 || value > MoneyAllocator.FULL_BASIS_POINTS) {
+                    throw new IllegalArgumentException("Shift percentages must be between 0% and 100%");
+                }
+            }
+        }
+
+        //Mixed-radix dimensions: income change, paychecks, then one per shift
+        int[] radix = new int[2 + shifts.length];
+        radix[0] = incomeChanges.length;
+        radix[1] = paychecks.length;
+        long variants = (long) incomeChanges.length * paychecks.length;
+        for (int k = 0; k < shifts.length; k++) {
+            radix[2 + k] = shifts[k].basisPoints().length;
+            variants *= radix[2 + k];
+            if (variants * sweep.months() * categories > MAX_CELLS) {
+                break;
+            }
+        }
+        if (variants * sweep.months() * categories > MAX_CELLS) {
+            throw new IllegalArgumentException("Too many variants: reduce the sweep or the months (limit is "
+                    + MAX_CELLS + " projected values)");
+        }
+
+        Projection projection = new Projection(budget, incomeChanges, paychecks, shifts, radix, (int) variants,
+                sweep.months(), sweep.growthBasisPoints());
+        long start = Metrics.start();
+        ForkJoinPool workers = new ForkJoinPool(threads);
+        try {
+            workers.invoke(new Evaluate(projection, 0, projection.variantCount));
+        } finally {
+            workers.shutdown();
+            Metrics.stop(SIMULATE_TIME, start);
+        }
+        return projection;
+    }
+
+    //Splits the variant range in halves until it is small enough to run with one set of scratch buffers
+    private static class Evaluate extends RecursiveAction {
+        private final Projection projection;
+        private final int from;
+        private final int to;
+
+        Evaluate(Projection projection, int from, int to) {
+            this.projection = projection;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= LEAF_VARIANTS) {
+                int categories = projection.categories;
+                int[] weights = new int[categories];
+                int[] digits = new int[projection.radix.length];
+                long[] base = new long[categories];
+                long[] extra = new long[categories];
+                long[] scratch = new long[categories];
+                for (int variant = from; variant < to; variant++) {
+                    projection.evaluate(variant, weights, digits, base, extra, scratch);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Evaluate(projection, from, middle), new Evaluate(projection, middle, to));
+        }
+    }
+
+    //Cumulative per-category totals for every variant, laid out [variant][month][category] in one array
+    public static final class Projection {
+        private final Budget budget;
+        private final int[] incomeChanges;
+        private final int[] paychecks;
+        private final Shift[] shifts;
+        private final int[] radix;
+        private final int variantCount;
+        private final int months;
+        private final int growthBasisPoints;
+        private final int categories;
+        private final long[] totals;
+
+        private Projection(Budget budget, int[] incomeChanges, int[] paychecks, Shift[] shifts, int[] radix,
+                           int variantCount, int months, int growthBasisPoints) {
+            this.budget = budget;
+            this.incomeChanges = incomeChanges;
+            this.paychecks = paychecks;
+            this.shifts = shifts;
+            this.radix = radix;
+            this.variantCount = variantCount;
+            this.months = months;
+            this.growthBasisPoints = growthBasisPoints;
+            this.categories = budget.categoryCount();
+            this.totals = new long[variantCount * months * categories];
+        }
+
+        public Budget budget() {
+            return budget;
+        }
+
+        public int variantCount() {
+            return variantCount;
+        }
+
+        public int months() {
+            return months;
+        }
+
+        public int categoryCount() {
+            return categories;
+        }
+
+        public String category(int index) {
+            return budget.category(index);
+        }
+
+        //Total put into a category from the start through the given month (0-based)
+        public long cumulativeCents(int variant, int month, int category) {
+            return totals[(variant * months + month) * categories + category];
+        }
+
+        //Amount put into a category during the given month (0-based)
+        public long monthCents(int variant, int month, int category) {
+            long total = cumulativeCents(variant, month, category);
+            return month == 0 ? total : total - cumulativeCents(variant, month - 1, category);
+        }
+
+        public int incomeChange(int variant) {
+            return incomeChanges[digit(variant, 0)];
+        }
+
+        public int paychecks(int variant) {
+            return paychecks[digit(variant, 1)];
+        }
+
+        //Basis points requested by the k-th shift in this variant, before clamping to what the source category holds
+        public int shift(int variant, int k) {
+            return shifts[k].basisPoints()[digit(variant, 2 + k)];
+        }
+
+        //The category percentages this variant allocates with
+        public int[] basisPoints(int variant) {
+            int[] weights = new int[categories];
+            int[] digits = new int[radix.length];
+            decode(variant, digits);
+            applyShifts(digits, weights);
+            return weights;
+        }
+
+        public String describe(int variant) {
+            StringBuilder out = new StringBuilder("income ").append(signed(incomeChange(variant)))
+                    .append(", paychecks ").append(paychecks(variant));
+            for (int k = 0; k < shifts.length; k++) {
+                out.append(", ").append(category(shifts[k].from())).append(" -> ").append(category(shifts[k].to()))
+                        .append(' ').append(MoneyAllocator.toPercentage(shift(variant, k))).append('%');
+            }
+            return out.toString();
+        }
+
+        private int digit(int variant, int dimension) {
+            int rest = variant;
+            for (int d = radix.length - 1; d > dimension; d--) {
+                rest /= radix[d];
+            }
+            return rest % radix[dimension];
+        }
+
+        private void decode(int variant, int[] digits) {
+            int rest = variant;
+            for (int d = radix.length - 1; d >= 0; d--) {
+                digits[d] = rest % radix[d];
+                rest /= radix[d];
+            }
+        }
+
+        //Shifts apply in order; each moves at most what its source category holds at that point
+        private void applyShifts(int[] digits, int[] weights) {
+            for (int i = 0; i < categories; i++) {
+                weights[i] = budget.basisPoints(i);
+            }
+            for (int k = 0; k < shifts.length; k++) {
+                Shift shift = shifts[k];
+                int moved = Math.min(shift.basisPoints()[digits[2 + k]], weights[shift.from()]);
+                weights[shift.from()] -= moved;
+                weights[shift.to()] += moved;
+            }
+        }
+
+        private void evaluate(int variant, int[] weights, int[] digits, long[] base, long[] extra, long[] scratch) {
+            decode(variant, digits);
+            applyShifts(digits, weights);
+            long income = scale(budget.incomeCents(), MoneyAllocator.FULL_BASIS_POINTS + incomeChanges[digits[0]]);
+            project(income, paychecks[digits[1]], growthBasisPoints, weights, base, extra, scratch, totals,
+                    variant * months * categories, months);
+        }
+
+        //Per-category spread at the end of the horizon across all variants
+        public String summary() {
+            int[] weights = new int[categories];
+            for (int i = 0; i < categories; i++) {
+                weights[i] = budget.basisPoints(i);
+            }
+            long[] current = new long[months * categories];
+            project(budget.incomeCents(), budget.paychecks(), growthBasisPoints, weights, new long[categories],
+                    new long[categories], new long[categories], current, 0, months);
+
+            StringBuilder out = new StringBuilder();
+            out.append(String.format("%n---- Projection After %d Months (%d variants) ----%n", months, variantCount));
+            int last = months - 1;
+            out.append(String.format("%-20s %14s %14s %14s %14s%n", "Category", "Current", "Lowest", "Average", "Highest"));
+            for (int i = 0; i < categories; i++) {
+                long min = Long.MAX_VALUE;
+                long max = Long.MIN_VALUE;
+                long sum = 0;
+                for (int variant = 0; variant < variantCount; variant++) {
+                    long value = cumulativeCents(variant, last, i);
+                    min = Math.min(min, value);
+                    max = Math.max(max, value);
+                    sum += value;
+                }
+                out.append(String.format("%-20s %14s %14s %14s %14s%n", category(i), MoneyAllocator.format(current[last * categories + i]),
+                        MoneyAllocator.format(min), MoneyAllocator.format(sum / variantCount), MoneyAllocator.format(max)));
+            }
+            return out.toString();
+        }
+
+        //One row per variant, month and category
+        public void writeCsv(String file) throws IOException {
+            try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8)) {
+                writer.write("variant,income_change,paychecks,month,category,percentage,month_amount,cumulative");
+                writer.newLine();
+                StringBuilder line = new StringBuilder();
+                for (int variant = 0; variant < variantCount; variant++) {
+                    int[] weights = basisPoints(variant);
+                    for (int month = 0; month < months; month++) {
+                        for (int i = 0; i < categories; i++) {
+                            line.setLength(0);
+                            line.append(variant).append(',').append(MoneyAllocator.toPercentage(incomeChange(variant)))
+                                    .append(',').append(paychecks(variant)).append(',').append(month + 1).append(',');
+                            String category = category(i);
+                            if (category.indexOf(',') >= 0 || category.indexOf('"') >= 0) {
+                                line.append('"').append(category.replace("\"", "\"\"")).append('"');
+                            } else {
+                                line.append(category);
+                            }
+                            line.append(',').append(MoneyAllocator.toPercentage(weights[i]))
+                                    .append(',').append(MoneyAllocator.format(monthCents(variant, month, i)))
+                                    .append(',').append(MoneyAllocator.format(cumulativeCents(variant, month, i)));
+                            writer.write(line.toString());
+                            writer.newLine();
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    //Cumulative per-category totals for months of paychecks into out[offset..], one row of categories per month.
+    //Paychecks in a month differ by at most one cent, so each month needs only two allocations.
+    private static void project(long income, int paychecks, int growthBasisPoints, int[] weights, long[] base,
+                                long[] extra, long[] scratch, long[] out, int offset, int months) {
+        int categories = base.length;
+        for (int month = 0; month < months; month++) {
+            long paycheck = income / paychecks;
+            long leftover = income % paychecks;
+            MoneyAllocator.allocate(paycheck, weights, categories, base, scratch);
+            if (leftover > 0) {
+                MoneyAllocator.allocate(paycheck + 1, weights, categories, extra, scratch);
+            }
+            int row = offset + month * categories;
+            for (int i = 0; i < categories; i++) {
+                long spent = base[i] * (paychecks - leftover) + (leftover > 0 ? extra[i] * leftover : 0);
+                out[row + i] = month == 0 ? spent : out[row - categories + i] + spent;
+            }
+            income = scale(income, MoneyAllocator.FULL_BASIS_POINTS + growthBasisPoints);
+        }
+    }
+
+    //Walk the largest income through the months the way project does. Every month's income has to stay allocatable,
+    //which also keeps the cumulative totals (at most MAX_MONTHS of them) inside a long.
+    private static void checkIncome(long incomeCents, int change, int growthBasisPoints, int months) {
+        try {
+            long income = scale(incomeCents, MoneyAllocator.FULL_BASIS_POINTS + change);
+            for (int month = 0; month < months; month++) {
+                if (income > MoneyAllocator.MAX_AMOUNT_CENTS) {
+                    throw new ArithmeticException();
+                }
+                income = scale(income, MoneyAllocator.FULL_BASIS_POINTS + growthBasisPoints);
+            }
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("The projected income grows too large; lower the income change, growth or months");
+        }
+    }
+
+    //cents * basisPoints / 10,000, rounded half up
+    static long scale(long cents, int basisPoints) {
+        return Math.floorDiv(Math.multiplyExact(cents, (long) basisPoints) + MoneyAllocator.FULL_BASIS_POINTS / 2,
+                MoneyAllocator.FULL_BASIS_POINTS);
+    }
+
+    private static String signed(int basisPoints) {
+        return (basisPoints > 0 ? "+" : "") + MoneyAllocator.toPercentage(basisPoints) + "%";
+    }
+
+    //"a,b,c" or "from:to:step" in percent, as basis points
+    static int[] parsePercentages(String list) {
+        String[] range = list.split(":");
+        if (range.length == 3) {
+            int from = percent(range[0]);
+            int to = percent(range[1]);
+            int step = percent(range[2]);
+            if (step <= 0 || to < from) {
+                throw new IllegalArgumentException("A range needs from <= to and a positive step: " + list);
+            }
+            long count = ((long) to - from) / step + 1;
+            if (count > MAX_CELLS) {
+                throw new IllegalArgumentException("Range has too many values: " + list);
+            }
+            int[] values = new int[(int) count];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = from + i * step;
+            }
+            return values;
+        }
+        return Arrays.stream(list.split(",")).map(String::trim).filter(s -> !s.isEmpty())
+                .mapToInt(ScenarioSimulator::percent).toArray();
+    }
+
+    //One percentage as basis points; anything past +-1,000,000% is rejected before it can wrap around an int
+    static int percent(String text) {
+        double value = Double.parseDouble(text.trim());
+        if (!(Math.abs(value) <= 1_000_000)) {
+            throw new IllegalArgumentException("Percentage out of range: " + text.trim());
+        }
+        return MoneyAllocator.toBasisPoints(value);
+    }
+
+    //"a,b,c" or "from:to" of whole numbers
+    static int[] parseCounts(String list) {
+        String[] range = list.split(":");
+        if (range.length == 2) {
+            int from = Integer.parseInt(range[0].trim());
+            int to = Integer.parseInt(range[1].trim());
+            if (to < from) {
+                throw new IllegalArgumentException("A range needs from <= to: " + list);
+            }
+            if ((long) to - from + 1 > MAX_CELLS) {
+                throw new IllegalArgumentException("Range has too many values: " + list);
+            }
+            return IntStream.rangeClosed(from, to).toArray();
+        }
+        return Arrays.stream(list.split(",")).map(String::trim).filter(s -> !s.isEmpty())
+                .mapToInt(Integer::parseInt).toArray();
+    }
+
+    //"FROM>TO=LIST" with category names as stored
+    static Shift parseShift(Budget budget, String spec) {
+        int arrow = spec.indexOf('>');
+        int equals = spec.lastIndexOf('=');
+        if (arrow <= 0 || equals <= arrow) {
+            throw new IllegalArgumentException("A shift looks like FROM>TO=LIST, got '" + spec + "'");
+        }
+        int[] values = parsePercentages(spec.substring(equals + 1));
+        for (int value : values) {
+            if (value < 0) {
+                throw new IllegalArgumentException("Shift percentages must not be negative; swap the categories instead");
+            }
+        }
+        return new Shift(categoryIndex(budget, spec.substring(0, arrow).trim()),
+                categoryIndex(budget, spec.substring(arrow + 1, equals).trim()), values);
+    }
+
+    private static int categoryIndex(Budget budget, String name) {
+        for (int i = 0; i < budget.categoryCount(); i++) {
+            if (budget.category(i).equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("No category named '" + name + "' in this budget");
+    }
+}
@@ -0,0 +1,214 @@
+package org.main;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SchemaMigrations {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SchemaMigrations.class);
+
+    //ShardTool drops this for the length of a transaction that moves a user's ledger to another shard
+    static final String LEDGER_NO_DELETE_TRIGGER = """
+            CREATE TRIGGER allocation_ledger_no_delete BEFORE DELETE ON allocation_ledger
+            BEGIN SELECT RAISE(ABORT, 'allocation_ledger is append-only'); END;""";
+
+    //Each entry upgrades the schema by one version; PRAGMA user_version records how far a file has got
+    private static final String[][] MIGRATIONS = {
+            //Version 1: original tables
+            {
+                    """
+                    CREATE TABLE IF NOT EXISTS users (
+                     id INTEGER PRIMARY KEY AUTOINCREMENT,
+                     username TEXT NOT NULL UNIQUE,
+                     password TEXT NOT NULL,
+                     salt TEXT NOT NULL
+                    );""",
+                    """
+                    CREATE TABLE IF NOT EXISTS budgets (
+                     id INTEGER PRIMARY KEY AUTOINCREMENT,
+                     user_id INTEGER NOT NULL,
+                     category TEXT NOT NULL,
+                     percentage REAL NOT NULL CHECK (percentage >= 0 AND percentage <= 100),
+                     income REAL NOT NULL,
+                     paychecks INTEGER NOT NULL,
+                     FOREIGN KEY (user_id) REFERENCES users (id)
+                    );"""
+            },
+            //Version 2: income and paychecks move to budget_header, budgets is clustered on (user_id, category)
+            {
+                    """
+                    CREATE TABLE budget_header (
+                     user_id INTEGER PRIMARY KEY,
+                     income REAL NOT NULL,
+                     paychecks INTEGER NOT NULL,
+                     FOREIGN KEY (user_id) REFERENCES users (id)
+                    );""",
+                    """
+                    INSERT INTO budget_header (user_id, income, paychecks)
+                    SELECT user_id, MAX(income), MAX(paychecks) FROM budgets GROUP BY user_id;""",
+                    """
+                    CREATE TABLE budgets_v2 (
+                     user_id INTEGER NOT NULL,
+                     category TEXT NOT NULL,
+                     percentage REAL NOT NULL CHECK (percentage >= 0 AND percentage <= 100),
+                     PRIMARY KEY (user_id, category),
+                     FOREIGN KEY (user_id) REFERENCES budget_header (user_id)
+                    ) WITHOUT ROWID;""",
+                    """
+                    INSERT OR REPLACE INTO budgets_v2 (user_id, category, percentage)
+                    SELECT user_id, category, percentage FROM budgets ORDER BY id;""",
+                    "DROP TABLE budgets;",
+                    "ALTER TABLE budgets_v2 RENAME TO budgets;"
+            },
+            //Version 3: versioned budget snapshots, an append-only allocation ledger and monthly rollups
+            {
+                    """
+                    CREATE TABLE budget_versions (
+                     user_id INTEGER NOT NULL,
+                     version INTEGER NOT NULL,
+                     created_at INTEGER NOT NULL,
+                     income_cents INTEGER NOT NULL,
+                     paychecks INTEGER NOT NULL,
+                     PRIMARY KEY (user_id, version)
+                    ) WITHOUT ROWID;""",
+                    """
+                    CREATE TABLE budget_version_categories (
+                     user_id INTEGER NOT NULL,
+                     version INTEGER NOT NULL,
+                     category TEXT NOT NULL,
+                     basis_points INTEGER NOT NULL,
+                     PRIMARY KEY (user_id, version, category)
+                    ) WITHOUT ROWID;""",
+                    """
+                    INSERT INTO budget_versions (user_id, version, created_at, income_cents, paychecks)
+                    SELECT user_id, 1, CAST(strftime('%s', 'now') AS INTEGER) * 1000, CAST(ROUND(income * 100) AS INTEGER), paychecks
+                    FROM budget_header;""",
+                    """
+                    INSERT INTO budget_version_categories (user_id, version, category, basis_points)
+                    SELECT user_id, 1, category, CAST(ROUND(percentage * 100) AS INTEGER) FROM budgets;""",
+                    """
+                    CREATE TABLE allocation_ledger (
+                     id INTEGER PRIMARY KEY,
+                     user_id INTEGER NOT NULL,
+                     budget_version INTEGER NOT NULL,
+                     created_at INTEGER NOT NULL,
+                     amount_cents INTEGER NOT NULL
+                    );""",
+                    "CREATE INDEX allocation_ledger_user_time ON allocation_ledger (user_id, created_at);",
+                    """
+                    CREATE TABLE allocation_ledger_lines (
+                     entry_id INTEGER NOT NULL,
+                     category TEXT NOT NULL,
+                     amount_cents INTEGER NOT NULL,
+                     PRIMARY KEY (entry_id, category)
+                    ) WITHOUT ROWID;""",
+                    """
+                    CREATE TRIGGER allocation_ledger_no_update BEFORE UPDATE ON allocation_ledger
+                    BEGIN SELECT RAISE(ABORT, 'allocation_ledger is append-only'); END;""",
+                    LEDGER_NO_DELETE_TRIGGER,
+                    """
+                    CREATE TABLE monthly_category_totals (
+                     user_id INTEGER NOT NULL,
+                     month INTEGER NOT NULL,
+                     category TEXT NOT NULL,
+                     amount_cents INTEGER NOT NULL,
+                     allocations INTEGER NOT NULL,
+                     PRIMARY KEY (user_id, month, category)
+                    ) WITHOUT ROWID;"""
+            }
+    };
+
+    public static final int CURRENT_VERSION = MIGRATIONS.length;
+
+    //Lookups on the hot paths; each must be answered by an index search, never a table scan
+    static final String[] INDEXED_QUERIES = {
+            "SELECT id, password, salt FROM users WHERE username = ?",
+            "SELECT category, percentage FROM budgets WHERE user_id = ?",
+            "SELECT income, paychecks FROM budget_header WHERE user_id = ?",
+            "SELECT percentage FROM budgets WHERE user_id = ? AND category = ?",
+            "SELECT MAX(version) FROM budget_versions WHERE user_id = ?",
+            "SELECT id, budget_version, created_at, amount_cents FROM allocation_ledger WHERE user_id = ? AND created_at >= ? ORDER BY created_at DESC",
+            "SELECT month, category, amount_cents, allocations FROM monthly_category_totals WHERE user_id = ? AND month >= ?"
+    };
+
+    //Bring the database up to CURRENT_VERSION, one transaction per version
+    public static void migrate(BudgetDataSource dataSource) throws SQLException {
+        try (PooledConnection conn = dataSource.borrow()) {
+            Connection connection = conn.connection();
+            int version = currentVersion(connection);
+            //Reading user_version is the whole cost of startup when the schema is already current
+            if (version == CURRENT_VERSION) {
+                return;
+            }
+            if (version > CURRENT_VERSION) {
+                throw new SQLException("Database schema version " + version + " is newer than this application (" + CURRENT_VERSION + ")");
+            }
+
+            for (int next = version + 1; next <= CURRENT_VERSION; next++) {
+                connection.setAutoCommit(false);
+                try (Statement stmt = connection.createStatement()) {
+                    for (String sql : MIGRATIONS[next - 1]) {
+                        stmt.execute(sql);
+                    }
+                    stmt.execute("PRAGMA user_version = " + next);
+                    connection.commit();
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw new SQLException("Schema migration to version " + next + " failed: " + e.getMessage(), e);
+                } finally {
+                    connection.setAutoCommit(true);
+                }
+                LOG.atInfo().addKeyValue("version", next).log("Database schema upgraded");
+            }
+
+            for (String problem : checkQueryPlans(connection)) {
+                LOG.warn(problem);
+            }
+        }
+    }
+
+    public static int currentVersion(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    //Return a description of every hot-path query whose plan falls back to a full scan
+    public static List<String> checkQueryPlans(Connection connection) throws SQLException {
+        List<String> problems = new ArrayList<>();
+        for (String sql : INDEXED_QUERIES) {
+            for (String step : explain(connection, sql)) {
+                if (step.startsWith("SCAN")) {
+                    problems.add("query plan for \"" + sql + "\" uses a full scan: " + step);
+                }
+            }
+        }
+        return problems;
+    }
+
+    public static List<String> explain(Connection connection, String sql) throws SQLException {
+        List<String> steps = new ArrayList<>();
+        try (PreparedStatement stmt = connection.prepareStatement("EXPLAIN QUERY PLAN " + sql)) {
+            int params = sql.length() - sql.replace("?", "").length();
+            for (int i = 1; i <= params; i++) {
+                stmt.setNull(i, Types.NULL);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    steps.add(rs.getString("detail"));
+                }
+            }
+        }
+        return steps;
+    }
+}
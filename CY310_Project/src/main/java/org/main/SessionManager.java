@@ -0,0 +1,78 @@
+package org.main;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+//Opaque bearer tokens for the HTTP API, replacing the int user id the console keeps after Login.login
+public class SessionManager {
+
+    private static final int TOKEN_BYTES = 32;
+
+    private record Session(int userId, long expiresAt) {
+    }
+
+    private final SecureRandom random = new SecureRandom();
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final long ttlMillis;
+    private final int maxSessions;
+
+    public SessionManager(long ttlMillis, int maxSessions) {
+        this.ttlMillis = ttlMillis;
+        this.maxSessions = maxSessions;
+    }
+
+    public String create(int userId) {
+        if (sessions.size() >= maxSessions) {
+            purgeExpired();
+            if (sessions.size() >= maxSessions) {
+                throw new IllegalStateException("Too many active sessions");
+            }
+        }
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        sessions.put(token, new Session(userId, System.currentTimeMillis() + ttlMillis));
+        return token;
+    }
+
+    //User id for a live token, extending its expiry; null when unknown or expired
+    public Integer resolve(String token) {
+        if (token == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        Session session = sessions.get(token);
+        if (session == null) {
+            return null;
+        }
+        if (session.expiresAt() < now) {
+            sessions.remove(token, session);
+            return null;
+        }
+        sessions.replace(token, session, new Session(session.userId(), now + ttlMillis));
+        return session.userId();
+    }
+
+    public void revoke(String token) {
+        if (token != null) {
+            sessions.remove(token);
+        }
+    }
+
+    public int activeSessions() {
+        return sessions.size();
+    }
+
+    public void purgeExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<Session> it = sessions.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().expiresAt() < now) {
+                it.remove();
+            }
+        }
+    }
+}
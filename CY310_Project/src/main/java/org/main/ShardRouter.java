@@ -0,0 +1,427 @@
+package org.main;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+//Spreads users over several SQLite files so writers for different users stop sharing one write lock. Shard 0 is the
+//usual database file and shard N sits next to it as cy310-shardN.db. With more than one shard, a directory file
+//(cy310-directory.db) hands out user ids and maps every user id and username to its shard, so a login reads the
+//directory and then exactly one shard. New users are placed by the configured strategy; ShardTool rebalance moves
+//users whose placement has changed while the application keeps running.
+public class ShardRouter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ShardRouter.class);
+
+    public static final String COUNT_KEY = "cy310.shards.count";
+    public static final String STRATEGY_KEY = "cy310.shards.strategy";
+    public static final String RANGE_SIZE_KEY = "cy310.shards.rangeSize";
+    public static final int MAX_SHARDS = 64;
+
+    //A move can race a call at most once or twice; give up after that rather than loop
+    private static final int MAX_ATTEMPTS = 3;
+
+    private static final String DIRECTORY_SQL = """
+            CREATE TABLE IF NOT EXISTS shard_users (
+             user_id INTEGER PRIMARY KEY AUTOINCREMENT,
+             username TEXT NOT NULL UNIQUE,
+             shard INTEGER NOT NULL
+            );""";
+
+    //Bumped by every committed move. Budget caches live in each process, so a process that sees the generation change
+    //drops its cached budgets instead of serving one left behind on a shard a user has since moved off and back to.
+    private static final String MOVES_SQL = """
+            CREATE TABLE IF NOT EXISTS shard_moves (
+             id INTEGER PRIMARY KEY CHECK (id = 0),
+             generation INTEGER NOT NULL
+            );""";
+    private static final String MOVES_ROW_SQL = "INSERT OR IGNORE INTO shard_moves (id, generation) VALUES (0, 0)";
+
+    //HASH uses rendezvous hashing, so going from N to N+1 shards only moves about 1/(N+1) of the users.
+    //RANGE keeps consecutive user ids together, rangeSize ids per shard, with the last shard taking the rest.
+    public enum Strategy { HASH, RANGE }
+
+    public interface ShardCall<T> {
+        T call(BudgetDataSource shard) throws SQLException;
+    }
+
+    //Raised inside a write transaction when the user has been moved off the shard since the route was read
+    public static class UserMovedException extends SQLException {
+        public UserMovedException(int userId) {
+            super("User " + userId + " has moved to another shard");
+        }
+    }
+
+    //Where a username lives, read from the directory
+    public record Route(int userId, int shard) {
+    }
+
+    private final AppConfig config;
+    private final int count;
+    private final Strategy strategy;
+    private final int rangeSize;
+    private final AtomicReferenceArray<BudgetDataSource> shards = new AtomicReferenceArray<>(MAX_SHARDS);
+    private volatile BudgetDataSource directory;
+    private volatile long movesSeen;
+
+    public ShardRouter(AppConfig config, BudgetDataSource primary, int count, Strategy strategy, int rangeSize) {
+        if (count < 1 || count > MAX_SHARDS) {
+            throw new IllegalArgumentException("Shard count must be between 1 and " + MAX_SHARDS);
+        }
+        if (rangeSize < 1) {
+            throw new IllegalArgumentException("Shard range size must be at least 1");
+        }
+        this.config = config;
+        this.count = count;
+        this.strategy = strategy;
+        this.rangeSize = rangeSize;
+        this.shards.set(0, primary);
+        if (count > 1) {
+            primary.markShard();
+        }
+    }
+
+    //One database file, no directory; every call goes straight to the data source
+    public static ShardRouter single(BudgetDataSource dataSource) {
+        return new ShardRouter(AppConfig.current(), dataSource, 1, Strategy.HASH, Integer.MAX_VALUE);
+    }
+
+    public static ShardRouter fromConfig(AppConfig config) {
+        return new ShardRouter(config, BudgetDataSource.shared(), config.getInt(COUNT_KEY, 1),
+                Strategy.valueOf(config.get(STRATEGY_KEY, "hash").trim().toUpperCase()),
+                config.getInt(RANGE_SIZE_KEY, 1_000_000));
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public Strategy strategy() {
+        return strategy;
+    }
+
+    public boolean isSharded() {
+        return count > 1;
+    }
+
+    public BudgetDataSource primary() {
+        return shards.get(0);
+    }
+
+    //Shard data source, opened and migrated on first use; shards beyond count stay reachable until emptied
+    public BudgetDataSource shard(int index) throws SQLException {
+        BudgetDataSource shard = shards.get(index);
+        return shard != null ? shard : openShard(index);
+    }
+
+    private synchronized BudgetDataSource openShard(int index) throws SQLException {
+        BudgetDataSource shard = shards.get(index);
+        if (shard == null) {
+            shard = open(shardPath(index));
+            SchemaMigrations.migrate(shard);
+            shard.markShard();
+            shards.set(index, shard);
+        }
+        return shard;
+    }
+
+    //Whether a shard's file exists, without creating it
+    public boolean shardExists(int index) {
+        return shards.get(index) != null || Files.exists(Paths.get(shardPath(index)));
+    }
+
+    public String shardPath(int index) {
+        return index == 0 ? primary().getDbPath() : siblingPath("shard" + index);
+    }
+
+    public boolean directoryExists() {
+        return directory != null || Files.exists(Paths.get(siblingPath("directory")));
+    }
+
+    //Directory of user ids, usernames and shards, created on first use and filled from the shard files when new
+    BudgetDataSource directory() throws SQLException {
+        BudgetDataSource current = directory;
+        return current != null ? current : openDirectory();
+    }
+
+    private synchronized BudgetDataSource openDirectory() throws SQLException {
+        if (directory == null) {
+            BudgetDataSource opened = open(siblingPath("directory"));
+            boolean empty;
+            try (PooledConnection conn = opened.borrow(); Statement stmt = conn.connection().createStatement()) {
+                stmt.execute(DIRECTORY_SQL);
+                stmt.execute(MOVES_SQL);
+                stmt.execute(MOVES_ROW_SQL);
+                try (ResultSet rs = stmt.executeQuery("SELECT generation FROM shard_moves")) {
+                    movesSeen = rs.next() ? rs.getLong(1) : 0;
+                }
+                try (ResultSet rs = stmt.executeQuery("SELECT NOT EXISTS (SELECT 1 FROM shard_users)")) {
+                    empty = rs.next() && rs.getBoolean(1);
+                }
+            }
+            if (empty) {
+                for (int index = 0; index < MAX_SHARDS; index++) {
+                    if (shardExists(index)) {
+                        int added = adopt(index, opened);
+                        LOG.atInfo().addKeyValue("shard", index).addKeyValue("users", added).log("Shard directory filled");
+                    }
+                }
+            }
+            directory = opened;
+        }
+        return directory;
+    }
+
+    //Shard a user id is placed on by the current strategy and count
+    public int placement(int userId) {
+        if (count == 1) {
+            return 0;
+        }
+        if (strategy == Strategy.RANGE) {
+            return Math.min(count - 1, Math.max(0, (userId - 1) / rangeSize));
+        }
+        int best = 0;
+        long bestScore = Long.MIN_VALUE;
+        for (int shard = 0; shard < count; shard++) {
+            long score = mix(((long) userId << 32) | shard);
+            if (score > bestScore) {
+                best = shard;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    //SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    //Shard currently holding a user; users missing from the directory are looked for where they would be placed.
+    //The same lookup reads the move generation, so cached budgets are checked against it on every routed call.
+    public int shardOf(int userId) throws SQLException {
+        if (count == 1) {
+            return 0;
+        }
+        try (PooledConnection conn = directory().borrow()) {
+            PreparedStatement stmt = conn.prepare("SELECT (SELECT shard FROM shard_users WHERE user_id = ?), generation FROM shard_moves");
+            stmt.setInt(1, userId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return placement(userId);
+                }
+                int shard = rs.getInt(1);
+                boolean missing = rs.wasNull();
+                checkMoves(rs.getLong(2));
+                return missing ? placement(userId) : shard;
+            }
+        }
+    }
+
+    //Another process has moved users since this one last looked: every cached budget may be from before a move
+    private void checkMoves(long generation) {
+        if (generation == movesSeen) {
+            return;
+        }
+        synchronized (this) {
+            if (generation <= movesSeen) {
+                return;
+            }
+            for (int index = 0; index < MAX_SHARDS; index++) {
+                BudgetDataSource shard = shards.get(index);
+                if (shard != null) {
+                    shard.budgetCache().clear();
+                }
+            }
+            LOG.atDebug().addKeyValue("generation", generation).log("Shard moves seen, budget caches cleared");
+            movesSeen = generation;
+        }
+    }
+
+    //Called in the directory transaction that re-points moved users, so other processes notice the move
+    static void recordMoves(PooledConnection dir) throws SQLException {
+        dir.prepare("UPDATE shard_moves SET generation = generation + 1").executeUpdate();
+    }
+
+    //Routing index lookup for a login; null when the username is unknown
+    public Route route(String username) throws SQLException {
+        try (PooledConnection conn = directory().borrow()) {
+            PreparedStatement stmt = conn.prepare("SELECT user_id, shard FROM shard_users WHERE username = ?");
+            stmt.setString(1, username);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? new Route(rs.getInt(1), rs.getInt(2)) : null;
+            }
+        }
+    }
+
+    //Run a read on the user's shard. An empty answer is checked against the directory once more, because a user
+    //moved while the read was running looks like a user with no data.
+    public <T> T read(int userId, ShardCall<T> call) throws SQLException {
+        for (int attempt = 1; ; attempt++) {
+            int shard = shardOf(userId);
+            T result = call.call(shard(shard));
+            if (count == 1 || attempt == MAX_ATTEMPTS || !isEmpty(result) || shardOf(userId) == shard) {
+                return result;
+            }
+        }
+    }
+
+    //Run a write on the user's shard, following the user if a move gets in first
+    public <T> T write(int userId, ShardCall<T> call) throws SQLException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return call.call(shard(shardOf(userId)));
+            } catch (UserMovedException e) {
+                if (attempt == MAX_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private static boolean isEmpty(Object result) {
+        return result == null || result instanceof Collection<?> collection && collection.isEmpty();
+    }
+
+    //Called first thing in a write transaction on a shard. A move deletes the users row first, under the shard's
+    //write lock, so a writer that routed to the old shard finds the row gone once it gets the lock.
+    static void checkResident(PooledConnection conn, int userId) throws SQLException {
+        lockForWrite(conn);
+        PreparedStatement stmt = conn.prepare("SELECT 1 FROM users WHERE id = ?");
+        stmt.setInt(1, userId);
+        try (ResultSet rs = stmt.executeQuery()) {
+            if (!rs.next()) {
+                throw new UserMovedException(userId);
+            }
+        }
+    }
+
+    //Take the write lock at the start of a transaction. Reading first and writing later fails with SQLITE_BUSY_SNAPSHOT
+    //if another connection commits in between; a write as the first statement waits for the lock instead.
+    static void lockForWrite(PooledConnection conn) throws SQLException {
+        conn.prepare("UPDATE users SET id = id WHERE 0").executeUpdate();
+    }
+
+    //Create a user: the directory hands out the id and reserves the username, then the user's shard gets the row
+    public int createUser(String username, String passwordHash) throws SQLException {
+        if (count == 1) {
+            return UserRepository.createUser(primary(), username, passwordHash);
+        }
+        int userId;
+        int shard;
+        try (PooledConnection conn = directory().borrow()) {
+            Connection connection = conn.connection();
+            connection.setAutoCommit(false);
+            PreparedStatement insert = conn.prepare("INSERT INTO shard_users (username, shard) VALUES (?, -1) RETURNING user_id");
+            insert.setString(1, username);
+            try (ResultSet rs = insert.executeQuery()) {
+                rs.next();
+                userId = rs.getInt(1);
+            }
+            shard = placement(userId);
+            PreparedStatement place = conn.prepare("UPDATE shard_users SET shard = ? WHERE user_id = ?");
+            place.setInt(1, shard);
+            place.setInt(2, userId);
+            place.executeUpdate();
+            connection.commit();
+        }
+
+        try {
+            UserRepository.createUser(shard(shard), userId, username, passwordHash);
+        } catch (SQLException e) {
+            //Give the username back so the user can try again
+            try (PooledConnection conn = directory().borrow()) {
+                PreparedStatement delete = conn.prepare("DELETE FROM shard_users WHERE user_id = ?");
+                delete.setInt(1, userId);
+                delete.executeUpdate();
+            }
+            throw e;
+        }
+        return userId;
+    }
+
+    //Credentials for a username: one directory lookup, then one shard
+    public UserRepository.Credentials findCredentials(String username) throws SQLException {
+        if (count == 1) {
+            return UserRepository.findCredentials(primary(), username);
+        }
+        for (int attempt = 1; ; attempt++) {
+            Route route = route(username);
+            if (route == null) {
+                return null;
+            }
+            UserRepository.Credentials credentials = UserRepository.findCredentials(shard(route.shard()), username);
+            if (credentials != null || attempt == MAX_ATTEMPTS) {
+                return credentials;
+            }
+        }
+    }
+
+    //Add the users found in a shard file that the directory does not know yet, e.g. after a bulk load into it
+    public int adopt(int index) throws SQLException {
+        return adopt(index, directory());
+    }
+
+    private int adopt(int index, BudgetDataSource directory) throws SQLException {
+        int added = 0;
+        try (PooledConnection source = shard(index).borrow();
+             PooledConnection target = directory.borrow()) {
+            target.connection().setAutoCommit(false);
+            PreparedStatement insert = target.prepare("INSERT OR IGNORE INTO shard_users (user_id, username, shard) VALUES (?, ?, ?)");
+            try (Statement stmt = source.connection().createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT id, username FROM users ORDER BY id")) {
+                while (rs.next()) {
+                    insert.setInt(1, rs.getInt(1));
+                    insert.setString(2, rs.getString(2));
+                    insert.setInt(3, index);
+                    added += insert.executeUpdate();
+                }
+            }
+            target.connection().commit();
+        }
+        return added;
+    }
+
+    public void close() {
+        for (int index = 0; index < MAX_SHARDS; index++) {
+            if (shards.get(index) != null) {
+                shards.get(index).close();
+            }
+        }
+        if (directory != null) {
+            directory.close();
+        }
+    }
+
+    private BudgetDataSource open(String path) throws SQLException {
+        try {
+            Path parent = Paths.get(path).toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+        } catch (IOException e) {
+            throw new SQLException("Cannot create the directory for " + path, e);
+        }
+        return new BudgetDataSource(path, config.storageProfile(), config.poolSize(), config.statementCacheSize());
+    }
+
+    //cy310.db -> cy310-<suffix>.db in the same folder
+    private String siblingPath(String suffix) {
+        String path = primary().getDbPath();
+        String base = path.endsWith(".db") ? path.substring(0, path.length() - 3) : path;
+        return base + "-" + suffix + ".db";
+    }
+}
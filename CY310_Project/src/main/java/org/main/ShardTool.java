@@ -0,0 +1,396 @@
+package org.main;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+//Online shard maintenance. rebalance moves every user whose shard no longer matches the configured count and
+//strategy, a batch at a time, while the application keeps serving. To change the shard count: run rebalance with
+//the new cy310.shards.count, restart the application with it, then run rebalance again for users registered in
+//between. Run one rebalance at a time.
+//
+//Each batch moves users from one shard to another:
+//  1. delete their users rows on the source, which takes its write lock; writers routed there now fail their
+//     residency check and follow the user once the batch commits
+//  2. copy every row of theirs to the target and commit
+//  3. point the directory at the target, bump the move generation and commit
+//  4. delete the rest of their rows on the source and commit
+//A failure before step 3 leaves the users where they were. Copies left behind by a failure after it are found and
+//removed by the next rebalance. Running processes notice the new move generation on their next routed call and
+//drop their cached budgets, so a user moved off a shard and back again is not served the copy cached before.
+public class ShardTool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ShardTool.class);
+
+    public static final int DEFAULT_BATCH_SIZE = 200;
+
+    //Per-user tables copied row for row, with the column holding the user id
+    private static final String[][] USER_TABLES = {
+            {"budget_header", "user_id"},
+            {"budgets", "user_id"},
+            {"budget_versions", "user_id"},
+            {"budget_version_categories", "user_id"},
+            {"monthly_category_totals", "user_id"}
+    };
+
+    private static final String LEDGER_SQL = "SELECT l.id, l.budget_version, l.created_at, l.amount_cents, "
+            + "n.category, n.amount_cents AS line_cents FROM allocation_ledger l "
+            + "LEFT JOIN allocation_ledger_lines n ON n.entry_id = l.id WHERE l.user_id = ? ORDER BY l.id";
+
+    private final ShardRouter router;
+    private final int batchSize;
+    private long moved;
+    private long orphansRemoved;
+
+    public ShardTool(ShardRouter router, int batchSize) {
+        this.router = router;
+        this.batchSize = batchSize;
+    }
+
+    //Users waiting to move between one pair of shards
+    private static final class Batch {
+        final int source;
+        final int target;
+        int[] users = new int[16];
+        int size;
+
+        Batch(int source, int target) {
+            this.source = source;
+            this.target = target;
+        }
+
+        void add(int userId) {
+            if (size == users.length) {
+                users = Arrays.copyOf(users, size * 2);
+            }
+            users[size++] = userId;
+        }
+    }
+
+    //Usage: shards status | shards rebalance [--batch N]
+    public static void main(String[] args) {
+        if (args.length < 1 || !(args[0].equals("status") || args[0].equals("rebalance"))) {
+            System.out.println("Usage: shards status | shards rebalance [--batch N]");
+            return;
+        }
+        int batchSize = DEFAULT_BATCH_SIZE;
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--batch":
+                    batchSize = Integer.parseInt(args[i + 1]);
+                    break;
+                default:
+                    System.out.println("Ignoring unknown option " + args[i]);
+            }
+        }
+
+        ShardRouter router = ShardRouter.fromConfig(AppConfig.current());
+        if (!router.isSharded() && !router.directoryExists()) {
+            System.out.println("Sharding is off; set " + ShardRouter.COUNT_KEY + " above 1 to use it.");
+            return;
+        }
+        try {
+            ShardTool tool = new ShardTool(router, batchSize);
+            if (args[0].equals("rebalance")) {
+                tool.rebalance();
+            }
+            tool.printStatus();
+        } catch (SQLException e) {
+            LOG.atError().setCause(e).log("Error maintaining shards");
+        } finally {
+            router.close();
+        }
+    }
+
+    public void printStatus() throws SQLException {
+        long[] users = new long[ShardRouter.MAX_SHARDS];
+        long[] misplaced = new long[ShardRouter.MAX_SHARDS];
+        try (PooledConnection conn = router.directory().borrow();
+             Statement stmt = conn.connection().createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT user_id, shard FROM shard_users")) {
+            while (rs.next()) {
+                int shard = rs.getInt(2);
+                users[shard]++;
+                if (router.placement(rs.getInt(1)) != shard) {
+                    misplaced[shard]++;
+                }
+            }
+        }
+        System.out.printf("%d shard(s), %s strategy%n", router.count(), router.strategy().name().toLowerCase());
+        System.out.printf("%-6s %12s %12s  %s%n", "Shard", "Users", "To move", "File");
+        for (int shard = 0; shard < ShardRouter.MAX_SHARDS; shard++) {
+            if (shard < router.count() || users[shard] > 0) {
+                System.out.printf("%-6d %,12d %,12d  %s%n", shard, users[shard], misplaced[shard], router.shardPath(shard));
+            }
+        }
+    }
+
+    public void rebalance() throws SQLException {
+        long start = System.nanoTime();
+        //Register users written straight into a shard file, and drop copies a failed move left behind
+        for (int shard = 0; shard < ShardRouter.MAX_SHARDS; shard++) {
+            if (router.shardExists(shard)) {
+                int adopted = router.adopt(shard);
+                if (adopted > 0) {
+                    System.out.printf("Added %,d users from shard %d to the directory%n", adopted, shard);
+                }
+                removeOrphans(shard);
+            }
+        }
+
+        //Collect first, so no read transaction stays open on the directory while it is updated
+        Map<Integer, Batch> batches = new HashMap<>();
+        try (PooledConnection conn = router.directory().borrow();
+             Statement stmt = conn.connection().createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT user_id, shard FROM shard_users ORDER BY user_id")) {
+            while (rs.next()) {
+                int userId = rs.getInt(1);
+                int source = rs.getInt(2);
+                int target = router.placement(userId);
+                if (source != target) {
+                    batches.computeIfAbsent(source * ShardRouter.MAX_SHARDS + target, key -> new Batch(source, target)).add(userId);
+                }
+            }
+        }
+
+        for (Batch batch : batches.values()) {
+            for (int from = 0; from < batch.size; from += batchSize) {
+                int[] users = Arrays.copyOfRange(batch.users, from, Math.min(batch.size, from + batchSize));
+                moved += move(batch.source, batch.target, users);
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        System.out.printf("Moved %,d users and removed %,d stale copies in %.2fs%n", moved, orphansRemoved, seconds);
+    }
+
+    //Move users from one shard to another and return how many were there to move; see the class comment for the steps
+    public int move(int source, int target, int[] users) throws SQLException {
+        BudgetDataSource from = router.shard(source);
+        BudgetDataSource to = router.shard(target);
+        int claimed = 0;
+        try (PooledConnection src = from.borrow(); PooledConnection dst = to.borrow()) {
+            src.connection().setAutoCommit(false);
+            dst.connection().setAutoCommit(false);
+
+            //1. The users rows go first, under the source's write lock
+            PreparedStatement claim = src.prepare("DELETE FROM users WHERE id = ? RETURNING id, username, password, salt");
+            int[] present = new int[users.length];
+            Object[][] userRows = new Object[users.length][];
+            for (int userId : users) {
+                claim.setInt(1, userId);
+                try (ResultSet rs = claim.executeQuery()) {
+                    if (rs.next()) {
+                        userRows[claimed] = new Object[]{rs.getInt(1), rs.getString(2), rs.getString(3), rs.getString(4)};
+                        present[claimed++] = userId;
+                    }
+                }
+            }
+            if (claimed == 0) {
+                return 0;
+            }
+            present = Arrays.copyOf(present, claimed);
+
+            //2. Clear anything an earlier failed move left on the target, then copy
+            deleteUsers(dst, present);
+            PreparedStatement insertUser = dst.prepare("INSERT INTO users (id, username, password, salt) VALUES (?, ?, ?, ?)");
+            for (int i = 0; i < claimed; i++) {
+                for (int column = 1; column <= 4; column++) {
+                    insertUser.setObject(column, userRows[i][column - 1]);
+                }
+                insertUser.addBatch();
+            }
+            insertUser.executeBatch();
+            for (String[] table : USER_TABLES) {
+                copyTable(src, dst, table[0], table[1], present);
+            }
+            copyLedger(src, dst, present);
+            dst.connection().commit();
+
+            //3. From here on the users are read and written on the target
+            try (PooledConnection dir = router.directory().borrow()) {
+                dir.connection().setAutoCommit(false);
+                PreparedStatement route = dir.prepare("UPDATE shard_users SET shard = ? WHERE user_id = ? AND shard = ?");
+                for (int userId : present) {
+                    route.setInt(1, target);
+                    route.setInt(2, userId);
+                    route.setInt(3, source);
+                    route.addBatch();
+                }
+                route.executeBatch();
+                ShardRouter.recordMoves(dir);
+                dir.connection().commit();
+            }
+
+            //4. Remove what is left on the source
+            deleteUsers(src, present);
+            src.connection().commit();
+        }
+
+        //This process's own caches; the others clear theirs when they see the new generation
+        for (int userId : users) {
+            from.budgetCache().invalidate(userId);
+            to.budgetCache().invalidate(userId);
+        }
+        return claimed;
+    }
+
+    //Users in a shard file that the directory places on another shard which already has them
+    private void removeOrphans(int shard) throws SQLException {
+        int[] orphans = new int[16];
+        int count = 0;
+        try (PooledConnection conn = router.shard(shard).borrow();
+             PooledConnection dir = router.directory().borrow();
+             Statement stmt = conn.connection().createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id FROM users ORDER BY id")) {
+            PreparedStatement lookup = dir.prepare("SELECT shard FROM shard_users WHERE user_id = ?");
+            while (rs.next()) {
+                int userId = rs.getInt(1);
+                lookup.setInt(1, userId);
+                try (ResultSet route = lookup.executeQuery()) {
+                    if (route.next() && route.getInt(1) != shard && isResident(route.getInt(1), userId)) {
+                        if (count == orphans.length) {
+                            orphans = Arrays.copyOf(orphans, count * 2);
+                        }
+                        orphans[count++] = userId;
+                    }
+                }
+            }
+        }
+        if (count > 0) {
+            try (PooledConnection conn = router.shard(shard).borrow()) {
+                conn.connection().setAutoCommit(false);
+                deleteUsers(conn, Arrays.copyOf(orphans, count));
+                conn.connection().commit();
+            }
+            orphansRemoved += count;
+            LOG.atInfo().addKeyValue("shard", shard).addKeyValue("users", count).log("Removed stale copies of moved users");
+        }
+    }
+
+    private boolean isResident(int shard, int userId) throws SQLException {
+        try (PooledConnection conn = router.shard(shard).borrow()) {
+            PreparedStatement stmt = conn.prepare("SELECT 1 FROM users WHERE id = ?");
+            stmt.setInt(1, userId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private static void copyTable(PooledConnection src, PooledConnection dst, String table, String userColumn, int[] users)
+            throws SQLException {
+        PreparedStatement select = src.prepare("SELECT * FROM " + table + " WHERE " + userColumn + " = ?");
+        PreparedStatement insert = null;
+        int columns = 0;
+        for (int userId : users) {
+            select.setInt(1, userId);
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    if (insert == null) {
+                        ResultSetMetaData meta = rs.getMetaData();
+                        columns = meta.getColumnCount();
+                        StringBuilder names = new StringBuilder();
+                        for (int column = 1; column <= columns; column++) {
+                            names.append(column > 1 ? ", " : "").append(meta.getColumnName(column));
+                        }
+                        insert = dst.prepare("INSERT INTO " + table + " (" + names + ") VALUES ("
+                                + "?, ".repeat(columns - 1) + "?)");
+                    }
+                    for (int column = 1; column <= columns; column++) {
+                        insert.setObject(column, rs.getObject(column));
+                    }
+                    insert.addBatch();
+                }
+            }
+        }
+        if (insert != null) {
+            insert.executeBatch();
+        }
+    }
+
+    //Ledger entries get new ids on the target; their order, and so their ids' order, is kept
+    private static void copyLedger(PooledConnection src, PooledConnection dst, int[] users) throws SQLException {
+        PreparedStatement select = src.prepare(LEDGER_SQL);
+        PreparedStatement entry = dst.prepare("INSERT INTO allocation_ledger (user_id, budget_version, created_at, amount_cents) "
+                + "VALUES (?, ?, ?, ?) RETURNING id");
+        PreparedStatement line = dst.prepare("INSERT INTO allocation_ledger_lines (entry_id, category, amount_cents) VALUES (?, ?, ?)");
+        for (int userId : users) {
+            select.setInt(1, userId);
+            try (ResultSet rs = select.executeQuery()) {
+                long sourceId = -1;
+                long targetId = -1;
+                while (rs.next()) {
+                    if (rs.getLong("id") != sourceId) {
+                        sourceId = rs.getLong("id");
+                        entry.setInt(1, userId);
+                        entry.setInt(2, rs.getInt("budget_version"));
+                        entry.setLong(3, rs.getLong("created_at"));
+                        entry.setLong(4, rs.getLong("amount_cents"));
+                        try (ResultSet id = entry.executeQuery()) {
+                            id.next();
+                            targetId = id.getLong(1);
+                        }
+                    }
+                    if (rs.getString("category") != null) {
+                        line.setLong(1, targetId);
+                        line.setString(2, rs.getString("category"));
+                        line.setLong(3, rs.getLong("line_cents"));
+                        line.addBatch();
+                    }
+                }
+            }
+        }
+        line.executeBatch();
+    }
+
+    //Delete every row of these users inside the caller's transaction. The ledger is append-only for the application,
+    //so its delete trigger is dropped and recreated around the delete, in the same transaction.
+    private static void deleteUsers(PooledConnection conn, int[] users) throws SQLException {
+        ShardRouter.lockForWrite(conn);
+        PreparedStatement hasLedger = conn.prepare("SELECT 1 FROM allocation_ledger WHERE user_id = ? LIMIT 1");
+        boolean ledger = false;
+        for (int userId : users) {
+            hasLedger.setInt(1, userId);
+            try (ResultSet rs = hasLedger.executeQuery()) {
+                ledger |= rs.next();
+            }
+        }
+
+        try (Statement stmt = conn.connection().createStatement()) {
+            if (ledger) {
+                stmt.execute("DROP TRIGGER allocation_ledger_no_delete");
+                PreparedStatement lines = conn.prepare("DELETE FROM allocation_ledger_lines WHERE entry_id IN "
+                        + "(SELECT id FROM allocation_ledger WHERE user_id = ?)");
+                PreparedStatement entries = conn.prepare("DELETE FROM allocation_ledger WHERE user_id = ?");
+                for (int userId : users) {
+                    lines.setInt(1, userId);
+                    lines.executeUpdate();
+                    entries.setInt(1, userId);
+                    entries.executeUpdate();
+                }
+                stmt.execute(SchemaMigrations.LEDGER_NO_DELETE_TRIGGER);
+            }
+        }
+        for (String[] table : USER_TABLES) {
+            deleteRows(conn, table[0], table[1], users);
+        }
+        deleteRows(conn, "users", "id", users);
+    }
+
+    private static void deleteRows(PooledConnection conn, String table, String userColumn, int[] users) throws SQLException {
+        PreparedStatement delete = conn.prepare("DELETE FROM " + table + " WHERE " + userColumn + " = ?");
+        for (int userId : users) {
+            delete.setInt(1, userId);
+            delete.addBatch();
+        }
+        delete.executeBatch();
+    }
+}
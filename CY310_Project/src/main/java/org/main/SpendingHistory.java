@@ -0,0 +1,44 @@
+package org.main;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+public class SpendingHistory {
+
+    private static final int MONTHS = 6;
+    private static final int RECENT = 10;
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+    public static void viewHistory(BudgetService service, int userId) {
+        try {
+            //Totals come from the monthly rollup table, not the raw ledger
+            List<LedgerRepository.MonthlyTotal> totals = service.monthlyTotals(userId, MONTHS);
+            if (totals.isEmpty()) {
+                System.out.println("No paychecks have been budgeted yet.");
+                return;
+            }
+
+            System.out.println("\n---- Spending By Month ----");
+            int month = 0;
+            for (LedgerRepository.MonthlyTotal total : totals) {
+                if (total.month() != month) {
+                    month = total.month();
+                    System.out.printf("%n%d-%02d:%n", month / 100, month % 100);
+                }
+                System.out.printf("  %s: $%s (paychecks: %d)%n", total.category(),
+                        MoneyAllocator.format(total.amountCents()), total.allocations());
+            }
+
+            System.out.println("\n---- Recent Paychecks ----");
+            for (LedgerRepository.LedgerEntry entry : service.recentAllocations(userId, RECENT)) {
+                System.out.printf("%s  $%s (budget version %d)%n",
+                        TIME_FORMAT.format(Instant.ofEpochMilli(entry.createdAt()).atZone(ZoneId.systemDefault())),
+                        MoneyAllocator.format(entry.amountCents()), entry.budgetVersion());
+            }
+        } catch (BudgetException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+}
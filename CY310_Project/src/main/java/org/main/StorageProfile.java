@@ -0,0 +1,53 @@
+package org.main;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+//SQLite settings applied to every pooled connection when it is opened
+public enum StorageProfile {
+
+    //Rollback journal with a full sync on every commit
+    DURABLE("DELETE", "FULL", 0, -2_000, 5_000),
+
+    //WAL lets readers run while a write is in progress; NORMAL only syncs at checkpoints
+    BALANCED("WAL", "NORMAL", 64L * 1024 * 1024, -16_000, 5_000),
+
+    //Larger caches and no syncing. Only for files that can be rebuilt: an OS crash or power loss with synchronous=OFF
+    //can corrupt the database, WAL or not, and the file then has to be regenerated or restored from a backup
+    THROUGHPUT("WAL", "OFF", 256L * 1024 * 1024, -64_000, 10_000);
+
+    private final String journalMode;
+    private final String synchronous;
+    private final long mmapSize;
+    private final int cacheSize;
+    private final int busyTimeoutMillis;
+
+    StorageProfile(String journalMode, String synchronous, long mmapSize, int cacheSize, int busyTimeoutMillis) {
+        this.journalMode = journalMode;
+        this.synchronous = synchronous;
+        this.mmapSize = mmapSize;
+        this.cacheSize = cacheSize;
+        this.busyTimeoutMillis = busyTimeoutMillis;
+    }
+
+    public void apply(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            // Wait for a competing writer instead of failing with SQLITE_BUSY
+            stmt.execute("PRAGMA busy_timeout = " + busyTimeoutMillis);
+            stmt.execute("PRAGMA journal_mode = " + journalMode);
+            stmt.execute("PRAGMA synchronous = " + synchronous);
+            stmt.execute("PRAGMA mmap_size = " + mmapSize);
+            // Negative values are a size in KiB rather than a page count
+            stmt.execute("PRAGMA cache_size = " + cacheSize);
+        }
+    }
+
+    public static StorageProfile fromName(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown storage profile '" + name + "'. Use durable, balanced or throughput.");
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package org.main;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+//User accounts; hashing happens in Passwords before anything reaches this class
+public class UserRepository {
+
+    private static final LatencyHistogram CREATE_TIME = Metrics.histogram("sql.user.create");
+    private static final LatencyHistogram FIND_TIME = Metrics.histogram("sql.user.find");
+    private static final LatencyHistogram UPDATE_HASH_TIME = Metrics.histogram("sql.user.updateHash");
+
+    //Stored password hash for a username. Legacy rows keep their salt in a separate column.
+    public record Credentials(int userId, String passwordHash, String salt) {
+
+        //The hash in the self-describing <algorithm>$... form Passwords understands
+        public String storedHash() {
+            if (salt == null || salt.isEmpty()) {
+                return passwordHash;
+            }
+            return LegacySha256PasswordHasher.encode(salt, passwordHash);
+        }
+    }
+
+    //Insert a user and return the new id
+    public static int createUser(BudgetDataSource dataSource, String username, String passwordHash) throws SQLException {
+        String sql = "INSERT INTO users (username, password, salt) VALUES (?, ?, '') RETURNING id";
+        long start = Metrics.start();
+        try (PooledConnection conn = dataSource.borrow()) {
+            PreparedStatement pstmt = conn.prepare(sql);
+            pstmt.setString(1, username);
+            pstmt.setString(2, passwordHash);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        } finally {
+            Metrics.stop(CREATE_TIME, start);
+        }
+    }
+
+    //Insert a user with an id handed out elsewhere, i.e. by the shard directory
+    public static void createUser(BudgetDataSource dataSource, int userId, String username, String passwordHash) throws SQLException {
+        String sql = "INSERT INTO users (id, username, password, salt) VALUES (?, ?, ?, '')";
+        long start = Metrics.start();
+        try (PooledConnection conn = dataSource.borrow()) {
+            PreparedStatement pstmt = conn.prepare(sql);
+            pstmt.setInt(1, userId);
+            pstmt.setString(2, username);
+            pstmt.setString(3, passwordHash);
+            pstmt.executeUpdate();
+        } finally {
+            Metrics.stop(CREATE_TIME, start);
+        }
+    }
+
+    //Return the stored credentials for a username, or null
+    public static Credentials findCredentials(BudgetDataSource dataSource, String username) throws SQLException {
+        String sql = "SELECT id, password, salt FROM users WHERE username = ?";
+        long start = Metrics.start();
+        try (PooledConnection conn = dataSource.borrow()) {
+            PreparedStatement pstmt = conn.prepare(sql);
+            pstmt.setString(1, username);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return new Credentials(rs.getInt("id"), rs.getString("password"), rs.getString("salt"));
+                }
+            }
+        } finally {
+            Metrics.stop(FIND_TIME, start);
+        }
+        return null;
+    }
+
+    //Replace a user's hash, e.g. after upgrading a legacy hash on login
+    public static void updatePasswordHash(BudgetDataSource dataSource, int userId, String passwordHash) throws SQLException {
+        String sql = "UPDATE users SET password = ?, salt = '' WHERE id = ?";
+        long start = Metrics.start();
+        try (PooledConnection conn = dataSource.borrow()) {
+            PreparedStatement pstmt = conn.prepare(sql);
+            pstmt.setString(1, passwordHash);
+            pstmt.setInt(2, userId);
+            pstmt.executeUpdate();
+        } finally {
+            Metrics.stop(UPDATE_HASH_TIME, start);
+        }
+    }
+}
@@ -1,60 +1,26 @@
 package org.main;
 
-import java.nio.file.Paths;
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Scanner;
 
 public class UtilizeBudget {
 
-    //Specify database path
-    private static final String DB_PATH = Paths.get(System.getProperty("user.home"), ".sqlite", "db", "cy310.db").toString();
-
-    public static void utilizeBudget(int userId) {
-        // Connect to the database and check if a budget exists for the user
-        Map<String, Double> budgetCategories = getBudgetForUser(userId);
-
-        //Ensure user has created a budget
-        if (budgetCategories.isEmpty()) {
-            System.out.println("No budget created.");
-            return;
-        }
-
-        // Prompt the user for an amount to allocate across the budget
-        Scanner scanner = new Scanner(System.in);
-        System.out.println("Enter a positive amount to allocate across your budget categories:");
-        double amount = getPositiveDouble(scanner);
-
-        // Display the allocation of the entered amount across the budget categories
-        displayBudgetAllocation(amount, budgetCategories);
-    }
-
-    private static Map<String, Double> getBudgetForUser(int userId) {
-        Map<String, Double> budgetCategories = new HashMap<>();
-
-        String sql = "SELECT category, percentage FROM budgets WHERE user_id = ?";
+    public static void utilizeBudget(BudgetService service, Scanner scanner, int userId) {
+        try {
+            //Ensure user has created a budget
+            if (service.getBudget(userId) == null) {
+                System.out.println("No budget created.");
+                return;
+            }
 
-        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_PATH);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            // Prompt the user for an amount to allocate across the budget
+            System.out.println("Enter a positive amount to allocate across your budget categories:");
+            double amount = getPositiveDouble(scanner);
 
-            pstmt.setInt(1, userId);
-            try (ResultSet rs = pstmt.executeQuery()) {
-                while (rs.next()) {
-                    String category = rs.getString("category");
-                    double percentage = rs.getDouble("percentage");
-                    budgetCategories.put(category, percentage);
-                }
-            }
-        } catch (SQLException e) {
-            System.out.println("Error fetching budget: " + e.getMessage());
+            // Display the allocation of the entered amount across the budget categories
+            displayBudgetAllocation(service.allocate(userId, MoneyAllocator.toCents(amount)));
+        } catch (BudgetException e) {
+            System.out.println(e.getMessage());
         }
-
-        return budgetCategories;
     }
 
     //Input Validation
@@ -74,18 +40,15 @@ public class UtilizeBudget {
     }
 
     //Display user's budget allocation
-    private static void displayBudgetAllocation(double amount, Map<String, Double> budgetCategories) {
+    private static void displayBudgetAllocation(Allocation allocation) {
         System.out.println("\n---- Budget Allocation ----");
-        System.out.printf("Total Amount: $%.2f%n", amount);
+        System.out.printf("Total Amount: $%s%n", MoneyAllocator.format(allocation.amountCents()));
         System.out.println("\nCategory Allocations:");
 
-        for (Map.Entry<String, Double> entry : budgetCategories.entrySet()) {
-            String category = entry.getKey();
-            double percentage = entry.getValue();
-            double allocation = (amount * percentage) / 100;
-
-            System.out.printf("%s: %.2f%% - $%.2f%n", category, percentage, allocation);
+        for (int i = 0; i < allocation.categoryCount(); i++) {
+            System.out.printf("%s: %.2f%% - $%s%n", allocation.category(i), allocation.percentage(i),
+                    MoneyAllocator.format(allocation.cents(i)));
         }
 
     }
-}
+}
\ No newline at end of file
@@ -0,0 +1,49 @@
+package org.main;
+
+import java.util.List;
+import java.util.Scanner;
+
+public class WhatIfScenarios {
+
+    public static void runScenarios(BudgetService service, Scanner scanner, int userId) {
+        try {
+            //Ensure user has created a budget
+            Budget budget = service.getBudget(userId);
+            if (budget == null || budget.categoryCount() == 0) {
+                System.out.println("No budget created.");
+                return;
+            }
+
+            //Every answer is a list (-10,0,10) or a range (-20:20:5); blank keeps the stored budget
+            System.out.println("Income changes to try, in % (e.g. -10,0,10 or -20:20:5, blank for none):");
+            int[] incomeChanges = askPercentages(scanner);
+
+            System.out.printf("Paychecks per month to try (e.g. 1,2,4, blank to keep %d):%n", budget.paychecks());
+            String paychecks = scanner.nextLine().trim();
+
+            System.out.println("Percentage to move between two categories, as FROM>TO=LIST (e.g. Food>Savings=0:10:2.5, blank to skip):");
+            String shift = scanner.nextLine().trim();
+
+            System.out.printf("Months to project (blank for %d):%n", ScenarioSimulator.DEFAULT_MONTHS);
+            String months = scanner.nextLine().trim();
+
+            ScenarioSimulator.Sweep sweep = new ScenarioSimulator.Sweep(incomeChanges,
+                    paychecks.isEmpty() ? new int[0] : ScenarioSimulator.parseCounts(paychecks),
+                    shift.isEmpty() ? List.of() : List.of(ScenarioSimulator.parseShift(budget, shift)),
+                    months.isEmpty() ? ScenarioSimulator.DEFAULT_MONTHS : Integer.parseInt(months), 0);
+
+            //Simulations never touch the saved budget
+            ScenarioSimulator simulator = new ScenarioSimulator(Runtime.getRuntime().availableProcessors());
+            System.out.print(simulator.simulate(budget, sweep).summary());
+        } catch (BudgetException e) {
+            System.out.println(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            System.out.println("Invalid scenario: " + e.getMessage());
+        }
+    }
+
+    private static int[] askPercentages(Scanner scanner) {
+        String line = scanner.nextLine().trim();
+        return line.isEmpty() ? new int[]{0} : ScenarioSimulator.parsePercentages(line);
+    }
+}
@@ -0,0 +1,415 @@
+package org.main;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+//Optional write-behind for budget saves and allocations. Callers queue a write and return at once; one writer thread
+//takes everything queued so far, up to maxBatch, and commits it as one transaction per shard, so a burst of writes
+//shares a single fsync. Each write runs under its own savepoint, so a bad one is retried alone through the normal
+//path instead of failing the batch. A full queue makes callers wait up to offerTimeout and then fails with
+//IllegalStateException, like the password pool. Queued budgets are served by pendingBudget() until committed.
+//flush() waits for everything queued before the call; close() runs it at exit and from a shutdown hook.
+public class WriteBehindQueue implements AutoCloseable {
+
+    public static final String ENABLED_KEY = "cy310.writeBehind.enabled";
+    public static final String CAPACITY_KEY = "cy310.writeBehind.capacity";
+    public static final String MAX_BATCH_KEY = "cy310.writeBehind.maxBatch";
+    public static final String OFFER_TIMEOUT_KEY = "cy310.writeBehind.offerTimeoutMillis";
+
+    private static final Logger LOG = LoggerFactory.getLogger(WriteBehindQueue.class);
+    private static final LatencyHistogram COMMIT_TIME = Metrics.histogram("write.commit");
+    private static final LatencyHistogram WAIT_TIME = Metrics.histogram("write.wait");
+
+    public record WriteStats(int queued, int capacity, long committed, long batches, int maxBatch, long failed,
+                             long rejected) {
+
+        public double meanBatch() {
+            return batches == 0 ? 0 : (double) committed / batches;
+        }
+    }
+
+    //One queued write; apply runs inside the writer's transaction on the user's shard. Package-private so tests can
+    //queue writes that fail or block on cue.
+    interface Write {
+        int userId();
+
+        void apply(PooledConnection conn) throws SQLException;
+
+        void committed(BudgetDataSource shard);
+
+        void failed();
+    }
+
+    private final ShardRouter shards;
+    private final int capacity;
+    private final int maxBatch;
+    private final long offerTimeoutNanos;
+
+    //Guards pending, submitted, completed and closed. Writes leave in the order they arrived, so once completed
+    //reaches a count every write submitted before that count was reached has been handled.
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Condition progress = lock.newCondition();
+    private final ArrayDeque<Write> pending = new ArrayDeque<>();
+    private long submitted;
+    private long completed;
+    private boolean closed;
+
+    //Latest queued budget per user, so reads see a save before it reaches the database
+    private final Map<Integer, Budget> pendingBudgets = new ConcurrentHashMap<>();
+
+    private final LongAdder committed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private volatile int largestBatch;
+
+    private final Thread writer;
+
+    public WriteBehindQueue(ShardRouter shards, int capacity, int maxBatch, long offerTimeoutMillis) {
+        this.shards = shards;
+        this.capacity = Math.max(1, capacity);
+        this.maxBatch = Math.max(1, maxBatch);
+        this.offerTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(offerTimeoutMillis);
+        this.writer = new Thread(this::drain, "write-behind");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    //Null unless write-behind is switched on; the queue registers a shutdown hook that flushes it
+    public static WriteBehindQueue fromConfig(AppConfig config, ShardRouter shards) {
+        if (!Boolean.parseBoolean(config.get(ENABLED_KEY, "false"))) {
+            return null;
+        }
+        WriteBehindQueue queue = new WriteBehindQueue(shards, config.getInt(CAPACITY_KEY, 10_000),
+                config.getInt(MAX_BATCH_KEY, 512), config.getInt(OFFER_TIMEOUT_KEY, 5000));
+        Runtime.getRuntime().addShutdownHook(new Thread(queue::close, "write-behind-flush"));
+        return queue;
+    }
+
+    public void submitBudget(Budget budget, double income, int paychecks, Map<String, Double> categories) {
+        pendingBudgets.put(budget.userId(), budget);
+        try {
+            submit(new BudgetWrite(budget, income, paychecks, categories));
+        } catch (RuntimeException e) {
+            pendingBudgets.remove(budget.userId(), budget);
+            throw e;
+        }
+    }
+
+    public void submitAllocation(Allocation allocation, long createdAt) {
+        submit(new AllocationWrite(allocation, createdAt));
+    }
+
+    //The user's newest budget that has been queued but not yet committed, or null
+    public Budget pendingBudget(int userId) {
+        return pendingBudgets.get(userId);
+    }
+
+    void submit(Write write) {
+        long start = Metrics.start();
+        lock.lock();
+        try {
+            long nanos = offerTimeoutNanos;
+            while (pending.size() >= capacity && !closed) {
+                if (nanos <= 0) {
+                    rejected.increment();
+                    Metrics.error("write.rejected");
+                    throw new IllegalStateException("Too many saves in progress, please try again shortly.");
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            if (closed) {
+                throw new IllegalStateException("The write queue has been closed.");
+            }
+            pending.add(write);
+            submitted++;
+            notEmpty.signal();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing a write", e);
+        } finally {
+            lock.unlock();
+            Metrics.stop(WAIT_TIME, start);
+        }
+    }
+
+    //Block until every write queued before this call has been committed or given up on
+    public void flush() {
+        lock.lock();
+        try {
+            long target = submitted;
+            while (completed < target && writer.isAlive()) {
+                progress.await(100, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int depth() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public WriteStats stats() {
+        return new WriteStats(depth(), capacity, committed.sum(), batches.sum(), largestBatch, failed.sum(), rejected.sum());
+    }
+
+    //Stop taking writes and wait for the writer to commit what is queued. Safe to call more than once.
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        flush();
+    }
+
+    private void drain() {
+        List<Write> batch = new ArrayList<>(maxBatch);
+        while (true) {
+            lock.lock();
+            try {
+                while (pending.isEmpty() && !closed) {
+                    notEmpty.awaitUninterruptibly();
+                }
+                if (pending.isEmpty()) {
+                    return;
+                }
+                while (batch.size() < maxBatch && !pending.isEmpty()) {
+                    batch.add(pending.poll());
+                }
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                commit(batch);
+            } catch (RuntimeException e) {
+                LOG.atError().setCause(e).addKeyValue("writes", batch.size()).log("Write-behind batch failed");
+            }
+
+            lock.lock();
+            try {
+                completed += batch.size();
+                progress.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            batch.clear();
+        }
+    }
+
+    private void commit(List<Write> batch) {
+        batches.increment();
+        if (batch.size() > largestBatch) {
+            largestBatch = batch.size();
+        }
+
+        //Group by shard, keeping each user's writes in the order they were queued. Once one of a user's writes has
+        //to be retried, every later write of that user is retried after it, so none can overtake it.
+        Map<Integer, List<Write>> byShard = new LinkedHashMap<>();
+        List<Write> retry = new ArrayList<>();
+        Set<Integer> deferred = new HashSet<>();
+        for (Write write : batch) {
+            if (deferred.contains(write.userId())) {
+                retry.add(write);
+                continue;
+            }
+            try {
+                byShard.computeIfAbsent(shards.shardOf(write.userId()), k -> new ArrayList<>()).add(write);
+            } catch (SQLException e) {
+                retry.add(write);
+                deferred.add(write.userId());
+            }
+        }
+        for (Map.Entry<Integer, List<Write>> group : byShard.entrySet()) {
+            commitGroup(group.getKey(), group.getValue(), retry, deferred);
+        }
+
+        //Whatever could not go in with its batch gets the synchronous path, which follows users across shards.
+        //Groups add to the retry list out of queue order, so put it back in order first.
+        Map<Write, Integer> positions = new IdentityHashMap<>();
+        for (int i = 0; i < batch.size(); i++) {
+            positions.put(batch.get(i), i);
+        }
+        retry.sort(Comparator.comparingInt(positions::get));
+        for (Write write : retry) {
+            try {
+                shards.write(write.userId(), shard -> {
+                    commitAlone(shard, write);
+                    return null;
+                });
+                committed.increment();
+            } catch (SQLException | RuntimeException e) {
+                failed.increment();
+                Metrics.error("write.failed");
+                LOG.atError().setCause(e).addKeyValue("userId", write.userId()).log("Write-behind dropped a write");
+                write.failed();
+            }
+        }
+    }
+
+    private void commitGroup(int index, List<Write> writes, List<Write> retry, Set<Integer> deferred) {
+        BudgetDataSource shard;
+        try {
+            shard = shards.shard(index);
+        } catch (SQLException e) {
+            defer(writes, retry, deferred);
+            return;
+        }
+
+        List<Write> applied = new ArrayList<>(writes.size());
+        List<Write> skipped = new ArrayList<>();
+        long start = Metrics.start();
+        try (PooledConnection conn = shard.borrow()) {
+            Connection connection = conn.connection();
+            connection.setAutoCommit(false);
+            ShardRouter.lockForWrite(conn);
+            for (Write write : writes) {
+                if (deferred.contains(write.userId())) {
+                    skipped.add(write);
+                    continue;
+                }
+                conn.prepare("SAVEPOINT write_behind").executeUpdate();
+                try {
+                    if (shard.isShard()) {
+                        ShardRouter.checkResident(conn, write.userId());
+                    }
+                    write.apply(conn);
+                    applied.add(write);
+                } catch (SQLException e) {
+                    conn.prepare("ROLLBACK TO write_behind").executeUpdate();
+                    skipped.add(write);
+                    deferred.add(write.userId());
+                }
+                conn.prepare("RELEASE write_behind").executeUpdate();
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            LOG.atWarn().setCause(e).addKeyValue("shard", index).addKeyValue("writes", writes.size())
+                    .log("Group commit failed, retrying writes one at a time");
+            defer(writes, retry, deferred);
+            return;
+        } finally {
+            Metrics.stop(COMMIT_TIME, start);
+        }
+
+        retry.addAll(skipped);
+        committed.add(applied.size());
+        for (Write write : applied) {
+            write.committed(shard);
+        }
+    }
+
+    private static void defer(List<Write> writes, List<Write> retry, Set<Integer> deferred) {
+        for (Write write : writes) {
+            retry.add(write);
+            deferred.add(write.userId());
+        }
+    }
+
+    //One write in its own transaction, for the retry path
+    private static void commitAlone(BudgetDataSource shard, Write write) throws SQLException {
+        try (PooledConnection conn = shard.borrow()) {
+            Connection connection = conn.connection();
+            connection.setAutoCommit(false);
+            if (shard.isShard()) {
+                ShardRouter.checkResident(conn, write.userId());
+            } else {
+                ShardRouter.lockForWrite(conn);
+            }
+            write.apply(conn);
+            connection.commit();
+        }
+        write.committed(shard);
+    }
+
+    private final class BudgetWrite implements Write {
+        private final Budget budget;
+        private final double income;
+        private final int paychecks;
+        private final Map<String, Double> categories;
+
+        BudgetWrite(Budget budget, double income, int paychecks, Map<String, Double> categories) {
+            this.budget = budget;
+            this.income = income;
+            this.paychecks = paychecks;
+            this.categories = categories;
+        }
+
+        @Override
+        public int userId() {
+            return budget.userId();
+        }
+
+        @Override
+        public void apply(PooledConnection conn) throws SQLException {
+            BudgetRepository.write(conn, budget, income, paychecks, categories, BudgetRepository.SaveMode.INCREMENTAL);
+        }
+
+        //Cache first, then drop the pending entry, so a reader never falls through to an older cached row. A newer
+        //queued budget for the same user stays pending and keeps answering reads until its own commit.
+        @Override
+        public void committed(BudgetDataSource shard) {
+            shard.budgetCache().invalidate(budget.userId());
+            pendingBudgets.remove(budget.userId(), budget);
+        }
+
+        @Override
+        public void failed() {
+            pendingBudgets.remove(budget.userId(), budget);
+        }
+    }
+
+    private record AllocationWrite(Allocation allocation, long createdAt) implements Write {
+
+        @Override
+        public int userId() {
+            return allocation.budget().userId();
+        }
+
+        @Override
+        public void apply(PooledConnection conn) throws SQLException {
+            LedgerRepository.append(conn, allocation, createdAt);
+        }
+
+        @Override
+        public void committed(BudgetDataSource shard) {
+        }
+
+        @Override
+        public void failed() {
+        }
+    }
+}
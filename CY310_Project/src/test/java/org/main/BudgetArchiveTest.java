@@ -0,0 +1,67 @@
+package org.main;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BudgetArchiveTest {
+
+    private static final int USERS = 500;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void exportThenImportKeepsEveryBudget() throws Exception {
+        BudgetDataSource source = open("source.db");
+        BudgetDataSource copy = open("copy.db");
+        try {
+            new BulkLoader(source, new Pbkdf2PasswordHasher(1), 1, BulkLoader.DEFAULT_CHUNK_SIZE)
+                    .generate(USERS, new BulkLoader.Generator(new Random(310), 1, 8, "password"));
+            Path archive = dir.resolve("budgets.cy310");
+            //Small blocks so the round trip crosses block boundaries
+            BudgetArchive.Report exported = BudgetArchive.export(ShardRouter.single(source), archive, 64);
+            assertEquals(USERS, exported.users());
+
+            BudgetArchive.Report imported = BudgetArchive.importArchive(copy, archive);
+            assertEquals(exported.users(), imported.users());
+            assertEquals(exported.rows(), imported.rows());
+
+            for (int userId = 1; userId <= USERS; userId++) {
+                Budget expected = BudgetRepository.find(source, userId);
+                Budget actual = BudgetRepository.find(copy, userId);
+                assertNotNull(actual, "user " + userId);
+                assertEquals(expected.incomeCents(), actual.incomeCents());
+                assertEquals(expected.paychecks(), actual.paychecks());
+                assertEquals(expected.categoryCount(), actual.categoryCount());
+                for (int i = 0; i < expected.categoryCount(); i++) {
+                    assertEquals(expected.category(i), actual.category(i));
+                    assertEquals(expected.basisPoints(i), actual.basisPoints(i));
+                }
+            }
+            UserRepository.Credentials credentials = UserRepository.findCredentials(source, "user-000000001");
+            assertNotNull(credentials);
+            assertEquals(credentials, UserRepository.findCredentials(copy, "user-000000001"));
+
+            //Imports only go into an empty database
+            assertThrows(SQLException.class, () -> BudgetArchive.importArchive(copy, archive));
+        } finally {
+            source.close();
+            copy.close();
+        }
+    }
+
+    private BudgetDataSource open(String name) throws Exception {
+        BudgetDataSource dataSource = new BudgetDataSource(dir.resolve(name).toString(), StorageProfile.THROUGHPUT, 1,
+                BudgetDataSource.DEFAULT_STATEMENT_CACHE_SIZE);
+        SchemaMigrations.migrate(dataSource);
+        return dataSource;
+    }
+}
@@ -0,0 +1,94 @@
+package org.main;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BudgetRepositoryTest {
+
+    private static final int THREADS = 8;
+    private static final int SAVES = 100;
+
+    @TempDir
+    Path dir;
+
+    //Every save reads the stored budget first; none may fail with SQLITE_BUSY while other users save
+    @Test
+    void concurrentIncrementalSavesAllCommit() throws Exception {
+        BudgetDataSource dataSource = new BudgetDataSource(dir.resolve("budget.db").toString(), StorageProfile.BALANCED,
+                THREADS, BudgetDataSource.DEFAULT_STATEMENT_CACHE_SIZE);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            SchemaMigrations.migrate(dataSource);
+            int[] users = new int[THREADS];
+            for (int t = 0; t < THREADS; t++) {
+                users[t] = UserRepository.createUser(dataSource, "user" + t, "hash");
+            }
+
+            List<Future<?>> results = new ArrayList<>();
+            for (int userId : users) {
+                results.add(executor.submit(() -> {
+                    for (int i = 1; i <= SAVES; i++) {
+                        BudgetRepository.save(dataSource, userId, 1000 + i, 2,
+                                Map.of("Rent", 40.0 + i % 10, "Food", 60.0 - i % 10), BudgetRepository.SaveMode.INCREMENTAL);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+
+            for (int userId : users) {
+                assertEquals(MoneyAllocator.toCents(1000.0 + SAVES), BudgetRepository.load(dataSource, userId).incomeCents());
+                assertEquals(SAVES, BudgetRepository.currentVersion(dataSource, userId));
+            }
+        } finally {
+            executor.shutdownNow();
+            dataSource.close();
+        }
+    }
+
+    //Saves racing for one user may finish in any order; the cache must still agree with the database afterwards
+    @Test
+    void cacheMatchesTheDatabaseAfterRacingSaves() throws Exception {
+        BudgetDataSource dataSource = new BudgetDataSource(dir.resolve("budget.db").toString(), StorageProfile.BALANCED,
+                THREADS, BudgetDataSource.DEFAULT_STATEMENT_CACHE_SIZE);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            SchemaMigrations.migrate(dataSource);
+            int userId = UserRepository.createUser(dataSource, "user", "hash");
+
+            List<Future<?>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                results.add(executor.submit(() -> {
+                    for (int i = 0; i < SAVES / 4; i++) {
+                        BudgetRepository.save(dataSource, userId, 1000 + thread, 1, Map.of("Rent", 100.0),
+                                BudgetRepository.SaveMode.REPLACE);
+                        BudgetRepository.find(dataSource, userId);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+
+            assertEquals(BudgetRepository.load(dataSource, userId).incomeCents(),
+                    BudgetRepository.find(dataSource, userId).incomeCents());
+        } finally {
+            executor.shutdownNow();
+            dataSource.close();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package org.main;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class BulkLoaderTest {
+
+    @TempDir
+    Path dir;
+
+    //Lines that would break a constraint are skipped like any malformed line and the rest of the file still loads
+    @Test
+    void duplicatesAreSkippedWithoutStoppingTheImport() throws Exception {
+        BudgetDataSource dataSource = new BudgetDataSource(dir.resolve("load.db").toString(), StorageProfile.THROUGHPUT, 1,
+                BudgetDataSource.DEFAULT_STATEMENT_CACHE_SIZE);
+        try {
+            SchemaMigrations.migrate(dataSource);
+            UserRepository.createUser(dataSource, "existing", "hash");
+
+            Path csv = dir.resolve("users.csv");
+            Files.write(csv, List.of(
+                    "username,password,income,paychecks,categories",
+                    "alice,pw,4000.00,2,Rent:60|Food:40",
+                    "bob,pw,3000.00,2,Rent:50|Rent:50",
+                    "alice,pw,4000.00,2,Rent:60|Food:40",
+                    "existing,pw,1000.00,1,Rent:100",
+                    "carol,pw,5000.00,1,Rent:70|Food:30",
+                    "dave,pw,2000.00,2,Savings:100",
+                    "carol,pw,5000.00,1,Rent:100"), StandardCharsets.UTF_8);
+
+            //Chunks of two put the second carol in a later chunk than the first
+            BulkLoader.Report report = new BulkLoader(dataSource, new Pbkdf2PasswordHasher(1), 1, 2).importCsv(csv);
+            assertEquals(3, report.users());
+            assertEquals(4, report.malformed());
+
+            for (String username : new String[]{"alice", "carol", "dave"}) {
+                UserRepository.Credentials credentials = UserRepository.findCredentials(dataSource, username);
+                assertNotNull(credentials, username);
+            }
+            assertEquals(2, BudgetRepository.load(dataSource, 3).categoryCount());
+        } finally {
+            dataSource.close();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package org.main;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+    @Test
+    void percentilesStayWithinOneBucket() {
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        for (int micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros * 1000L);
+        }
+        assertEquals(1000, histogram.getCount());
+        long p50 = histogram.percentileNanos(0.5);
+        assertTrue(p50 >= 500_000 && p50 <= 500_000 * 1.125 + 1024, "p50 " + p50);
+    }
+
+    //The top exponent and anything past it land in the last buckets instead of past the end of the array
+    @Test
+    void recordsTheWholeRange() {
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        histogram.record(1L << 50);
+        histogram.record((1L << 51) - 1);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(3, histogram.getCount());
+        assertEquals(Long.MAX_VALUE / 1_000.0, histogram.getMaxMicros());
+        assertTrue(histogram.percentileNanos(0.5) >= 1L << 50);
+    }
+}
@@ -0,0 +1,57 @@
+package org.main;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MoneyAllocatorTest {
+
+    @Test
+    void parsesAndFormatsCentsExactly() {
+        assertEquals(123_450, MoneyAllocator.parseCents("1234.5"));
+        assertEquals(1, MoneyAllocator.parseCents(" 0.005 "));
+        assertEquals("1234.56", MoneyAllocator.format(123_456));
+        assertEquals("0.07", MoneyAllocator.format(7));
+        assertEquals("-2.50", MoneyAllocator.format(-250));
+        assertEquals(2550, MoneyAllocator.toBasisPoints(25.5));
+    }
+
+    @Test
+    void leftoverCentsGoToLargestRemaindersThenLowerIndex() {
+        assertArrayEquals(new long[]{34, 33, 33}, MoneyAllocator.allocate(100, new int[]{1, 1, 1}));
+        assertArrayEquals(new long[]{1, 2}, MoneyAllocator.allocate(3, new int[]{1, 2}));
+        assertArrayEquals(new long[]{0, 0}, MoneyAllocator.allocate(0, new int[]{5_000, 5_000}));
+    }
+
+    @Test
+    void splitsAlwaysAddBackUp() {
+        Random random = new Random(310);
+        for (int run = 0; run < 1_000; run++) {
+            int[] weights = new int[1 + random.nextInt(12)];
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = 1 + random.nextInt(MoneyAllocator.FULL_BASIS_POINTS);
+            }
+            long amount = random.nextLong(MoneyAllocator.MAX_AMOUNT_CENTS / weights.length);
+            long total = 0;
+            for (long part : MoneyAllocator.allocate(amount, weights)) {
+                total += part;
+            }
+            assertEquals(amount, total);
+        }
+    }
+
+    @Test
+    void largestAmountSplitsWithoutOverflow() {
+        long[] parts = MoneyAllocator.allocate(MoneyAllocator.MAX_AMOUNT_CENTS, new int[]{3_333, 3_333, 3_334});
+        assertEquals(MoneyAllocator.MAX_AMOUNT_CENTS, parts[0] + parts[1] + parts[2]);
+    }
+
+    @Test
+    void rejectsNegativeAmounts() {
+        assertThrows(IllegalArgumentException.class, () -> MoneyAllocator.allocate(-1, new int[]{1}));
+    }
+}
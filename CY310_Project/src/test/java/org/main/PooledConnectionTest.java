@@ -0,0 +1,43 @@
+package org.main;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class PooledConnectionTest {
+
+    @TempDir
+    Path dir;
+
+    //A second close, even after the connection has been borrowed again, must not return it to the pool
+    @Test
+    void closeTwiceReleasesOnce() throws Exception {
+        BudgetDataSource dataSource = new BudgetDataSource(dir.resolve("pool.db").toString(), StorageProfile.BALANCED, 1,
+                BudgetDataSource.DEFAULT_STATEMENT_CACHE_SIZE);
+        try {
+            PooledConnection first = dataSource.borrow();
+            first.close();
+            first.close();
+            assertEquals(1, dataSource.metrics().idle());
+            assertEquals(1, dataSource.metrics().total());
+
+            PooledConnection second = dataSource.borrow();
+            assertNotSame(first, second);
+            assertSame(first.connection(), second.connection());
+            first.close();
+            assertEquals(1, dataSource.metrics().active());
+            assertEquals(0, dataSource.metrics().idle());
+
+            second.close();
+            assertEquals(0, dataSource.metrics().active());
+            assertEquals(1, dataSource.metrics().idle());
+        } finally {
+            dataSource.close();
+        }
+    }
+}
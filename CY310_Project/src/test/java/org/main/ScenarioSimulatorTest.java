@@ -0,0 +1,52 @@
+package org.main;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ScenarioSimulatorTest {
+
+    private static final Budget BUDGET = Budget.of(1, 4000, 2, Map.of("Rent", 50.0, "Food", 50.0));
+
+    @Test
+    void rangesParseToBasisPoints() {
+        assertArrayEquals(new int[]{-1000, -500, 0, 500, 1000}, ScenarioSimulator.parsePercentages("-10:10:5"));
+        assertArrayEquals(new int[]{250, 1000}, ScenarioSimulator.parsePercentages("2.5, 10"));
+        assertArrayEquals(new int[]{1, 2, 3}, ScenarioSimulator.parseCounts("1:3"));
+    }
+
+    //Oversized input is a bad scenario, never an overflow or an allocation failure
+    @Test
+    void oversizedRangesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> ScenarioSimulator.parsePercentages("-20000000:20000000:1"));
+        assertThrows(IllegalArgumentException.class, () -> ScenarioSimulator.parsePercentages("-1000000:1000000:0.01"));
+        assertThrows(IllegalArgumentException.class, () -> ScenarioSimulator.parsePercentages("10:-10:5"));
+        assertThrows(IllegalArgumentException.class, () -> ScenarioSimulator.parseCounts("1:2147483647"));
+        assertThrows(IllegalArgumentException.class, () -> ScenarioSimulator.parseCounts("3:1"));
+    }
+
+    @Test
+    void projectionsThatWouldOverflowAreRejected() {
+        ScenarioSimulator simulator = new ScenarioSimulator(2);
+        assertThrows(IllegalArgumentException.class, () -> simulator.simulate(BUDGET,
+                new ScenarioSimulator.Sweep(new int[]{0}, new int[0], List.of(), 12, 1_000_000)));
+        assertThrows(IllegalArgumentException.class, () -> simulator.simulate(BUDGET,
+                new ScenarioSimulator.Sweep(new int[]{0}, new int[0], List.of(), ScenarioSimulator.MAX_MONTHS,
+                        ScenarioSimulator.MAX_GROWTH)));
+        assertThrows(IllegalArgumentException.class, () -> simulator.simulate(BUDGET,
+                new ScenarioSimulator.Sweep(new int[]{ScenarioSimulator.MAX_INCOME_CHANGE + 1}, new int[0], List.of(), 12, 0)));
+    }
+
+    @Test
+    void simulateProjectsEveryVariant() {
+        ScenarioSimulator.Projection projection = new ScenarioSimulator(2).simulate(BUDGET,
+                new ScenarioSimulator.Sweep(new int[]{-1000, 0, 1000}, new int[]{1, 2}, List.of(), 24, 100));
+        assertEquals(6, projection.variantCount());
+        assertEquals(24, projection.months());
+    }
+}
@@ -0,0 +1,36 @@
+package org.main;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SchemaMigrationsTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void hotPathQueriesNeverScan() throws Exception {
+        BudgetDataSource dataSource = new BudgetDataSource(dir.resolve("plans.db").toString(), StorageProfile.THROUGHPUT, 1,
+                BudgetDataSource.DEFAULT_STATEMENT_CACHE_SIZE);
+        try {
+            SchemaMigrations.migrate(dataSource);
+            try (PooledConnection conn = dataSource.borrow()) {
+                assertEquals(SchemaMigrations.CURRENT_VERSION, SchemaMigrations.currentVersion(conn.connection()));
+                for (String sql : SchemaMigrations.INDEXED_QUERIES) {
+                    for (String step : SchemaMigrations.explain(conn.connection(), sql)) {
+                        assertFalse(step.contains("SCAN"), () -> "\"" + sql + "\" plans a scan: " + step);
+                    }
+                }
+                assertTrue(SchemaMigrations.checkQueryPlans(conn.connection()).isEmpty());
+            }
+        } finally {
+            dataSource.close();
+        }
+    }
+}
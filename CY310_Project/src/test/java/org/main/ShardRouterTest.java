@@ -0,0 +1,109 @@
+package org.main;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ShardRouterTest {
+
+    private static final int USERS = 12;
+
+    @TempDir
+    Path dir;
+
+    private ShardRouter open(int count, ShardRouter.Strategy strategy, int rangeSize) throws SQLException {
+        BudgetDataSource primary = new BudgetDataSource(dir.resolve("shards.db").toString(), StorageProfile.BALANCED, 2,
+                BudgetDataSource.DEFAULT_STATEMENT_CACHE_SIZE);
+        SchemaMigrations.migrate(primary);
+        return new ShardRouter(AppConfig.current(), primary, count, strategy, rangeSize);
+    }
+
+    //Each new user lands on the shard its id is placed on, and only there
+    @Test
+    void createdUsersAreRoutedToTheirPlacement() throws Exception {
+        ShardRouter router = open(3, ShardRouter.Strategy.RANGE, 4);
+        try {
+            for (int i = 0; i < USERS; i++) {
+                String username = "user" + i;
+                int userId = router.createUser(username, "hash");
+                int shard = router.shardOf(userId);
+                assertEquals(router.placement(userId), shard);
+                assertEquals((userId - 1) / 4, shard);
+                for (int other = 0; other < router.count(); other++) {
+                    UserRepository.Credentials credentials = UserRepository.findCredentials(router.shard(other), username);
+                    if (other == shard) {
+                        assertNotNull(credentials, username);
+                    } else {
+                        assertNull(credentials, username);
+                    }
+                }
+                assertEquals(userId, router.findCredentials(username).userId());
+            }
+        } finally {
+            router.close();
+        }
+    }
+
+    @Test
+    void hashPlacementUsesEveryShard() throws Exception {
+        ShardRouter router = open(4, ShardRouter.Strategy.HASH, 1);
+        try {
+            int[] users = new int[router.count()];
+            for (int i = 0; i < USERS * 4; i++) {
+                int userId = router.createUser("user" + i, "hash");
+                int shard = router.shardOf(userId);
+                assertEquals(router.placement(userId), shard);
+                users[shard]++;
+            }
+            for (int shard = 0; shard < router.count(); shard++) {
+                assertNotEquals(0, users[shard], "shard " + shard);
+            }
+        } finally {
+            router.close();
+        }
+    }
+
+    //A save routed to the old shard just before a move finds the user gone and follows them to the new one
+    @Test
+    void writeRoutedBeforeAMoveFollowsTheUser() throws Exception {
+        ShardRouter router = open(2, ShardRouter.Strategy.HASH, 1);
+        try {
+            int userId = router.createUser("mover", "hash");
+            int source = router.shardOf(userId);
+            int target = 1 - source;
+            Map<String, Double> categories = Map.of("Rent", 60.0, "Food", 40.0);
+            BudgetRepository.save(router.shard(source), userId, 1000, 2, categories, BudgetRepository.SaveMode.REPLACE);
+
+            ShardTool tool = new ShardTool(router, ShardTool.DEFAULT_BATCH_SIZE);
+            List<Integer> attempts = new ArrayList<>();
+            router.write(userId, shard -> {
+                attempts.add(shard == router.shard(source) ? source : target);
+                if (attempts.size() == 1) {
+                    assertEquals(1, tool.move(source, target, new int[]{userId}));
+                    assertThrows(ShardRouter.UserMovedException.class, () -> BudgetRepository.save(shard, userId, 2000, 2,
+                            categories, BudgetRepository.SaveMode.INCREMENTAL));
+                }
+                BudgetRepository.save(shard, userId, 2000, 2, categories, BudgetRepository.SaveMode.INCREMENTAL);
+                return null;
+            });
+
+            assertEquals(List.of(source, target), attempts);
+            assertEquals(target, router.shardOf(userId));
+            assertEquals(MoneyAllocator.toCents(2000), BudgetRepository.load(router.shard(target), userId).incomeCents());
+            assertNull(BudgetRepository.load(router.shard(source), userId));
+        } finally {
+            router.close();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package org.main;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ShardToolTest {
+
+    @TempDir
+    Path dir;
+
+    //A move that fails after re-pointing the directory leaves a copy on the source; the next rebalance removes it
+    @Test
+    void rebalanceRemovesCopiesLeftByAFailedMove() throws Exception {
+        BudgetDataSource primary = new BudgetDataSource(dir.resolve("shards.db").toString(), StorageProfile.BALANCED, 2,
+                BudgetDataSource.DEFAULT_STATEMENT_CACHE_SIZE);
+        SchemaMigrations.migrate(primary);
+        ShardRouter router = new ShardRouter(AppConfig.current(), primary, 2, ShardRouter.Strategy.HASH, 1);
+        try {
+            int userId = router.createUser("mover", "hash");
+            int home = router.shardOf(userId);
+            int away = 1 - home;
+            BudgetRepository.save(router.shard(home), userId, 1000, 2, Map.of("Rent", 100.0), BudgetRepository.SaveMode.REPLACE);
+            ShardTool tool = new ShardTool(router, ShardTool.DEFAULT_BATCH_SIZE);
+            assertEquals(1, tool.move(home, away, new int[]{userId}));
+
+            //Moving back fails at the last step, deleting what is left on the source
+            BudgetDataSource source = router.shard(away);
+            execute(source, "CREATE TRIGGER keep_header BEFORE DELETE ON budget_header BEGIN SELECT RAISE(ABORT, 'kept'); END");
+            assertThrows(SQLException.class, () -> tool.move(away, home, new int[]{userId}));
+            execute(source, "DROP TRIGGER keep_header");
+            assertEquals(home, router.shardOf(userId));
+            assertNotNull(BudgetRepository.load(source, userId));
+            assertNotNull(UserRepository.findCredentials(source, "mover"));
+
+            tool.rebalance();
+            assertNull(BudgetRepository.load(source, userId));
+            assertNull(UserRepository.findCredentials(source, "mover"));
+            assertEquals(home, router.shardOf(userId));
+            assertEquals(MoneyAllocator.toCents(1000), BudgetRepository.load(router.shard(home), userId).incomeCents());
+            assertEquals(userId, router.findCredentials("mover").userId());
+        } finally {
+            router.close();
+        }
+    }
+
+    private static void execute(BudgetDataSource dataSource, String sql) throws SQLException {
+        try (PooledConnection conn = dataSource.borrow()) {
+            conn.prepare(sql).executeUpdate();
+        }
+    }
+}
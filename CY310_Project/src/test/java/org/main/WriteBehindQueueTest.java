@@ -0,0 +1,207 @@
+package org.main;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriteBehindQueueTest {
+
+    @TempDir
+    Path dir;
+
+    private BudgetDataSource open() throws SQLException {
+        BudgetDataSource dataSource = new BudgetDataSource(dir.resolve("queue.db").toString(), StorageProfile.BALANCED, 2,
+                BudgetDataSource.DEFAULT_STATEMENT_CACHE_SIZE);
+        SchemaMigrations.migrate(dataSource);
+        return dataSource;
+    }
+
+    //A retried write goes through after the rest of its batch, but a later write of the same user still lands after it
+    @Test
+    void retriedWriteKeepsItsUsersOrder() throws Exception {
+        BudgetDataSource dataSource = open();
+        WriteBehindQueue queue = new WriteBehindQueue(ShardRouter.single(dataSource), 100, 100, 1000);
+        try {
+            List<String> log = new CopyOnWriteArrayList<>();
+            Blocker blocker = new Blocker(1, log);
+            queue.submit(blocker);
+            assertTrue(blocker.started.await(10, TimeUnit.SECONDS));
+
+            queue.submit(new Step("first", 2, 1, log));
+            queue.submit(new Step("second", 2, 0, log));
+            queue.submit(new Step("other", 3, 0, log));
+            blocker.release.countDown();
+            queue.flush();
+
+            assertEquals(List.of("blocker", "other", "first", "second"), log);
+            assertEquals(4, queue.stats().committed());
+            assertEquals(0, queue.stats().failed());
+        } finally {
+            queue.close();
+            dataSource.close();
+        }
+    }
+
+    @Test
+    void flushAndCloseDrainTheQueue() throws Exception {
+        BudgetDataSource dataSource = open();
+        WriteBehindQueue queue = new WriteBehindQueue(ShardRouter.single(dataSource), 100, 4, 1000);
+        try {
+            List<String> log = new CopyOnWriteArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                queue.submit(new Step("write" + i, i, 0, log));
+            }
+            queue.flush();
+            assertEquals(10, log.size());
+            assertEquals(0, queue.depth());
+
+            Blocker blocker = new Blocker(1, log);
+            queue.submit(blocker);
+            assertTrue(blocker.started.await(10, TimeUnit.SECONDS));
+            for (int i = 0; i < 10; i++) {
+                queue.submit(new Step("late" + i, i, 0, log));
+            }
+            blocker.release.countDown();
+            queue.close();
+            assertEquals(21, log.size());
+            assertEquals(21, queue.stats().committed());
+            assertEquals(0, queue.depth());
+            assertThrows(IllegalStateException.class, () -> queue.submit(new Step("closed", 1, 0, log)));
+        } finally {
+            queue.close();
+            dataSource.close();
+        }
+    }
+
+    //With the writer stuck and the queue full, a submit gives up after the offer timeout instead of waiting forever
+    @Test
+    void fullQueueRejectsAfterTheOfferTimeout() throws Exception {
+        BudgetDataSource dataSource = open();
+        WriteBehindQueue queue = new WriteBehindQueue(ShardRouter.single(dataSource), 2, 100, 50);
+        Blocker blocker = new Blocker(1, new CopyOnWriteArrayList<>());
+        try {
+            queue.submit(blocker);
+            assertTrue(blocker.started.await(10, TimeUnit.SECONDS));
+            queue.submit(new Step("a", 2, 0, new CopyOnWriteArrayList<>()));
+            queue.submit(new Step("b", 3, 0, new CopyOnWriteArrayList<>()));
+
+            assertThrows(IllegalStateException.class, () -> queue.submit(new Step("c", 4, 0, new CopyOnWriteArrayList<>())));
+            assertEquals(1, queue.stats().rejected());
+            assertEquals(2, queue.depth());
+        } finally {
+            blocker.release.countDown();
+            queue.close();
+            dataSource.close();
+        }
+        assertEquals(3, queue.stats().committed());
+    }
+
+    @Test
+    void pendingBudgetIsClearedOnCommitAndOnFailure() throws Exception {
+        BudgetDataSource dataSource = open();
+        WriteBehindQueue queue = new WriteBehindQueue(ShardRouter.single(dataSource), 100, 100, 1000);
+        try {
+            int saved = UserRepository.createUser(dataSource, "saved", "hash");
+            int broken = UserRepository.createUser(dataSource, "broken", "hash");
+            try (PooledConnection conn = dataSource.borrow()) {
+                conn.prepare("CREATE TRIGGER reject_broken BEFORE INSERT ON budget_header WHEN NEW.user_id = " + broken
+                        + " BEGIN SELECT RAISE(ABORT, 'rejected'); END").executeUpdate();
+            }
+
+            Blocker blocker = new Blocker(saved, new CopyOnWriteArrayList<>());
+            queue.submit(blocker);
+            assertTrue(blocker.started.await(10, TimeUnit.SECONDS));
+
+            Map<String, Double> categories = Map.of("Rent", 100.0);
+            Budget good = Budget.of(saved, 4000, 2, categories);
+            Budget bad = Budget.of(broken, 3000, 1, categories);
+            queue.submitBudget(good, 4000, 2, categories);
+            queue.submitBudget(bad, 3000, 1, categories);
+            assertSame(good, queue.pendingBudget(saved));
+            assertSame(bad, queue.pendingBudget(broken));
+
+            blocker.release.countDown();
+            queue.flush();
+
+            assertNull(queue.pendingBudget(saved));
+            assertNull(queue.pendingBudget(broken));
+            assertEquals(1, queue.stats().failed());
+            assertEquals(MoneyAllocator.toCents(4000), BudgetRepository.load(dataSource, saved).incomeCents());
+            assertNull(BudgetRepository.load(dataSource, broken));
+        } finally {
+            queue.close();
+            dataSource.close();
+        }
+    }
+
+    //Logs its name on commit; fails the first failures times it is applied
+    private static class Step implements WriteBehindQueue.Write {
+        private final String name;
+        private final int userId;
+        private final List<String> log;
+        private int failures;
+
+        Step(String name, int userId, int failures, List<String> log) {
+            this.name = name;
+            this.userId = userId;
+            this.failures = failures;
+            this.log = log;
+        }
+
+        @Override
+        public int userId() {
+            return userId;
+        }
+
+        @Override
+        public void apply(PooledConnection conn) throws SQLException {
+            if (failures > 0) {
+                failures--;
+                throw new SQLException("Failing " + name + " on purpose");
+            }
+        }
+
+        @Override
+        public void committed(BudgetDataSource shard) {
+            log.add(name);
+        }
+
+        @Override
+        public void failed() {
+        }
+    }
+
+    //Holds the writer inside its transaction until released, so the test can line up the next batch
+    private static class Blocker extends Step {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        Blocker(int userId, List<String> log) {
+            super("blocker", userId, 0, log);
+        }
+
+        @Override
+        public void apply(PooledConnection conn) throws SQLException {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted", e);
+            }
+        }
+    }
+}